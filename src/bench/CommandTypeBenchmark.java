@@ -0,0 +1,105 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import model.CommandType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <b>CommandTypeBenchmark</b> measures CommandType.get on the token mix seen
+ * while loading scripts: mostly arguments that are not command names, with a
+ * command name every few tokens.
+ *
+ * Compares the lookup table against the if/else chain it replaced.
+ *
+ * @author Sean Wammer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandTypeBenchmark {
+
+    private static final String[] TOKENS = { "PRINT",
+            "You take the knife off the small table.", "REMOVE_ITEM", "knife",
+            "give_item", "knife", "SET_DESC_OF", "kitchen",
+            "There is a small oven and stove combination appliance nearby.",
+            " add_script ", "use knife", "END_SCRIPT", "ADD_HEALTH", "-1",
+            "REMOVE_SCRIPT_FROM", "backyard", "chop tree" };
+
+    private int i;
+
+    @Benchmark
+    public CommandType table() {
+        return CommandType.get(TOKENS[next()]);
+    }
+
+    @Benchmark
+    public CommandType chain() {
+        return chainGet(TOKENS[next()]);
+    }
+
+    private int next() {
+        i = i + 1 == TOKENS.length ? 0 : i + 1;
+        return i;
+    }
+
+    /**
+     * The lookup CommandType.get used before the table, kept as a baseline.
+     */
+    private static CommandType chainGet(String type) {
+        type = type.toUpperCase().trim();
+        if (type.equals("LOOK")) {
+            return CommandType.LOOK;
+        } else if (type.equals("GO")) {
+            return CommandType.GO;
+        } else if (type.equals("PRINT")) {
+            return CommandType.PRINT;
+        } else if (type.equals("ADD_HEALTH")) {
+            return CommandType.ADD_HEALTH;
+        } else if (type.equals("GIVE_ITEM")) {
+            return CommandType.GIVE_ITEM;
+        } else if (type.equals("TAKE_ITEM")) {
+            return CommandType.TAKE_ITEM;
+        } else if (type.equals("SET_NAME")) {
+            return CommandType.SET_NAME;
+        } else if (type.equals("SET_DESC")) {
+            return CommandType.SET_DESC;
+        } else if (type.equals("ADD_ITEM")) {
+            return CommandType.ADD_ITEM;
+        } else if (type.equals("REMOVE_ITEM")) {
+            return CommandType.REMOVE_ITEM;
+        } else if (type.equals("ADD_SCRIPT")) {
+            return CommandType.ADD_SCRIPT;
+        } else if (type.equals("REMOVE_SCRIPT")) {
+            return CommandType.REMOVE_SCRIPT;
+        } else if (type.equals("SET_NAME_OF")) {
+            return CommandType.SET_NAME_OF;
+        } else if (type.equals("SET_SHORT_DESC_OF")) {
+            return CommandType.SET_SHORT_DESC_OF;
+        } else if (type.equals("SET_DESC_OF")) {
+            return CommandType.SET_DESC_OF;
+        } else if (type.equals("ADD_ITEM_TO")) {
+            return CommandType.ADD_ITEM_TO;
+        } else if (type.equals("REMOVE_ITEM_FROM")) {
+            return CommandType.REMOVE_ITEM_FROM;
+        } else if (type.equals("ADD_SCRIPT_TO")) {
+            return CommandType.ADD_SCRIPT_TO;
+        } else if (type.equals("REMOVE_SCRIPT_FROM")) {
+            return CommandType.REMOVE_SCRIPT_FROM;
+        } else {
+            return null;
+        }
+    }
+}
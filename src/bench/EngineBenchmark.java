@@ -0,0 +1,465 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import model.CommandType;
+import model.GameState;
+import model.Graph;
+import model.GraphAlgorithms;
+import model.IndexedGraph;
+import model.Room;
+import model.RoutePlanner;
+import model.Script;
+import model.ScriptCompiler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import utility.GameParser;
+import utility.GameSaver;
+import utility.WorldGenerator;
+
+/**
+ * <b>EngineBenchmark</b> times the engine's hot paths on synthetic worlds of
+ * several sizes: looking up and compiling commands, running scripts, moving
+ * between rooms, building and reading the room graph, and loading and saving
+ * the world. Worlds on disc come from WorldGenerator.
+ *
+ * Run with "gradle jmh". Worlds of 1,000 and 100,000 rooms are used unless
+ * other sizes are given with -p rooms=..., and a world of 1,000,000 rooms
+ * needs a heap of about 2GB (-jvmArgs -Xmx2g). Operations too slow to repeat
+ * many times, such as loading a world, are timed once per iteration.
+ *
+ * @author Sean Wammer
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    private static final int LANDMARKS = 8;
+    private static final int TREASURE = 5000;
+    private static final int EDGES = 200000;
+    private static final long SEED = 42;
+
+    /** a script as it is stored on disc, nested script included */
+    private static final String[] SCRIPT_TOKENS = SyntheticWorld.OPEN_DOOR;
+
+    /**
+     * Counts the operations each thread has run, so that each one picks a
+     * different room, token or item.
+     */
+    @State(Scope.Thread)
+    public static class Counter {
+        int i;
+
+        int next() {
+            return i++ & Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * The number of rooms in the world.
+     */
+    @State(Scope.Benchmark)
+    public static class Size {
+        @Param({ "1000", "100000" })
+        public int rooms;
+    }
+
+    /**
+     * A world built in memory, with the player in its first room.
+     */
+    @State(Scope.Benchmark)
+    public static class World {
+        SyntheticWorld world;
+        int size;
+        Script poke;
+        final StringBuilder out = new StringBuilder();
+
+        @Setup(Level.Trial)
+        public void setUp(Size size) {
+            this.size = size.rooms;
+            world = new SyntheticWorld(size.rooms, SEED);
+            poke = world.rooms[0].getScript("poke");
+        }
+
+        Room room(int i) {
+            return world.rooms[(int) ((i * 7919L) % size)];
+        }
+    }
+
+    /**
+     * A room holding many copies of one item and many different items.
+     */
+    @State(Scope.Benchmark)
+    public static class Treasury {
+        final Room room = new Room("treasury");
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            for (int i = 0; i < TREASURE; i++) {
+                room.addItem("coin");
+                room.addItem("gem" + i);
+            }
+        }
+    }
+
+    /**
+     * Opens and closes an exit on another thread for as long as it runs, so
+     * that reads of the graph race with writes.
+     */
+    @State(Scope.Benchmark)
+    public static class Toggler {
+        private final AtomicBoolean toggling = new AtomicBoolean();
+        private Thread thread;
+
+        @Setup(Level.Trial)
+        public void setUp(final World world) {
+            toggling.set(true);
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Room from = world.world.rooms[0];
+                    Room to = world.world.rooms[world.size / 2];
+                    while (toggling.get()) {
+                        world.world.graph.addEdge(from, to, "door");
+                        world.world.graph.removeEdge(from, to, "door");
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            toggling.set(false);
+            thread.join();
+        }
+    }
+
+    /**
+     * A route planner over the world, without landmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Planner {
+        RoutePlanner planner;
+
+        @Setup(Level.Trial)
+        public void setUp(World world) {
+            planner = RoutePlanner.of(world.world.graph);
+        }
+    }
+
+    /**
+     * A route planner over the world, with landmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class LandmarkPlanner {
+        RoutePlanner planner;
+
+        @Setup(Level.Trial)
+        public void setUp(World world) {
+            planner = RoutePlanner.of(world.world.graph);
+            planner.precomputeLandmarks(LANDMARKS);
+        }
+    }
+
+    /**
+     * A route planner built fresh for each iteration, so that every iteration
+     * precomputes its landmarks from scratch.
+     */
+    @State(Scope.Benchmark)
+    public static class FreshPlanner {
+        RoutePlanner planner;
+
+        @Setup(Level.Iteration)
+        public void setUp(World world) {
+            planner = RoutePlanner.of(world.world.graph);
+        }
+    }
+
+    /**
+     * The world's graph frozen in index form, and a pool to search it with.
+     */
+    @State(Scope.Benchmark)
+    public static class Indexed {
+        IndexedGraph<Room> graph;
+        ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void setUp(World world) {
+            graph = IndexedGraph.of(world.world.graph);
+            graph.freeze();
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A world generated on disc and loaded from it.
+     */
+    @State(Scope.Benchmark)
+    public static class Disc {
+        File dir;
+        int size;
+        GameState loaded;
+
+        @Setup(Level.Trial)
+        public void setUp(Size size) throws IOException {
+            this.size = size.rooms;
+            dir = Files.createTempDirectory("adventure-bench").toFile();
+            new WorldGenerator(SEED).setRooms(size.rooms).generate(dir);
+            loaded = load(dir);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    // these do not depend on the size of the world
+
+    @Benchmark
+    public CommandType commandTypeGet(Counter counter) {
+        return CommandType.get(SCRIPT_TOKENS[counter.next()
+                % SCRIPT_TOKENS.length]);
+    }
+
+    @Benchmark
+    public Script scriptCompilerCompile() {
+        return ScriptCompiler.compile(null, SCRIPT_TOKENS, 0);
+    }
+
+    @Benchmark
+    public boolean roomRemoveItemAddItem(Treasury treasury, Counter counter) {
+        int i = counter.next();
+        String item = (i & 1) == 0 ? "coin" : "gem" + (i * 7919L) % TREASURE;
+        boolean removed = treasury.room.removeItem(item);
+        treasury.room.addItem(item);
+        return removed;
+    }
+
+    // in memory
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int buildWorld(Size size) {
+        return new SyntheticWorld(size.rooms, SEED).rooms.length;
+    }
+
+    @Benchmark
+    public int scriptExecute(World world) {
+        world.out.setLength(0);
+        world.poke.execute(world.world.state, world.out);
+        return world.out.length();
+    }
+
+    @Benchmark
+    public int gameStateExecute(World world) {
+        world.out.setLength(0);
+        world.world.state.execute("poke", world.out);
+        return world.out.length();
+    }
+
+    @Benchmark
+    public boolean gameStateAdjacentRoomsAndGo(World world, Counter counter) {
+        // a random walk, so the whole world gets visited
+        List<String> exits = world.world.state.adjacentRooms();
+        return world.world.state.go(exits.get(counter.next() % exits.size()));
+    }
+
+    @Benchmark
+    public List<String> gameStateAdjacentRoomsOf(World world, Counter counter) {
+        return world.world.state.adjacentRooms(SyntheticWorld
+                .name((int) ((counter.next() * 7919L) % world.size)));
+    }
+
+    @Benchmark
+    public Set<Room> graphAdjacent(World world, Counter counter) {
+        return world.world.graph.adjacent(world.room(counter.next()));
+    }
+
+    @Benchmark
+    public Set<Room> graphAdjacentWhileExitsToggle(World world,
+            Toggler toggler, Counter counter) {
+        // exits opened and closed by another thread must not slow reads down
+        return world.world.graph.adjacent(world.room(counter.next()));
+    }
+
+    @Benchmark
+    public int graphOpenCloseExit(World world, Counter counter) {
+        int i = counter.next();
+        Room from = world.room(i);
+        Room to = world.world.rooms[(int) ((i * 7919L + world.size / 2) % world.size)];
+        world.world.graph.addEdge(from, to, "door");
+        world.world.graph.removeEdge(from, to, "door");
+        return world.world.graph.version();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public RoutePlanner routePlannerOf(World world) {
+        return RoutePlanner.of(world.world.graph);
+    }
+
+    @Benchmark
+    public List<String> routePlannerRoute(World world, Planner planner,
+            Counter counter) {
+        return route(world, planner.planner, counter.next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int routePlannerPrecomputeLandmarks(FreshPlanner planner) {
+        planner.planner.precomputeLandmarks(LANDMARKS);
+        return planner.planner.landmarkCount();
+    }
+
+    @Benchmark
+    public List<String> routePlannerRouteLandmarks(World world,
+            LandmarkPlanner planner, Counter counter) {
+        return route(world, planner.planner, counter.next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int graphAlgorithmsReachable(Indexed indexed) {
+        return GraphAlgorithms.reachable(indexed.graph, 0).cardinality();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int graphAlgorithmsReachableParallel(Indexed indexed) {
+        return GraphAlgorithms.reachable(indexed.graph, 0, indexed.pool)
+                .cardinality();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int graphAlgorithmsComponents(Indexed indexed) {
+        return GraphAlgorithms.components(indexed.graph).length;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int graphAlgorithmsTraps(Indexed indexed) {
+        return GraphAlgorithms.traps(indexed.graph, 0).cardinality();
+    }
+
+    @Benchmark
+    public int graphRemoveNodeAndRewire(World world, Counter counter) {
+        // rewiring a room live: the room is removed and put back as it was
+        Graph<Room> graph = world.world.graph;
+        Room room = world.room(counter.next());
+        Set<Room> out = graph.adjacent(room);
+        Set<Room> in = graph.predecessors(room);
+        graph.removeNode(room);
+        for (Room child : out) {
+            graph.addEdge(room, child);
+        }
+        for (Room parent : in) {
+            graph.addEdge(parent, room);
+        }
+        return out.size() + in.size();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Graph<Room> graphAddEdges(World world) {
+        // a fresh graph each time, so every edge is new
+        Graph<Room> graph = new Graph<>();
+        int edges = Math.min(world.size, EDGES);
+        for (int i = 0; i < edges; i++) {
+            graph.addEdge(world.world.rooms[i], world.room(i));
+        }
+        return graph;
+    }
+
+    // on disc
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long generateWorld(Disc disc) throws IOException {
+        new WorldGenerator(SEED).setRooms(disc.size).generate(disc.dir);
+        return new File(disc.dir, "rooms.tsv").length();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public GameState loadWorld(Disc disc) throws IOException {
+        return load(disc.dir);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long saveWorld(Disc disc) throws IOException {
+        GameSaver.compact(disc.dir.getPath(), disc.loaded);
+        return new File(disc.dir, "rooms.tsv").length();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long gameSaverSaveGameState(Disc disc, Counter counter)
+            throws IOException {
+        // one changed room per save, like a game turn
+        Room room = disc.loaded.getCurrentRoom();
+        if (counter.next() % 2 == 0) {
+            room.addItem("pebble");
+        } else {
+            room.removeItem("pebble");
+        }
+        GameSaver.saveGameState(disc.dir.getPath(), disc.loaded);
+        return new File(disc.dir, "journal.tsv").length();
+    }
+
+    private static List<String> route(World world, RoutePlanner planner, int i) {
+        return planner.route(SyntheticWorld.name((int) ((i * 7919L)
+                % world.size)), SyntheticWorld.name((int) ((i * 104729L + 1)
+                % world.size)));
+    }
+
+    private static GameState load(File dir) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        return new GameParser(threads).loadGameState(null, dir.getPath());
+    }
+}
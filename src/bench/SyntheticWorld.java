@@ -0,0 +1,82 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import model.GameState;
+import model.Graph;
+import model.Player;
+import model.Room;
+import model.Script;
+import model.ScriptCompiler;
+
+/**
+ * <b>SyntheticWorld</b> builds a world of any size in memory for the
+ * benchmarks that do not touch the disc. Rooms are joined in a two way ring so
+ * that every room can be reached, plus two random one way edges out of each
+ * room. Every room has a few items and the same small scripts, so the work per
+ * command does not depend on the world's size. The same seed always builds the
+ * same world.
+ *
+ * @author Sean Wammer
+ */
+final class SyntheticWorld {
+
+    /** flat tokens of the script registered to "poke" in every room */
+    static final String[] POKE = { "ADD_ITEM", "pebble", "REMOVE_ITEM",
+            "pebble", "PRINT", "You poke around but find nothing new." };
+
+    /** flat tokens of the script registered to "open door" in every room */
+    static final String[] OPEN_DOOR = { "PRINT", "The door creaks open.",
+            "REMOVE_SCRIPT", "open door", "ADD_SCRIPT", "close door",
+            "PRINT", "The door swings shut.", "REMOVE_SCRIPT", "close door",
+            "END_SCRIPT", "SET_DESC", "An open door leads on." };
+
+    final Graph<Room> graph;
+    final Room[] rooms;
+    final GameState state;
+
+    /**
+     * Builds a world with the given number of rooms.
+     *
+     * @param size the number of rooms, at least 2
+     * @param seed the seed for the random edges
+     */
+    SyntheticWorld(int size, long seed) {
+        Random random = new Random(seed);
+        graph = new Graph<>();
+        rooms = new Room[size];
+        Map<String, Room> nameToRoom = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            List<String> items = new ArrayList<>();
+            items.add("dust");
+            items.add("coin");
+            Map<String, Script> scripts = new HashMap<>();
+            scripts.put("poke", ScriptCompiler.compile(null, POKE, 0));
+            scripts.put("open door", ScriptCompiler.compile(null, OPEN_DOOR, 0));
+            rooms[i] = new Room(name(i), "Room number " + i,
+                    "A plain room.", "A plain room with doors all around.",
+                    items, scripts);
+            graph.addNode(rooms[i]);
+            nameToRoom.put(name(i), rooms[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            graph.addEdge(rooms[i], rooms[(i + 1) % size]);
+            graph.addEdge(rooms[(i + 1) % size], rooms[i]);
+            graph.addEdge(rooms[i], rooms[random.nextInt(size)]);
+            graph.addEdge(rooms[i], rooms[random.nextInt(size)]);
+        }
+        state = new GameState(graph, new Player("bench", 20, 20,
+                new ArrayList<String>()), name(0), nameToRoom);
+    }
+
+    /**
+     * Returns the short name of room number i.
+     */
+    static String name(int i) {
+        return "room" + i;
+    }
+}
@@ -0,0 +1,193 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import model.SharedWorld;
+import utility.GameParser;
+
+/**
+ * <b>GameServer</b> hosts many players in one process. Each connection to the
+ * server's socket gets its own GameSession, which runs on its own thread until
+ * the player quits or hangs up.
+ *
+ * Players either each pick their own save file, or all join one SharedWorld.
+ *
+ * Sessions spend nearly all of their time waiting for input, so by default
+ * each one runs on a virtual thread when the JVM has them (Java 21 and later),
+ * and on a thread from a cached pool otherwise.
+ *
+ * @author Sean Wammer
+ */
+public class GameServer implements Closeable {
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    /** the world every player joins, or null if each picks a save file */
+    private final SharedWorld world;
+
+    /**
+     * Constructs a GameServer that listens for players on the given port of
+     * the loopback interface.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @throws IOException if the port can not be opened
+     */
+    public GameServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Constructs a GameServer that listens for players on the given port of
+     * the loopback interface. Every player joins the given world.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param world the world every player joins, or null to let each player
+     *        pick a save file
+     * @throws IOException if the port can not be opened
+     */
+    public GameServer(int port, SharedWorld world) throws IOException {
+        this(new ServerSocket(port, 0, InetAddress.getLoopbackAddress()),
+                newSessionExecutor(), world);
+    }
+
+    /**
+     * Constructs a GameServer that accepts players from the given socket and
+     * runs their sessions on the given executor. The server owns both and
+     * closes them when it is closed.
+     *
+     * @param serverSocket the socket to accept players from
+     * @param sessions the executor to run sessions on
+     * @param world the world every player joins, or null to let each player
+     *        pick a save file
+     */
+    public GameServer(ServerSocket serverSocket, ExecutorService sessions,
+            SharedWorld world) {
+        this.serverSocket = serverSocket;
+        this.sessions = sessions;
+        this.world = world;
+    }
+
+    /**
+     * Returns the port this server listens on.
+     *
+     * @return the port this server listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts players until this server is closed, starting a session for
+     * each one. Returns once the server is closed.
+     *
+     * @throws IOException if accepting a connection fails for any reason
+     *         other than the server being closed
+     */
+    public void serve() throws IOException {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            sessions.execute(new Runnable() {
+                @Override
+                public void run() {
+                    serve(socket);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a session for the player connected to the given socket, then
+     * closes the socket.
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            new GameSession(new InputStreamReader(s.getInputStream(),
+                    StandardCharsets.UTF_8), new OutputStreamWriter(
+                    s.getOutputStream(), StandardCharsets.UTF_8), world).run();
+        } catch (IOException e) {
+            System.err.println("There was an error with a player connection.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops accepting players. Sessions that are already running are left to
+     * finish.
+     *
+     * @throws IOException if the socket can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdown();
+    }
+
+    /**
+     * Returns an executor that runs each session on a new virtual thread, or
+     * on a cached pool of daemon threads if this JVM has no virtual threads.
+     *
+     * @return an executor to run sessions on
+     */
+    public static ExecutorService newSessionExecutor() {
+        try {
+            // looked up by name so that we still build and run on older JVMs
+            Method virtual = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "game-session");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs a GameServer on the given port until the process is stopped.
+     *
+     * Usage: GameServer [port [world directory]]
+     *
+     * With a world directory, every player joins the world loaded from it.
+     * Otherwise each player picks their own save file.
+     *
+     * @param args the port to listen on, 4000 if not given, and the world
+     *        directory
+     * @throws IOException if the server can not be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        SharedWorld world = null;
+        if (args.length > 1) {
+            world = new GameParser().loadSharedWorld(args[1]);
+        }
+        try (GameServer server = new GameServer(port, world)) {
+            System.out.println("Listening for players on port "
+                    + server.getPort());
+            server.serve();
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.CommandTrie;
+import model.GameModel;
+import model.SharedWorld;
+
+/**
+ * <b>GameSession</b> lets one player load, play, and save a text adventure
+ * game over a pair of character streams. A session owns its GameModel, so any
+ * number of sessions can run at once, each on its own thread.
+ *
+ * The session ends when the player quits or the input ends. Either way, the
+ * game is saved.
+ *
+ * @author Sean Wammer
+ */
+public class GameSession implements Runnable {
+
+    private final BufferedReader in;
+    private final PrintWriter out;
+
+    /** the world this session's player joins, or null to pick a save file */
+    private final SharedWorld world;
+
+    private GameModel model;
+    private int saveFile;
+
+    private static final String TRAVEL_FAIL = "You can't go there.";
+    private static final String NO_ROUTE = "You can't find a way there from here.";
+    private static final String NO_ROOMS = "There is nowhere to go from here.";
+    private static final String BAD_COMMAND = "Command not recognized. Try a different command or try \"menu,\" \"help,\" or \"?\" to see standard commands.";
+
+    private static final int MAX_LINE_LENGTH = 80;
+
+    /** the most commands suggested when a command is not recognized */
+    private static final int SUGGESTIONS = 3;
+
+    /** the commands every session understands, whatever room it is in */
+    private enum Verb {
+        MENU, QUIT, PRINT, LOOK, GO, TRAVEL
+    }
+
+    /** what the player can type for each Verb, and their abbreviations */
+    private static final CommandTrie<Verb> VERBS = new CommandTrie<>();
+    static {
+        VERBS.put("m", Verb.MENU);
+        VERBS.put("menu", Verb.MENU);
+        VERBS.put("h", Verb.MENU);
+        VERBS.put("help", Verb.MENU);
+        VERBS.put("?", Verb.MENU);
+        VERBS.put("q", Verb.QUIT);
+        VERBS.put("quit", Verb.QUIT);
+        VERBS.put("p", Verb.PRINT);
+        VERBS.put("print", Verb.PRINT);
+        VERBS.put("l", Verb.LOOK);
+        VERBS.put("look", Verb.LOOK);
+        VERBS.put("g", Verb.GO);
+        VERBS.put("go", Verb.GO);
+        VERBS.put("t", Verb.TRAVEL);
+        VERBS.put("travel", Verb.TRAVEL);
+    }
+
+    /**
+     * Constructs a new GameSession that reads the player's input from in and
+     * writes the game's output to out. Output is flushed after every line.
+     *
+     * @param in the player's input
+     * @param out where the game's output is written
+     */
+    public GameSession(Reader in, Writer out) {
+        this(in, out, null);
+    }
+
+    /**
+     * Constructs a new GameSession whose player joins the given shared world
+     * instead of picking a save file. Reads the player's input from in and
+     * writes the game's output to out.
+     *
+     * @param in the player's input
+     * @param out where the game's output is written
+     * @param world the world to join, or null to pick a save file
+     */
+    public GameSession(Reader in, Writer out, SharedWorld world) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in
+                : new BufferedReader(in);
+        this.out = new PrintWriter(out, true);
+        this.world = world;
+    }
+
+    /**
+     * Runs this session until the player quits or the input ends, then saves
+     * the game.
+     */
+    @Override
+    public void run() {
+        print("Welcome to your very own adventure!");
+
+        try {
+            setup();
+            interact();
+        } catch (EOFException e) {
+            // the player left without quitting, we still save below
+        } catch (IOException e) {
+            System.err
+                    .println("There was an error running the game. Exiting...");
+            e.printStackTrace();
+        }
+        if (model != null) {
+            save();
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns the GameModel this session is playing, or null if no game has
+     * been loaded yet.
+     *
+     * @return the GameModel this session is playing or null
+     */
+    public GameModel getModel() {
+        return model;
+    }
+
+    /**
+     * Reads the next line of input.
+     *
+     * @throws EOFException if the input has ended
+     */
+    private String readLine() throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            throw new EOFException();
+        }
+        return line;
+    }
+
+    /**
+     * Sets up the GameModel to prepare the game.
+     *
+     * @throws IOException
+     */
+    private void setup() throws IOException {
+        if (world != null) {
+            join();
+            return;
+        }
+
+        boolean saveChosen = false;
+        while (!saveChosen) {
+            // get available save files
+            List<Integer> saveFiles = GameModel.getSaveFiles();
+
+            // if it is the first time playing, we start new game automatically
+            if (saveFiles.isEmpty()) {
+                model = GameModel.newGame();
+                if (model == null) {
+                    print("There was a problem creating a new game. Please try again.");
+                    continue;
+                }
+                break;
+            }
+
+            // print available save files
+            print("Available save files:");
+            String saves = "";
+            for (int saveFile : saveFiles) {
+                saves += saveFile + " ";
+            }
+            print(saves.trim());
+
+            // prompt for desired file or create new save file
+            print("Please type in your desired file number (or press return for new game)");
+            int fileNumber;
+            String input = readLine();
+            if (!input.equals("")) {
+                // load game
+                try {
+                    fileNumber = Integer.parseInt(input);
+                    if (!saveFiles.contains(fileNumber)) {
+                        print("Save file does not exist. Cannot load file. Please provide an existing save file number.");
+                        continue;
+                    } else {
+                        model = GameModel.loadGame(fileNumber);
+                    }
+                } catch (NumberFormatException e) {
+                    print("Please give a file number with digits 0-9.");
+                    continue;
+                }
+            } else {
+                // new game
+                model = GameModel.newGame();
+                if (model == null) {
+                    print("There was a problem creating a new game. Please try again.");
+                    continue;
+                }
+            }
+            saveChosen = true;
+        }
+        saveFile = model.getSaveFileNumber();
+        print("Save file " + saveFile + " successfully loaded.");
+    }
+
+    /**
+     * Asks for the player's name and joins the shared world.
+     *
+     * @throws IOException
+     */
+    private void join() throws IOException {
+        String name = "";
+        while (name.isEmpty()) {
+            print("What is your name?");
+            name = readLine().trim();
+        }
+        model = GameModel.joinWorld(world, name);
+        print("Welcome, " + name + ". Other adventurers are here too.");
+    }
+
+    /**
+     * Asks GameModel to save the game for this file.
+     */
+    private void save() {
+        if (world != null) {
+            // shared worlds are not saved
+            return;
+        }
+        if (saveChanges()) {
+            print("Your save file number is " + saveFile);
+        }
+    }
+
+    /**
+     * Asks GameModel to save the changes made since the last save. Returns
+     * true iff the changes were saved.
+     */
+    private boolean saveChanges() {
+        try {
+            model.saveGame();
+            return true;
+        } catch (IOException e) {
+            System.err.println("There was an error saving the game.");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Handles main interaction with user.
+     *
+     * @throws IOException if the input can not be read
+     */
+    private void interact() throws IOException {
+        // print short description to indicate interaction has started
+        print(model.shortDesc());
+
+        // reused for the output of every command
+        StringBuilder output = new StringBuilder();
+        boolean quit = false;
+        while (!quit) {
+            String line = readLine().toLowerCase().trim();
+            if (!line.equals("")) {
+                quit = handle(line, output);
+
+                // save every turn, this only writes what changed
+                if (!quit) {
+                    saveChanges();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one line of the player's input. Returns true iff the player asked
+     * to quit.
+     *
+     * @param line the lowercase, trimmed, non-empty input to run
+     * @param output a buffer for the output of room commands
+     * @return true iff the player asked to quit
+     */
+    private boolean handle(String line, StringBuilder output) {
+        String[] tokens = line.split(" ", 2);
+        String command = tokens[0];
+
+        // the room's commands come before abbreviations of the standard ones,
+        // and before looking when the player looks at something
+        Verb verb = VERBS.get(command);
+        if (verb == null || (verb == Verb.LOOK && tokens.length > 1)) {
+            output.setLength(0);
+            if (model.execute(line, output)) {
+                print(output.toString());
+                return false;
+            }
+        }
+        if (verb == null) {
+            String completed = VERBS.complete(command);
+            if (completed == null) {
+                print(BAD_COMMAND);
+                didYouMean(line, command);
+                return false;
+            }
+            verb = VERBS.get(completed);
+        }
+
+        switch (verb) {
+        case MENU:
+            menu();
+            break;
+        case QUIT:
+            return true;
+        case PRINT:
+            if (tokens.length > 1) {
+                String printString = tokens[1];
+                print(printString.trim());
+            }
+            break;
+        case LOOK:
+            // print long description of the current room
+            print(model.longDesc());
+
+            // print places you can go from here
+            List<String> rooms = model.adjacentRooms();
+            if (rooms.isEmpty()) {
+                print(NO_ROOMS);
+            } else {
+                String availableRooms = rooms.get(0);
+                for (int i = 1; i < rooms.size(); i++) {
+                    String name = rooms.get(i);
+                    availableRooms += ", " + name;
+                }
+                print("You can travel to:");
+                print(availableRooms);
+
+            }
+            List<String> labels = model.exitLabels();
+            if (!labels.isEmpty()) {
+                String exits = labels.get(0);
+                for (int i = 1; i < labels.size(); i++) {
+                    exits += ", " + labels.get(i);
+                }
+                print("Exits: " + exits);
+            }
+            break;
+        case GO:
+            if (tokens.length > 1) {
+                if (model.go(tokens[1])) {
+                    print(model.shortDesc());
+                } else {
+                    print(TRAVEL_FAIL);
+                }
+            } else {
+                print("Please indicate where you want to go. Try \"go <location name>\"");
+            }
+            break;
+        case TRAVEL:
+            if (tokens.length > 1) {
+                List<String> route = model.travel(tokens[1]);
+                if (route == null) {
+                    print(NO_ROUTE);
+                } else if (route.size() > 1) {
+                    String passed = route.get(0);
+                    for (int i = 1; i < route.size() - 1; i++) {
+                        passed += ", " + route.get(i);
+                    }
+                    print("You pass through " + passed + ".");
+                }
+                if (route != null) {
+                    print(model.shortDesc());
+                }
+            } else {
+                print("Please indicate where you want to travel to. Try \"travel <location name>\"");
+            }
+            break;
+        // TODO add more commands
+        }
+        return false;
+    }
+
+    /**
+     * Prints the room commands and standard commands closest to an
+     * unrecognized line, if any are close.
+     *
+     * @param line the unrecognized line
+     * @param command the first word of line
+     */
+    private void didYouMean(String line, String command) {
+        List<String> suggestions = new ArrayList<>(model.suggest(line,
+                SUGGESTIONS));
+        for (String verb : VERBS.suggest(command, 1, SUGGESTIONS)) {
+            // one letter abbreviations are never what the player meant
+            if (verb.length() > 1 && suggestions.size() < SUGGESTIONS) {
+                suggestions.add(verb);
+            }
+        }
+        if (suggestions.isEmpty()) {
+            return;
+        }
+        String message = "Did you mean \"" + suggestions.get(0) + "\"";
+        for (int i = 1; i < suggestions.size(); i++) {
+            message += (i == suggestions.size() - 1 ? " or \"" : ", \"")
+                    + suggestions.get(i) + "\"";
+        }
+        print(message + "?");
+    }
+
+    /**
+     * Displays the menu of available commands to the user
+     */
+    private void menu() {
+        print("Menu");
+        print("============================================");
+        print("\t(m)enu or (h)elp or ? - displays this menu");
+        print("\t(p)rint - leave a note for yourself in the console");
+        print("\t(l)ook - take a closer look at your surroundings and see where you can go next");
+        print("\t(g)o - travel to a nearby room or location, or through an exit like \"go north\"");
+        print("\t(t)ravel - find the way to any room you know of and walk there");
+        print("\t(q)uit - save and end your game session");
+        print("\tcommands can be shortened as long as no other command starts the same way");
+        // TODO: rest of the commands
+    }
+
+    /**
+     * Prints the given String s on a new line, nicely formatted so that words
+     * wrap to the next line.
+     *
+     * @param s the string to pretty print
+     */
+    private void print(String s) {
+        String[] words = s.split("[\\t ]+");
+        int lineLength = 0;
+
+        // print out all words, and a new line each time the line length
+        // gets too long.
+        for (String word : words) {
+            if (lineLength >= MAX_LINE_LENGTH) {
+                out.println();
+                lineLength = 0;
+            }
+
+            out.print(word + " ");
+            lineLength += word.length() + 1;
+
+            // if main tries to print new lines manually, reset line length
+            if (word.contains("\n")) {
+                lineLength = 0;
+            }
+        }
+
+        out.println();
+    }
+}
@@ -13,18 +13,27 @@ import com.sun.xml.internal.messaging.saaj.packaging.mime.internet.ParseExceptio
  */
 public class Command {
 
-    /** An alias to the game state that this may make calls on */
+    /**
+     * An alias to the game state that this may make calls on, or null if this
+     * only ever runs through execute(GameState, StringBuilder), as commands
+     * loaded for a shared world do
+     */
     GameModel gameModel;
     /** The action this command performs */
     CommandType commandType;
     /** Parameters to this command (can be empty if no args) */
     String[] args;
+    /** Input the nested script is registered under (ADD_SCRIPT(_TO) only) */
+    private String scriptInput;
+    /** Nested script compiled once from args (ADD_SCRIPT(_TO) only) */
+    private Script script;
 
     /**
      * Constructs a new Command with the given arguments.
      * 
      * @param gameModel a reference to the gameModel so that Commands can make
-     *        changes to the game.
+     *        changes to the game, or null if this will only be run with
+     *        execute(GameState, StringBuilder)
      * @param commandType the type of action this command will perform
      * @param args an array or arguments for this command
      */
@@ -38,6 +47,16 @@ public class Command {
         // type, like print should have 1 arg, add health should have 1 arg and
         // look should have no args
         checkRep();
+
+        // nested scripts are compiled once here so that running this command
+        // never has to re-parse its arguments
+        if (commandType == CommandType.ADD_SCRIPT) {
+            scriptInput = this.args[0].toLowerCase().trim();
+            script = ScriptCompiler.compile(gameModel, this.args, 1);
+        } else if (commandType == CommandType.ADD_SCRIPT_TO) {
+            scriptInput = this.args[1].toLowerCase().trim();
+            script = ScriptCompiler.compile(gameModel, this.args, 2);
+        }
     }
 
     /**
@@ -45,8 +64,65 @@ public class Command {
      * there was an error with this command.
      * 
      * @return output of this to be printed
+     * @throws IllegalStateException if this was constructed without a
+     *         GameModel
      */
     public String execute() {
+        StringBuilder out = new StringBuilder();
+        if (!execute(out)) {
+            return null;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Runs this command, appending any output that should be printed to out.
+     * Returns false if there was an error with this command, in which case
+     * nothing is appended.
+     * 
+     * @param out the buffer to append the output of this to
+     * @return true iff this command ran without error
+     * @throws IllegalStateException if this was constructed without a
+     *         GameModel
+     */
+    public boolean execute(StringBuilder out) {
+        if (gameModel == null) {
+            throw new IllegalStateException("Command " + commandType
+                    + " has no GameModel, run it with execute(GameState, "
+                    + "StringBuilder).");
+        }
+        return execute(gameModel.getGameState(), out);
+    }
+
+    /**
+     * Runs this command on behalf of the player of the given game state,
+     * appending any output that should be printed to out. Returns false if
+     * there was an error with this command, in which case nothing is appended.
+     * 
+     * In a shared world every player has their own game state, so a script
+     * acts on the player who runs it rather than the game it was loaded with.
+     * 
+     * @param state the game state of the player running this command
+     * @param out the buffer to append the output of this to
+     * @return true iff this command ran without error
+     */
+    public boolean execute(GameState state, StringBuilder out) {
+        if (!Metrics.isEnabled()) {
+            return run(state, out);
+        }
+        long start = System.nanoTime();
+        long bytes = Metrics.allocatedBytes();
+        try {
+            return run(state, out);
+        } finally {
+            Metrics.recordCommand(commandType, start, bytes);
+        }
+    }
+
+    /**
+     * Runs this command for execute(GameState, StringBuilder).
+     */
+    private boolean run(GameState state, StringBuilder out) {
         /*
          * Giant switch statement here We should also check for bad commands
          * here. It should probably throw an exception so that the developer
@@ -58,156 +134,151 @@ public class Command {
         switch (commandType) {
         case LOOK:
             // look in the room you are in
-            return gameModel.look();
+            state.look(out);
+            return true;
         case GO:
             // move the player to the given room if it is connected (does not
             // return string)
             String shortName = args[0];
-            boolean goSuccess = gameModel.go(shortName);
-            if (!goSuccess) {
-                return null;
-            } else {
-                return "";
-            }
+            return state.go(shortName);
             // case TELEPORT:
             // move player regardless of location (does not return string)
             // String shortName = args[0];
-            // gameModel.getGameState().teleport(shortName);
+            // state.teleport(shortName);
             // return "";
         case ADD_HEALTH:
             // add to player health (does not return string)
             try {
                 int health = Integer.parseInt(args[0]);
-                gameModel.getGameState().getPlayer().addHealth(health);
-                return "";
+                state.getPlayer().addHealth(health);
+                return true;
             } catch (NumberFormatException e) {
-                return null;
+                return false;
             }
         case GIVE_ITEM:
             // give item to player inventory (does not return string)
             String item = args[0];
-            gameModel.getGameState().getPlayer().giveItem(item);
-            return "";
+            state.getPlayer().giveItem(item);
+            return true;
         case TAKE_ITEM:
             // remove item from player inventory if they have it (does not
             // return string)
             item = args[0];
             // could raise error if item doesn't exist, but we don't
-            gameModel.getGameState().getPlayer().removeItem(item);
-            return "";
+            state.getPlayer().removeItem(item);
+            return true;
         case PRINT:
-            // return text to print
-            String printString = args[0];
-            return printString;
+            // append text to print
+            out.append(args[0]);
+            return true;
         case SET_NAME:
             // set long name of the player's current room
             String newName = args[0];
-            gameModel.getGameState().getCurrentRoom().setName(newName);
-            return "";
+            state.getCurrentRoom().setName(newName);
+            return true;
         case SET_SHORT_DESC:
             // set short description of the player's current room
             String newShortDesc = args[0];
-            gameModel.getGameState().getCurrentRoom()
-                    .setShortDesc(newShortDesc);
-            return "";
+            state.getCurrentRoom().setShortDesc(newShortDesc);
+            return true;
         case SET_DESC:
             // set long description of the player's current room
             String newLongDesc = args[0];
-            gameModel.getGameState().getCurrentRoom().setLongDesc(newLongDesc);
-            return "";
+            state.getCurrentRoom().setLongDesc(newLongDesc);
+            return true;
         case ADD_ITEM:
             // add item to the player's current room
             item = args[0];
-            gameModel.getGameState().getCurrentRoom().addItem(item);
-            return "";
+            state.getCurrentRoom().addItem(item);
+            return true;
         case REMOVE_ITEM:
             // remove one of the specified item from the player's current room
             item = args[0];
             // could raise error if item doesn't exist, but we don't
-            gameModel.getGameState().getCurrentRoom().removeItem(item);
-            return "";
+            state.getCurrentRoom().removeItem(item);
+            return true;
         case ADD_SCRIPT:
             // add the specified script to the player's current room
-            return addScript();
+            return addScript(state);
         case REMOVE_SCRIPT:
             // remove the script with the specified input from the player's
             // current room
             String input = args[0];
 
-            Room targetRoom = gameModel.getGameState().getCurrentRoom();
+            Room targetRoom = state.getCurrentRoom();
             if (!targetRoom.acceptsInput(input)) {
                 // input is not accepted by this room, nothing to remove
                 // we could throw error here but choose not to to make the game
                 // more stable.
-                return "";
+                return true;
             } else {
                 targetRoom.removeScript(input);
-                return "";
+                return true;
             }
         case SET_NAME_OF:
             // set name of the specified room
             shortName = args[0];
             newName = args[1];
-            targetRoom = gameModel.getGameState().getRoom(shortName);
+            targetRoom = state.getRoom(shortName);
             if (targetRoom == null) {
                 // no room with this name
-                return null;
+                return false;
             } else {
                 targetRoom.setName(newName);
-                return "";
+                return true;
             }
         case SET_SHORT_DESC_OF:
             // set short description of the specified room
             shortName = args[0];
             newShortDesc = args[1];
-            targetRoom = gameModel.getGameState().getRoom(shortName);
+            targetRoom = state.getRoom(shortName);
             if (targetRoom == null) {
                 // no room with this name
-                return null;
+                return false;
             } else {
                 targetRoom.setShortDesc(newShortDesc);
-                return "";
+                return true;
             }
         case SET_DESC_OF:
             // set long description of the specified room
             shortName = args[0];
             newLongDesc = args[1];
-            targetRoom = gameModel.getGameState().getRoom(shortName);
+            targetRoom = state.getRoom(shortName);
             if (targetRoom == null) {
                 // no room with this name
-                return null;
+                return false;
             } else {
                 targetRoom.setLongDesc(newLongDesc);
-                return "";
+                return true;
             }
         case ADD_ITEM_TO:
             // add item to the specified room
             shortName = args[0];
             item = args[1];
-            targetRoom = gameModel.getGameState().getRoom(shortName);
+            targetRoom = state.getRoom(shortName);
             if (targetRoom == null) {
                 // no room with this name
-                return null;
+                return false;
             } else {
                 targetRoom.addItem(item);
-                return "";
+                return true;
             }
         case REMOVE_ITEM_FROM:
             // remove one of the specified item from the specified room
             shortName = args[0];
             item = args[1];
-            targetRoom = gameModel.getGameState().getRoom(shortName);
+            targetRoom = state.getRoom(shortName);
             if (targetRoom == null) {
                 // no room with this name
-                return null;
+                return false;
             } else {
                 // could raise error if item doesn't exist, but we don't
                 targetRoom.removeItem(item);
-                return "";
+                return true;
             }
         case ADD_SCRIPT_TO:
             // add the specified script to the specified room
-            return addScriptTo();
+            return addScriptTo(state);
         case REMOVE_SCRIPT_FROM:
             // remove the script with the specified input from the specified
             // room
@@ -215,127 +286,127 @@ public class Command {
             // input associated with the script to remove
             input = args[1].toLowerCase().trim();
 
-            targetRoom = gameModel.getGameState().getRoom(shortName);
+            targetRoom = state.getRoom(shortName);
             if (targetRoom == null) {
                 // no room with this name
-                return null;
+                return false;
             } else {
                 if (!targetRoom.acceptsInput(input)) {
                     // input is not accepted by this room, nothing to remove
-                    return null;
+                    return false;
                 } else {
                     targetRoom.removeScript(input);
-                    return "";
+                    return true;
                 }
             }
+        case OPEN_EXIT:
+            // open an exit from the first room to the second, labeled if a
+            // label is given
+            String label = args.length > 2 ? args[2] : null;
+            return state.openExit(args[0], args[1], label);
+        case CLOSE_EXIT:
+            // close the exits from the first room to the second, or the exit
+            // of the first room with the given label
+            return state.closeExit(args[0], args[1]);
         default:
             // command not recognized
-            return null;
+            return false;
         }
     }
 
     /**
-     * Adds this Command's script to the player's current room.
+     * Returns the lowercase short name of the room this command names as an
+     * argument, or null if it only acts on the player or the player's current
+     * room. GO returns null, since its argument may be the label of an exit
+     * rather than a room; see destination().
      * 
-     * @return null if there was an error or empty string ("") if script was
-     *         added successfully
+     * @return the short name of the room this command names or null
      */
-    private String addScript() {
-        String input = args[0].toLowerCase().trim();
-        Script scriptToAdd = parseScript(1);
-
-        if (scriptToAdd == null) {
-            // error with script parsing
+    public String targetRoom() {
+        switch (commandType) {
+        case SET_NAME_OF:
+        case SET_SHORT_DESC_OF:
+        case SET_DESC_OF:
+        case ADD_ITEM_TO:
+        case REMOVE_ITEM_FROM:
+        case ADD_SCRIPT_TO:
+        case REMOVE_SCRIPT_FROM:
+        case OPEN_EXIT:
+        case CLOSE_EXIT:
+            return args[0].toLowerCase().trim();
+        default:
             return null;
-        } else {
-            Room targetRoom = gameModel.getGameState().getCurrentRoom();
-            targetRoom.addScript(input, scriptToAdd);
-            return "";
         }
     }
 
     /**
-     * Adds this Command's script to the room specified in args[0].
+     * Returns the lowercase short name or exit label this command moves the
+     * player to, or null if it does not move the player.
      * 
-     * @return null if there was an error or empty string ("") if script was
-     *         added successfully to the specified room
+     * @return the room or exit label this command goes to or null
      */
-    private String addScriptTo() {
-        String shortName = args[0];
-        String input = args[1].toLowerCase().trim();
-        Script scriptToAdd = parseScript(2);
+    public String destination() {
+        return commandType == CommandType.GO ? args[0].toLowerCase().trim()
+                : null;
+    }
 
-        if (scriptToAdd == null) {
-            // error with script parsing
-            return null;
-        } else {
-            Room targetRoom = gameModel.getGameState().getRoom(shortName);
-            if (targetRoom == null) {
-                // no room with this name
-                return null;
-            } else {
-                targetRoom.addScript(input, scriptToAdd);
-                return "";
-            }
+    /**
+     * Returns the flat tokens of this command: its command type, followed by
+     * its args, followed by END_SCRIPT if it adds a script. Compiling these
+     * tokens with ScriptCompiler gives back an equivalent command.
+     * 
+     * @return the flat tokens of this command
+     */
+    public List<String> toTokens() {
+        List<String> tokens = new ArrayList<>(args.length + 2);
+        tokens.add(commandType.name());
+        for (String arg : args) {
+            tokens.add(arg);
+        }
+        if (script != null) {
+            tokens.add(ScriptCompiler.END_SCRIPT);
         }
+        return tokens;
     }
 
     /**
-     * Parses args starting at scriptStart index and builds a Script. Returns
-     * the parsed Script or null if there was an error.
+     * Adds this Command's script to the player's current room.
      * 
-     * @param scriptStart the index at the start of the Script
-     * @return the parsed Script or null if there was an error
+     * @param state the game state of the player running this command
+     * @return true since the script was compiled when this was constructed
+     *         and can always be added
      */
-    private Script parseScript(int scriptStart) {
-        Script script = new Script();
-
-        // while there are still commands, add to the script
-        int i = scriptStart;
-        while (i < args.length) {
-            // Build next command
-            CommandType ct = CommandType.get(args[i]);
-            List<String> arguments = new ArrayList<String>();
-
-            // build arg array
-            if (ct == CommandType.ADD_SCRIPT || ct == CommandType.ADD_SCRIPT_TO) {
-                // continue until we find END_SCRIPT
-                i++;
-                while (!args[i].equalsIgnoreCase("END_SCRIPT")) {
-                    arguments.add(args[i]);
-                    i++;
-                    if (i >= args.length) {
-                        throw new InvalidGameDataException(
-                                "END_SCRIPT not found. END_SCRIPT required at the end of ADD_SCRIPT commands");
-                    }
-                }
-                i++;
-            } else {
-                // continue until we find another command
-                i++;
-                while (i < args.length && CommandType.get(args[i]) == null) {
-                    arguments.add(args[i]);
-                    i++;
-                }
-            }
-
-            // add this command to the script
-            String[] args = (String[]) arguments.toArray(new String[0]);
-            Command nextCommand = new Command(gameModel, ct, args);
-            script.add(nextCommand);
+    private boolean addScript(GameState state) {
+        Room targetRoom = state.getCurrentRoom();
+        targetRoom.addScript(scriptInput, script);
+        return true;
+    }
 
-            // at the end of the loop, if we haven't seen every argument to this
-            // command, then we still have commands left to add to this script.
+    /**
+     * Adds this Command's script to the room specified in args[0].
+     * 
+     * @param state the game state of the player running this command
+     * @return false if there was an error or true if script was added
+     *         successfully to the specified room
+     */
+    private boolean addScriptTo(GameState state) {
+        String shortName = args[0];
+        Room targetRoom = state.getRoom(shortName);
+        if (targetRoom == null) {
+            // no room with this name
+            return false;
+        } else {
+            targetRoom.addScript(scriptInput, script);
+            return true;
         }
-        return script;
     }
 
     /**
      * Checks to make sure the representation invariant is not violated
      */
     private void checkRep() {
-        // null checks
-        assert (gameModel != null);
+        // null checks; gameModel may be null, in which case this only runs
+        // through execute(GameState, StringBuilder)
         assert (commandType != null);
         assert (args != null);
 
@@ -386,10 +457,13 @@ public class Command {
             assert (args.length == 1);
             break;
         case ADD_SCRIPT:
-            assert (args.length > 2);
+            // input of the new script, then the flat tokens of its commands,
+            // of which there may be none
+            assert (args.length >= 1);
             break;
         case REMOVE_SCRIPT:
-            assert (args.length > 2);
+            // input of the script to remove
+            assert (args.length == 1);
             break;
         case SET_NAME_OF:
             // short name of desired room, long name to set given room's name to
@@ -414,15 +488,28 @@ public class Command {
             assert (args.length == 2);
             break;
         case ADD_SCRIPT_TO:
-            assert (args.length > 3);
+            // short name of desired room, input of the new script, then the
+            // flat tokens of its commands
+            assert (args.length >= 2);
             break;
         case REMOVE_SCRIPT_FROM:
-            assert (args.length > 3);
+            // short name of desired room, input of the script to remove
+            assert (args.length == 2);
+            break;
+        case OPEN_EXIT:
+            // short name of the room the exit leads from, short name of the
+            // room it leads to, optional label
+            assert (args.length == 2 || args.length == 3);
+            break;
+        case CLOSE_EXIT:
+            // short name of the room the exit leads from, short name of the
+            // room it leads to or its label
+            assert (args.length == 2);
             break;
         }
     }
 
-    public class InvalidGameDataException extends RuntimeException {
+    public static class InvalidGameDataException extends RuntimeException {
         public InvalidGameDataException() {
             // this is inserted by java automatically, but I'll keep it in for
             // readability for readers who don't know.
@@ -0,0 +1,275 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <b>CommandTrie</b> maps the commands a player can type to values, and finds
+ * commands the player might have meant: commands that start with what they
+ * typed, and commands that are a few typos away from it.
+ *
+ * Every lookup follows one path from the root, so it costs time in proportion
+ * to the length of the input, not the number of commands. Synonyms are just
+ * several commands mapped to the same value.
+ *
+ * CommandTrie is not thread safe. Room locks itself around its trie.
+ *
+ * @param <V> the type of value each command maps to
+ * @author Sean Wammer
+ */
+public class CommandTrie<V> {
+
+    private final Node<V> root = new Node<>();
+
+    /**
+     * Maps the given command to the given value, replacing any value it was
+     * mapped to before.
+     *
+     * @param command the command to add
+     * @param value the value command maps to
+     * @return the value command mapped to before, or null if it was not in
+     *         this
+     * @throws IllegalArgumentException if command or value is null
+     */
+    public V put(String command, V value) {
+        if (command == null || value == null) {
+            throw new IllegalArgumentException(
+                    "Command and value must not be null.");
+        }
+        V old = get(command);
+        Node<V> node = root;
+        if (old == null) {
+            node.count++;
+        }
+        for (int i = 0; i < command.length(); i++) {
+            node = node.childOrAdd(command.charAt(i));
+            if (old == null) {
+                node.count++;
+            }
+        }
+        node.value = value;
+        return old;
+    }
+
+    /**
+     * Removes the given command from this.
+     *
+     * @param command the command to remove
+     * @return the value command mapped to, or null if it was not in this
+     */
+    public V remove(String command) {
+        V old = get(command);
+        if (old == null) {
+            return null;
+        }
+        Node<V> node = root;
+        node.count--;
+        for (int i = 0; i < command.length(); i++) {
+            Node<V> child = node.child(command.charAt(i));
+            if (--child.count == 0) {
+                // nothing else goes through here
+                node.removeChild(command.charAt(i));
+                return old;
+            }
+            node = child;
+        }
+        node.value = null;
+        return old;
+    }
+
+    /**
+     * Returns the value the given command maps to, or null if it is not in
+     * this.
+     *
+     * @param command the command to look up
+     * @return the value command maps to or null
+     */
+    public V get(String command) {
+        Node<V> node = find(command);
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Returns the number of commands in this.
+     *
+     * @return the number of commands in this
+     */
+    public int size() {
+        return root.count;
+    }
+
+    /**
+     * Returns the one command that starts with the given prefix, or null if
+     * no command or more than one command does. A command always completes
+     * to itself.
+     *
+     * @param prefix the start of a command
+     * @return the only command starting with prefix, or null
+     */
+    public String complete(String prefix) {
+        Node<V> node = find(prefix);
+        if (node == null) {
+            return null;
+        }
+        if (node.value != null) {
+            return prefix;
+        }
+        if (node.count != 1) {
+            return null;
+        }
+        // follow the only path down to the command
+        StringBuilder command = new StringBuilder(prefix);
+        while (node.value == null) {
+            command.append(node.chars[0]);
+            node = node.kids[0];
+        }
+        return command.toString();
+    }
+
+    /**
+     * Returns the commands at most maxDistance single character insertions,
+     * deletions or substitutions away from the given input, closest first,
+     * and in alphabetical order among equally close commands. Returns at most
+     * limit commands.
+     *
+     * @param input what the player typed
+     * @param maxDistance the most typos to allow
+     * @param limit the most commands to return
+     * @return the commands close to input
+     */
+    public List<String> suggest(String input, int maxDistance, int limit) {
+        List<Suggestion> found = new ArrayList<>();
+        int[] row = new int[input.length() + 1];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = i;
+        }
+        if (root.value != null && row[input.length()] <= maxDistance) {
+            found.add(new Suggestion("", row[input.length()]));
+        }
+        suggest(root, new StringBuilder(), input, row, maxDistance, found);
+
+        Collections.sort(found, new Comparator<Suggestion>() {
+            @Override
+            public int compare(Suggestion a, Suggestion b) {
+                if (a.distance != b.distance) {
+                    return a.distance - b.distance;
+                }
+                return a.command.compareTo(b.command);
+            }
+        });
+        List<String> commands = new ArrayList<>();
+        for (Suggestion s : found.subList(0, Math.min(limit, found.size()))) {
+            commands.add(s.command);
+        }
+        return commands;
+    }
+
+    /**
+     * Extends the edit distance table one character for each child of node,
+     * only following children that can still be within maxDistance of input.
+     */
+    private void suggest(Node<V> node, StringBuilder path, String input,
+            int[] row, int maxDistance, List<Suggestion> found) {
+        for (int k = 0; k < node.size; k++) {
+            char c = node.chars[k];
+            Node<V> child = node.kids[k];
+            int[] next = new int[row.length];
+            next[0] = row[0] + 1;
+            int best = next[0];
+            for (int i = 1; i < row.length; i++) {
+                int substitute = row[i - 1]
+                        + (input.charAt(i - 1) == c ? 0 : 1);
+                next[i] = Math.min(substitute,
+                        Math.min(row[i] + 1, next[i - 1] + 1));
+                best = Math.min(best, next[i]);
+            }
+            if (best > maxDistance) {
+                // every longer command is even further away
+                continue;
+            }
+            path.append(c);
+            if (child.value != null && next[input.length()] <= maxDistance) {
+                found.add(new Suggestion(path.toString(),
+                        next[input.length()]));
+            }
+            suggest(child, path, input, next, maxDistance, found);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    /**
+     * Returns the node at the end of the given path, or null if there is none.
+     */
+    private Node<V> find(String path) {
+        Node<V> node = root;
+        for (int i = 0; i < path.length() && node != null; i++) {
+            node = node.child(path.charAt(i));
+        }
+        return node;
+    }
+
+    private static class Suggestion {
+        final String command;
+        final int distance;
+
+        Suggestion(String command, int distance) {
+            this.command = command;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * One character of one or more commands. Children are kept in small
+     * parallel arrays since most nodes have only one or two.
+     */
+    private static class Node<V> {
+        char[] chars = new char[0];
+        @SuppressWarnings("unchecked")
+        Node<V>[] kids = (Node<V>[]) new Node<?>[0];
+        int size;
+
+        /** the value of the command ending here, or null if none does */
+        V value;
+        /** the number of commands ending here or below */
+        int count;
+
+        Node<V> child(char c) {
+            for (int i = 0; i < size; i++) {
+                if (chars[i] == c) {
+                    return kids[i];
+                }
+            }
+            return null;
+        }
+
+        Node<V> childOrAdd(char c) {
+            Node<V> child = child(c);
+            if (child == null) {
+                if (size == chars.length) {
+                    chars = Arrays.copyOf(chars, Math.max(2, size * 2));
+                    kids = Arrays.copyOf(kids, chars.length);
+                }
+                child = new Node<>();
+                chars[size] = c;
+                kids[size] = child;
+                size++;
+            }
+            return child;
+        }
+
+        void removeChild(char c) {
+            for (int i = 0; i < size; i++) {
+                if (chars[i] == c) {
+                    size--;
+                    chars[i] = chars[size];
+                    kids[i] = kids[size];
+                    kids[size] = null;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -40,56 +40,201 @@ public enum CommandType {
     SET_NAME_OF,
     SET_SHORT_DESC_OF, SET_DESC_OF,
     ADD_ITEM_TO, REMOVE_ITEM_FROM,
-    ADD_SCRIPT_TO, REMOVE_SCRIPT_FROM;
+    ADD_SCRIPT_TO, REMOVE_SCRIPT_FROM,
+    
+    ///////////////////
+    // exit commands //
+    ///////////////////
+    
+    // <from room>, <to room>[, <label>]
+    OPEN_EXIT,
+    // <from room>, <to room or label>
+    CLOSE_EXIT;
     
+    /**
+     * Lookup table from command names to CommandTypes. Built from values() so
+     * a new CommandType is recognized as soon as it is declared above.
+     */
+    private static volatile Table table = new Table(16);
+
+    static {
+        for (CommandType type : values()) {
+            register(type.name(), type);
+        }
+    }
+
     /**
      * Returns the appropriate CommandType enum from the given String type or null if there is no match.
      * 
+     * Matching ignores case and surrounding whitespace and does not allocate.
+     * 
      * @param type the string representing a desired CommandType
      * @return the CommandType matching the given type
      */
     public static CommandType get(String type) {
-        type = type.toUpperCase().trim();
-        if (type.equals("LOOK")) {
-            return LOOK;
-        } else if (type.equals("GO")) {
-            return GO;
-        } else if (type.equals("PRINT")) {
-            return PRINT;
-        } else if (type.equals("ADD_HEALTH")) {
-            return ADD_HEALTH;
-        } else if (type.equals("GIVE_ITEM")) {
-            return GIVE_ITEM;
-        } else if (type.equals("TAKE_ITEM")) {
-            return TAKE_ITEM;
-        } else if (type.equals("SET_NAME")) {
-            return SET_NAME;
-        } else if (type.equals("SET_DESC")) {
-            return SET_DESC;
-        } else if (type.equals("ADD_ITEM")) {
-            return ADD_ITEM;
-        } else if (type.equals("REMOVE_ITEM")) {
-            return REMOVE_ITEM;
-        } else if (type.equals("ADD_SCRIPT")) {
-            return ADD_SCRIPT;
-        } else if (type.equals("REMOVE_SCRIPT")) {
-            return REMOVE_SCRIPT;
-        } else if (type.equals("SET_NAME_OF")) {
-            return SET_NAME_OF;
-        } else if (type.equals("SET_SHORT_DESC_OF")) {
-            return SET_SHORT_DESC_OF;
-        } else if (type.equals("SET_DESC_OF")) {
-            return SET_DESC_OF;
-        } else if (type.equals("ADD_ITEM_TO")) {
-            return ADD_ITEM_TO;
-        } else if (type.equals("REMOVE_ITEM_FROM")) {
-            return REMOVE_ITEM_FROM;
-        } else if (type.equals("ADD_SCRIPT_TO")) {
-            return ADD_SCRIPT_TO;
-        } else if (type.equals("REMOVE_SCRIPT_FROM")) {
-            return REMOVE_SCRIPT_FROM;
-        } else {
+        // trim by index instead of copying
+        int start = 0;
+        int end = type.length();
+        while (start < end && type.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && type.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return table.get(type, start, end);
+    }
+
+    /**
+     * Registers name as another way to write the given CommandType, for
+     * example an alias or a shorthand. Names are not case sensitive. Replaces
+     * any CommandType previously registered under name.
+     * 
+     * @param name the name to recognize
+     * @param type the CommandType name stands for
+     * @throws IllegalArgumentException if name or type is null or name is
+     *         blank
+     */
+    public static synchronized void register(String name, CommandType type) {
+        if (name == null || type == null) {
+            throw new IllegalArgumentException("name and type must not be null");
+        }
+        name = name.trim();
+        if (name.isEmpty()) {
+            throw new IllegalArgumentException("name must not be blank");
+        }
+
+        // copy on write so that get never sees a half built table
+        Table current = table;
+        Table next = new Table(current.size + 1 > current.keys.length / 2
+                ? current.keys.length * 2 : current.keys.length);
+        for (int i = 0; i < current.keys.length; i++) {
+            if (current.keys[i] != null) {
+                next.put(current.keys[i], current.types[i]);
+            }
+        }
+        next.put(name, type);
+        table = next;
+    }
+
+    /**
+     * Removes name as a way to write a CommandType, undoing register. A
+     * CommandType's own name goes back to standing for that CommandType, so
+     * built in names can never be lost. Has no effect if name was never
+     * registered.
+     * 
+     * @param name the name to stop recognizing
+     * @throws IllegalArgumentException if name is null
+     */
+    public static synchronized void unregister(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("name must not be null");
+        }
+        String key = Table.fold(name.trim());
+
+        // copy on write, as in register
+        Table current = table;
+        Table next = new Table(current.keys.length);
+        for (int i = 0; i < current.keys.length; i++) {
+            if (current.keys[i] != null && !current.keys[i].equals(key)) {
+                next.put(current.keys[i], current.types[i]);
+            }
+        }
+        for (CommandType type : values()) {
+            if (type.name().equals(key)) {
+                next.put(key, type);
+            }
+        }
+        table = next;
+    }
+
+    /**
+     * Open addressing hash table keyed by case-insensitive command names.
+     */
+    private static class Table {
+
+        final String[] keys;
+        final CommandType[] types;
+        int size;
+        /** length of the longest key, longer names can be rejected at once */
+        int maxLength;
+
+        /**
+         * @param capacity number of slots, must be a power of two
+         */
+        Table(int capacity) {
+            keys = new String[capacity];
+            types = new CommandType[capacity];
+        }
+
+        void put(String name, CommandType type) {
+            // keys are stored folded so lookups only fold the input, and
+            // folded the same way, whatever the default locale
+            name = fold(name);
+            int mask = keys.length - 1;
+            int i = hash(name, 0, name.length()) & mask;
+            while (keys[i] != null && !matches(keys[i], name, 0, name.length())) {
+                i = (i + 1) & mask;
+            }
+            if (keys[i] == null) {
+                size++;
+            }
+            maxLength = Math.max(maxLength, name.length());
+            keys[i] = name;
+            types[i] = type;
+        }
+
+        CommandType get(String name, int start, int end) {
+            if (end - start > maxLength) {
+                // most script tokens are long arguments, not command names
+                return null;
+            }
+            int mask = keys.length - 1;
+            int i = hash(name, start, end) & mask;
+            while (keys[i] != null) {
+                if (matches(keys[i], name, start, end)) {
+                    return types[i];
+                }
+                i = (i + 1) & mask;
+            }
             return null;
         }
+
+        static boolean matches(String key, String name, int start, int end) {
+            if (key.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != fold(name.charAt(start + i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        static String fold(String name) {
+            char[] folded = new char[name.length()];
+            for (int i = 0; i < folded.length; i++) {
+                folded[i] = fold(name.charAt(i));
+            }
+            return new String(folded);
+        }
+
+        static char fold(char c) {
+            if (c >= 'a' && c <= 'z') {
+                return (char) (c - ('a' - 'A'));
+            } else if (c >= 128) {
+                return Character.toUpperCase(c);
+            }
+            return c;
+        }
+
+        static int hash(String name, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + fold(name.charAt(i));
+            }
+            // spread the high bits down, since the table is masked
+            return h ^ (h >>> 16);
+        }
     }
 }
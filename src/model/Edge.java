@@ -10,10 +10,15 @@ package model;
  * 
  * where A is the parent Node and B is the child node.
  * 
+ * An edge may also have a label, such as "north", stored as its id in
+ * LabelDictionary.EXITS. Two edges between the same nodes with different
+ * labels are different edges.
+ * 
  * @param <S> the type that Node stores
  * 
  * @specfield parent: Node<S> // the Node that this points from
  * @specfield child : Node<S> // the Node that this points to
+ * @specfield label : int // the label id of this, or NO_LABEL
  */
 public class Edge<S> {
 
@@ -21,6 +26,8 @@ public class Edge<S> {
     private Node<S> parent;
     /** Node that this Edge points to */
     private Node<S> child;
+    /** id of the label of this Edge, or LabelDictionary.NO_LABEL */
+    private int label;
 
     // Abstraction Function:
     // For a given Edge e, "the node that e points to" is synonymous with
@@ -28,7 +35,7 @@ public class Edge<S> {
     // and "the node that e points from" is synonymous with 'parent'
     //
     // Representation Invariant:
-    // label != null
+    // label == NO_LABEL or label is an id of LabelDictionary.EXITS
     // parent != null
     // child != null
 
@@ -39,11 +46,25 @@ public class Edge<S> {
      * @throws IllegalArgumentException if (label == null || child == null)
      */
     public Edge(Node<S> parent, Node<S> child) {
+        this(parent, child, LabelDictionary.NO_LABEL);
+    }
+
+    /**
+     * Constructs a new Edge with the given parent and child nodes and label
+     * 
+     * @param parent The Node that this Edge points from
+     * @param child The Node that this Edge points to
+     * @param label the id of the label of this Edge in LabelDictionary.EXITS,
+     *        or LabelDictionary.NO_LABEL
+     * @throws IllegalArgumentException if (parent == null || child == null)
+     */
+    public Edge(Node<S> parent, Node<S> child, int label) {
         if (parent == null || child == null) {
             throw new IllegalArgumentException("neither argument can be null");
         }
         this.parent = parent;
         this.child = child;
+        this.label = label;
         checkRep();
     }
 
@@ -65,11 +86,21 @@ public class Edge<S> {
         return child;
     }
 
+    /**
+     * Returns the id of the label of this Edge, or LabelDictionary.NO_LABEL
+     * 
+     * @return the id of the label of this Edge
+     */
+    public int label() {
+        return label;
+    }
+
     /**
      * Standard equality operation.
      * 
      * @return true if and only if o is an instance of Edge, the label of this
-     *         and obj are equal and the child of this and obj are equal
+     *         and obj are equal and the parent and child of this and obj are
+     *         equal
      */
     @Override
     public boolean equals(Object o) {
@@ -82,7 +113,8 @@ public class Edge<S> {
         }
 
         Edge<?> other = (Edge<?>) o;
-        return parent().equals(other.parent()) && child().equals(other.child());
+        return parent().equals(other.parent()) && child().equals(other.child())
+                && label == other.label;
     }
 
     /**
@@ -94,6 +126,7 @@ public class Edge<S> {
     public int hashCode() {
         int result = 17;
         result = 31 * result + parent.hashCode() + child.hashCode();
+        result = 31 * result + label;
         return result;
     }
 
@@ -8,7 +8,6 @@ import java.util.List;
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 import utility.GameParser;
 import utility.GameSaver;
-import org.apache.commons.io.FileUtils;
 
 /**
  * Offers an interface with the game data for main, and offers access to the
@@ -26,19 +25,35 @@ public class GameModel {
 
     /**
      * Constructs a new GameModel
+     * 
+     * @throws IOException if the save files can not be read
      */
-    private GameModel(int fileNumber) {
+    private GameModel(int fileNumber) throws IOException {
         saveFile = fileNumber;
 
         // load game state for given save file.
         String saveDir = "saves/" + fileNumber;
-        gameState = new GameParser().loadGameState(this, saveDir);
+        int threads = Runtime.getRuntime().availableProcessors();
+        gameState = new GameParser(threads).loadGameState(this, saveDir,
+                FRESH_DIR);
+    }
+
+    /**
+     * Constructs a new GameModel for a player joining the given shared world.
+     */
+    private GameModel(SharedWorld world, String playerName) {
+        saveFile = 0;
+        gameState = world.join(playerName);
     }
 
     /**
      * Picks a new save file number, and creates a new save file directory for
      * this new game. Returns a GameModel with the new save file loaded.
      * 
+     * The new save directory starts out empty. Rooms are read from the shared
+     * new game world until they are changed, so starting a game costs the
+     * same no matter how big the world is.
+     * 
      * Returns null if we save directory was not created successfully.
      * 
      * @throws IOException
@@ -46,23 +61,34 @@ public class GameModel {
     public static GameModel newGame() throws IOException {
         // we pick a new save file, make sure that it isn't taken, then return
         List<Integer> saveFiles = getSaveFiles();
-        int fileNumber = -1;
         for (int i = 1; i <= MAX_SAVES; i++) {
             if (!saveFiles.contains(i)) {
-                // we found an unused save slot! Lets copy the new game files
-                // into a new directory with this file number.
-                fileNumber = i;
-                File freshGameDir = new File(FRESH_DIR);
-                File savesDir = new File("saves/" + fileNumber);
-                boolean success = savesDir.mkdir();
-                if (!success) {
+                // we found an unused save slot! An empty directory with this
+                // file number is a fresh game.
+                File savesDir = new File("saves/" + i);
+                if (savesDir.mkdir()) {
+                    return new GameModel(i);
+                } else if (!savesDir.exists()) {
                     return null;
-                } else {
-                    FileUtils.copyDirectory(freshGameDir, savesDir);
                 }
+                // another session took this slot first, try the next one
             }
         }
-        return new GameModel(fileNumber);
+        return null;
+    }
+
+    /**
+     * Returns a GameModel for a new player with the given name in the given
+     * shared world. The player sees and changes the same rooms as every other
+     * player in the world. Shared worlds are not saved, so the model has no
+     * save file.
+     * 
+     * @param world the world to join
+     * @param playerName the name of the new player
+     * @return a GameModel for the new player
+     */
+    public static GameModel joinWorld(SharedWorld world, String playerName) {
+        return new GameModel(world, playerName);
     }
 
     /**
@@ -101,28 +127,39 @@ public class GameModel {
     }
 
     /**
-     * Returns the save file number that has been loaded for this.
+     * Returns the save file number that has been loaded for this, or 0 if
+     * this is a player in a shared world.
      * 
-     * @return the save file number that has been loaded for this
+     * @return the save file number that has been loaded for this or 0
      */
     public int getSaveFileNumber() {
         return saveFile;
     }
 
     /**
-     * Saves the loaded game, or has no effect if there is no loaded game.
+     * Saves the changes made to the loaded game since it was last saved, or
+     * has no effect if there is no loaded game. Cheap enough to call after
+     * every turn, since only the changes are written.
+     * 
+     * @throws IOException if the save files can not be written
      */
-    public void saveGame() {
-        String filePath = "save/" + saveFile;
+    public void saveGame() throws IOException {
+        if (saveFile == 0) {
+            // a player in a shared world has no save file
+            return;
+        }
+        String filePath = "saves/" + saveFile;
         GameSaver.saveGameState(filePath, gameState);
     }
 
     /**
      * Moves the player to the room with the given name if that room is adjacent
-     * to the current room. Returns true if the player is moved successfully or
-     * false if the given room is not adjacent to the player's current room.
+     * to the current room, or through the exit with the given label. Returns
+     * true if the player is moved successfully or false if the given room is
+     * not adjacent to the player's current room and no exit has that label.
      * 
-     * @param roomName the short name of the room to travel to.
+     * @param roomName the short name of the room to travel to, or the label
+     *        of the exit to take.
      * @return true if the player is moved successfully and false if the given
      *         room is not adjacent to the player's current room.
      */
@@ -130,6 +167,22 @@ public class GameModel {
         return gameState.go(roomName);
     }
 
+    /**
+     * Moves the player along the shortest route to the room with the given
+     * name, through as many rooms as it takes. Returns the short names of the
+     * rooms the player went to in order, ending with the given room, or null if
+     * the room can not be reached from the current room and the player is not
+     * moved. In a shared world the player stops early if another player
+     * closes an exit on the way.
+     * 
+     * @param roomName the short name of the room to travel to
+     * @return the rooms the player went to in order, or null if there is no
+     *         route to the given room
+     */
+    public List<String> travel(String roomName) {
+        return gameState.travel(roomName);
+    }
+
     /**
      * Returns the short name of the room the player is currently in.
      * 
@@ -176,17 +229,19 @@ public class GameModel {
      *         places this player can travel to
      */
     public String look() {
-        // add long description
-        String ret = longDesc();
-        ret += "\n";
-
-        // build list of travel locations
-        ret += "You can go to";
-        for (String shortName : adjacentRooms()) {
-            ret += " " + shortName;
-        }
+        StringBuilder out = new StringBuilder();
+        look(out);
+        return out.toString();
+    }
 
-        return ret;
+    /**
+     * Appends the long description of the room the player is currently in and
+     * a list of the places the player can travel to to out.
+     * 
+     * @param out the buffer to append the description to
+     */
+    public void look(StringBuilder out) {
+        gameState.look(out);
     }
 
     /**
@@ -201,6 +256,30 @@ public class GameModel {
         return gameState.adjacentRooms();
     }
 
+    /**
+     * Returns the labels of the exits leading out of the player's current
+     * room, such as "north", sorted. Returns an empty list if no exit is
+     * labeled.
+     * 
+     * @return the labels of the exits the player can go through
+     */
+    public List<String> exitLabels() {
+        return gameState.exitLabels();
+    }
+
+    /**
+     * Returns up to limit commands accepted in the player's current room that
+     * the player may have meant by the given unrecognized command, closest
+     * first.
+     * 
+     * @param input the unrecognized command
+     * @param limit the most commands to return
+     * @return commands close to input
+     */
+    public List<String> suggest(String input, int limit) {
+        return gameState.getCurrentRoom().suggest(input, limit);
+    }
+
     /**
      * Runs the script associated with the command in the player's current room.
      * Returns the output that the command produces, or null if the command is
@@ -210,7 +289,35 @@ public class GameModel {
      * @return the output produced by the command input
      */
     public String execute(String input) {
-        return gameState.execute(input);
+        StringBuilder out = new StringBuilder();
+        if (!execute(input, out)) {
+            return null;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Runs the script associated with the command in the player's current room,
+     * appending the output that the command produces to out. Returns false and
+     * appends nothing if the command is not recognized.
+     * 
+     * Callers can reuse one buffer across turns to avoid building a new String
+     * for every command.
+     * 
+     * @param input the command to attempt to run in this room
+     * @param out the buffer to append the output of the command to
+     * @return true iff the command is recognized in the player's current room
+     */
+    public boolean execute(String input, StringBuilder out) {
+        if (!Metrics.isEnabled()) {
+            return gameState.execute(input, out);
+        }
+        long start = System.nanoTime();
+        try {
+            return gameState.execute(input, out);
+        } finally {
+            Metrics.recordTurn(start);
+        }
     }
 
     /**
@@ -1,10 +1,17 @@
 package model;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * <b>GameState</b> represents the current game data. GameState can be mutated
@@ -21,7 +28,18 @@ public class GameState {
      * 
      * -fields all non-null
      * -currRoom is always lowercase (true case is stored in Room itself)
-     * -rooms.contains(nameToRoom.get(currRoom)) == true
+     * -rooms.contains(nameToRoom.get(currRoom)) == true, once the current
+     *  room has been loaded
+     * -each entry of exits is current iff its version is the version of its
+     *  room's edges in rooms
+     * -if world != null, rooms, nameToRoom and changedRooms are the world's
+     *  and are never mutated except through the rooms themselves
+     * -if source == null every room is in nameToRoom and rooms and overlay is
+     *  null. Otherwise nameToRoom and rooms hold the rooms loaded so far, a
+     *  room's edges are in rooms iff its short name is in edgesLoaded, and
+     *  overlay is a subset of the loaded rooms
+     * -changedExits and exitOverlay only hold loaded rooms whose edges are
+     *  loaded
      */
     
     private Graph<Room> rooms;
@@ -29,6 +47,54 @@ public class GameState {
     private Player player;
     private Map<String, Room> nameToRoom;
 
+    /** lowercase short name of a room to the exits leading out of it */
+    private Map<String, Exits> exits;
+
+    /** supplies rooms that have not been loaded yet, or null */
+    private RoomSource source;
+    /** lowercase short names of the loaded rooms whose edges are loaded */
+    private Set<String> edgesLoaded;
+
+    /**
+     * rooms that replaced the source's rooms when loaded or were mutated and
+     * saved since, or null if source == null
+     */
+    private Set<Room> overlay;
+    /** the world this player shares with other players, or null */
+    private SharedWorld world;
+    /**
+     * the rooms locked while this player runs a script in a shared world, or
+     * null if no script is running
+     */
+    private List<Room> locked;
+    /** a room the running script tried to move to without having locked it */
+    private Room unlocked;
+
+    /** rooms mutated since the last call to clearChanges */
+    private Set<Room> changedRooms;
+    /** true iff the player moved since the last call to clearChanges */
+    private boolean playerMoved;
+    /** rooms whose exits changed since the last call to clearChanges */
+    private Set<Room> changedExits;
+    /**
+     * rooms whose exits differ from the exits they were first loaded with,
+     * because they were replaced when loading or were changed and saved since
+     */
+    private Set<Room> exitOverlay;
+
+    /**
+     * plans routes over rooms when source == null and world == null, or over
+     * the source's rooms with the exits in plannerExits when exits changed
+     */
+    private RoutePlanner planner;
+    /** the rooms graph version that planner was built against */
+    private int plannerVersion;
+    /**
+     * lowercase short names of the rooms whose exits differ from the source's
+     * to the rooms they lead to, as they were when planner was built
+     */
+    private Map<String, Set<String>> plannerExits;
+
     /**
      * Constructs a new GameState with the given data. GameState behavior not
      * specified if any of the given parameters are mutated. Internal state is
@@ -52,6 +118,62 @@ public class GameState {
         this.player = player;
         this.currRoom = currentPlayerRoom.toLowerCase().trim();
         this.nameToRoom = nameToRoom;
+        this.exits = new HashMap<>();
+
+        this.changedRooms = new LinkedHashSet<>();
+        for (Room room : nameToRoom.values()) {
+            room.trackChanges(changedRooms);
+        }
+        this.changedExits = new LinkedHashSet<>();
+        this.exitOverlay = new LinkedHashSet<>();
+    }
+
+    /**
+     * Constructs a new GameState whose rooms are loaded from source the first
+     * time they are needed. Rooms in loadedRooms are used instead of the
+     * source's rooms with the same short name, but their edges still come from
+     * source.
+     * 
+     * @param source supplies rooms and their edges on demand
+     * @param player the player status
+     * @param currentPlayerRoom the short name of the room that the player is
+     *        currently in
+     * @param loadedRooms a map of lowercase short names to rooms that replace
+     *        the rooms in source
+     */
+    public GameState(RoomSource source, Player player,
+            String currentPlayerRoom, Map<String, Room> loadedRooms) {
+        this(new Graph<Room>(), player, currentPlayerRoom, loadedRooms);
+        this.source = source;
+        this.edgesLoaded = new HashSet<>();
+        this.overlay = new LinkedHashSet<>(loadedRooms.values());
+        for (Room room : loadedRooms.values()) {
+            rooms.addNode(room);
+        }
+    }
+
+    /**
+     * Constructs a new GameState for a player in the given shared world. The
+     * player has their own current room, but the rooms are the world's rooms,
+     * so the player sees changes made by other players.
+     * 
+     * @param world the world to join
+     * @param player the player status
+     * @param currentPlayerRoom the short name of the room that the player is
+     *        currently in
+     */
+    GameState(SharedWorld world, Player player, String currentPlayerRoom) {
+        this.world = world;
+        this.rooms = world.rooms;
+        this.player = player;
+        this.currRoom = currentPlayerRoom.toLowerCase().trim();
+        this.nameToRoom = world.nameToRoom;
+        this.exits = new HashMap<>();
+        this.changedRooms = world.changedRooms;
+        // shared worlds are not saved, so these only ever hold this player's
+        // changes
+        this.changedExits = new LinkedHashSet<>();
+        this.exitOverlay = new LinkedHashSet<>();
     }
 
     // TODO: add all CommandType requirements. Player commands are handled
@@ -67,43 +189,430 @@ public class GameState {
     /**
      * Returns all the short names of the rooms the the player can travel to
      * from their current room. Returns an empty set if there are no paths
-     * leading from this room.
+     * leading from this room. The returned list can not be modified.
      */
     public List<String> adjacentRooms() {
-        List<String> availableRooms = new ArrayList<>();
+        return exits(currRoom).shortNames;
+    }
+
+    /**
+     * Returns all the short names of the rooms that can be travelled to from
+     * the room with the given short name. Returns an empty list if there are
+     * no paths leading from that room or there is no such room. The returned
+     * list can not be modified.
+     * 
+     * @param shortName the short name of the room to travel from
+     * @return the short names of the rooms adjacent to the given room
+     */
+    public List<String> adjacentRooms(String shortName) {
+        shortName = shortName.toLowerCase().trim();
+        if (getRoom(shortName) == null) {
+            return Collections.emptyList();
+        }
+        return exits(shortName).shortNames;
+    }
 
-        // retrieve all the short names of all the adjacent rooms
-        for (Room room : rooms.adjacent(nameToRoom.get(currRoom))) {
-            availableRooms.add(room.getShortName());
+    /**
+     * Returns the labels of the exits leading out of the player's current
+     * room, such as "north", sorted. Returns an empty list if no exit is
+     * labeled. The returned list can not be modified.
+     * 
+     * @return the sorted lower case labels of the exits of the current room
+     */
+    public List<String> exitLabels() {
+        return exits(currRoom).labels;
+    }
+
+    /**
+     * Returns the labels of the exits leading out of the room with the given
+     * short name, mapped to the short names of the rooms they lead to in their
+     * true case. Returns an empty map if no exit is labeled or there is no
+     * such room.
+     * 
+     * @param shortName the short name of the room the exits lead from
+     * @return the lower case label of each labeled exit and where it leads
+     */
+    public Map<String, String> labeledExits(String shortName) {
+        shortName = shortName.toLowerCase().trim();
+        if (getRoom(shortName) == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> ret = new HashMap<>();
+        for (Map.Entry<String, Room> exit : exits(shortName).byLabel
+                .entrySet()) {
+            ret.put(exit.getKey(), exit.getValue().getShortName());
         }
-        
-        return availableRooms;
+        return ret;
+    }
+
+    /**
+     * Returns every exit leading out of the room with the given short name, as
+     * the short name of the room it leads to in its true case paired with its
+     * lower case label, or with null if it is unlabeled. A room may have a
+     * labeled and an unlabeled exit to the same room, and both are returned.
+     * Returns an empty list if there is no such room.
+     * 
+     * @param shortName the short name of the room the exits lead from
+     * @return where each exit of the room leads and its label
+     */
+    public List<Map.Entry<String, String>> allExits(String shortName) {
+        Room room = getRoom(shortName);
+        if (room == null) {
+            return Collections.emptyList();
+        }
+        loadEdges(room);
+        List<Map.Entry<String, String>> ret = new ArrayList<>();
+        for (Map.Entry<Room, String> exit : rooms.exits(room)) {
+            ret.add(new AbstractMap.SimpleImmutableEntry<>(exit.getKey()
+                    .getShortName(), exit.getValue()));
+        }
+        return ret;
     }
 
     /**
      * Returns true if and only if we were able to move the player to the room
-     * with the specified short name. If the there is no such room with the
-     * given short name adjacent to the players current room, we return false
-     * and the player is not moved.
+     * with the specified short name, or through the exit of the player's
+     * current room with the specified label. If the there is no such room with
+     * the given short name adjacent to the players current room and no exit
+     * with that label, we return false and the player is not moved. A room
+     * with the given short name is chosen over an exit with the same label.
      * 
      * This is not case sensitive.
      * 
-     * @param shortName the short name of the room to move the player to
+     * @param shortName the short name of the room to move the player to, or
+     *        the label of the exit to take
      * @return true iff the player is successfully moved to the room with the
-     *         given short name
+     *         given short name or through the exit with the given label
      */
     public boolean go(String shortName) {
         // sanity check to make sure we are all on the same page for caps (main
         // will probably do this anyway but we don't rely on that)
-        shortName = shortName.toLowerCase().trim();
-        if (!adjacentRooms().contains(shortName)) {
-            // the given room doesn't exist or is not adjacent to current room
+        Room target = destination(currRoom, shortName.toLowerCase().trim());
+        if (target == null) {
+            // the given room doesn't exist or is not adjacent to current
+            // room, and no exit has that label
+            return false;
+        }
+        if (locked != null && !locked.contains(target)) {
+            // the running script was planned before this exit led there, so
+            // stop it here and let execute run it again with the room locked
+            unlocked = target;
+            return false;
+        }
+        // the requested room is adjacent so we move player there
+        willMove();
+        currRoom = target.getShortName().toLowerCase();
+        playerMoved = true;
+        return true;
+    }
+
+    /**
+     * Returns the room that going to the given lowercase short name or exit
+     * label from the room with the given lowercase short name leads to, or
+     * null if it leads nowhere. A room is chosen over a label.
+     */
+    private Room destination(String from, String shortName) {
+        Exits exits = exits(from);
+        Room target = exits.byName.get(shortName);
+        return target != null ? target : exits.byLabel.get(shortName);
+    }
+
+    /**
+     * Returns the short names of the rooms on the shortest route from the
+     * player's current room to the room with the given short name, in order
+     * and ending with that room. Returns an empty list if the player is
+     * already there, and null if there is no such room or no route to it.
+     * 
+     * This is not case sensitive.
+     * 
+     * @param shortName the short name of the room to find a route to
+     * @return the rooms to go to in order, or null if there is no route
+     */
+    public List<String> route(String shortName) {
+        return planner().route(currRoom, shortName);
+    }
+
+    /**
+     * Moves the player along the shortest route to the room with the given
+     * short name, going to each room on the way in turn as go would. Returns
+     * the short names of the rooms gone to, ending with the given room, or
+     * null if there is no route and the player is not moved.
+     * 
+     * In a shared world another player may close an exit on the route while
+     * the player travels, in which case the player stops in front of it and
+     * the returned rooms end where the player stopped.
+     * 
+     * This is not case sensitive.
+     * 
+     * @param shortName the short name of the room to travel to
+     * @return the rooms gone to in order, or null if there is no route
+     */
+    public List<String> travel(String shortName) {
+        List<String> route = route(shortName);
+        if (route == null) {
+            return null;
+        }
+        for (int i = 0; i < route.size(); i++) {
+            if (!go(route.get(i))) {
+                // another player closed an exit on the route after it was
+                // planned
+                return new ArrayList<>(route.subList(0, i));
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Returns the planner for the rooms of this game, building it if the room
+     * graph changed since it was built. A game that loads its rooms from a
+     * source uses the source's planner until it changes an exit, and from then
+     * on the source's planner with the changed exits swapped in.
+     */
+    private RoutePlanner planner() {
+        if (source != null) {
+            if (exitOverlay.isEmpty() && changedExits.isEmpty()) {
+                return source.planner();
+            }
+            Map<String, Set<String>> replaced = new HashMap<>();
+            for (Room room : savedExits()) {
+                Set<String> children = new HashSet<>();
+                for (Room child : rooms.adjacent(room)) {
+                    children.add(child.getShortName().toLowerCase());
+                }
+                replaced.put(room.getShortName().toLowerCase(), children);
+            }
+            if (planner == null || !replaced.equals(plannerExits)) {
+                planner = source.planner().withExits(replaced);
+                plannerExits = replaced;
+            }
+            return planner;
+        }
+        if (world != null) {
+            return world.planner();
+        }
+        if (planner == null || plannerVersion != rooms.version()) {
+            planner = RoutePlanner.of(rooms);
+            plannerVersion = rooms.version();
+        }
+        return planner;
+    }
+
+    /**
+     * Saves the player's position to the transaction running on this thread,
+     * if there is one, so that the transaction can undo the move that is about
+     * to be made.
+     */
+    private void willMove() {
+        Transaction tx = Transaction.current();
+        if (tx == null || tx.hasSaved(this)) {
+            return;
+        }
+        final String oldRoom = currRoom;
+        final boolean oldMoved = playerMoved;
+        tx.save(this, new Transaction.Undo() {
+            @Override
+            public void undo() {
+                currRoom = oldRoom;
+                playerMoved = oldMoved;
+            }
+        });
+    }
+
+    /**
+     * Adds an exit from the room with the short name from to the room with the
+     * short name to, labeled with the given label, or unlabeled if label is
+     * null. If the room already has an exit with this label leading somewhere
+     * else, that exit now leads to the given room instead. Returns false and
+     * changes nothing if there is no room with either name or label is blank.
+     * Opening an exit that is already open has no effect.
+     * 
+     * Players in a shared world see the new exit at once. This is not case
+     * sensitive.
+     * 
+     * @param from the short name of the room the exit leads from
+     * @param to the short name of the room the exit leads to
+     * @param label the label of the exit, or null for none
+     * @return true iff there are such rooms and the exit is open
+     */
+    public boolean openExit(String from, String to, final String label) {
+        final Room fromRoom = getRoom(from);
+        final Room toRoom = getRoom(to);
+        if (fromRoom == null || toRoom == null
+                || (label != null && label.trim().isEmpty())) {
             return false;
-        } else {
-            // the requested room is adjacent so we move player there
-            currRoom = shortName;
+        }
+        loadEdges(fromRoom);
+        final Room old = label == null ? null : rooms.exit(fromRoom, label);
+        if (!rooms.addEdge(fromRoom, toRoom, label)) {
+            // already open
             return true;
         }
+        exitsChanged(fromRoom, new Transaction.Undo() {
+            @Override
+            public void undo() {
+                rooms.removeEdge(fromRoom, toRoom, label);
+                if (old != null) {
+                    rooms.addEdge(fromRoom, old, label);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Removes the exits leading from the room with the short name from to the
+     * room with the short name exit, or, if it leads to no such room, the exit
+     * of the room labeled exit. Returns false and changes nothing if there is
+     * no room with the short name from. Closing an exit that is not open has
+     * no effect.
+     * 
+     * Players in a shared world stop seeing the exit at once. This is not case
+     * sensitive.
+     * 
+     * @param from the short name of the room the exit leads from
+     * @param exit the short name of the room the exits lead to, or the label
+     *        of the exit to close
+     * @return true iff there is a room with the short name from
+     */
+    public boolean closeExit(String from, String exit) {
+        final Room fromRoom = getRoom(from);
+        if (fromRoom == null) {
+            return false;
+        }
+        loadEdges(fromRoom);
+        Room toRoom = getRoom(exit);
+        final List<String> closed = new ArrayList<>();
+        if (toRoom != null && rooms.containsEdge(fromRoom, toRoom, null)) {
+            closed.add(null);
+        }
+        for (Map.Entry<String, Room> labeled : rooms.labels(fromRoom)
+                .entrySet()) {
+            if (labeled.getValue() == toRoom) {
+                closed.add(labeled.getKey());
+            }
+        }
+        if (closed.isEmpty()) {
+            toRoom = rooms.exit(fromRoom, exit);
+            if (toRoom == null) {
+                // nothing to close
+                return true;
+            }
+            closed.add(exit.toLowerCase().trim());
+        }
+
+        final Room target = toRoom;
+        for (String label : closed) {
+            rooms.removeEdge(fromRoom, target, label);
+        }
+        exitsChanged(fromRoom, new Transaction.Undo() {
+            @Override
+            public void undo() {
+                for (String label : closed) {
+                    rooms.addEdge(fromRoom, target, label);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Replaces the exits leading out of the room with the given short name,
+     * as when loading a save. The room's i'th exit leads to the room named
+     * targets.get(i) and has the label labels.get(i), or no label if that is
+     * null. The new exits count as saved, so they are written to every
+     * snapshot of this game but not to the journal.
+     * 
+     * @param shortName the short name of the room the exits lead from
+     * @param targets the short names of the rooms the exits lead to
+     * @param labels the labels of the exits, null for unlabeled exits
+     * @throws IllegalArgumentException if there is no room with the short name
+     *         or one of the targets, or the lists differ in size
+     */
+    public void replaceExits(String shortName, List<String> targets,
+            List<String> labels) {
+        if (targets.size() != labels.size()) {
+            throw new IllegalArgumentException(
+                    "targets and labels must be the same size");
+        }
+        Room room = getRoom(shortName);
+        if (room == null) {
+            throw new IllegalArgumentException("no room " + shortName);
+        }
+        List<Room> targetRooms = new ArrayList<>();
+        for (String target : targets) {
+            Room targetRoom = getRoom(target);
+            if (targetRoom == null) {
+                throw new IllegalArgumentException("no room " + target);
+            }
+            targetRooms.add(targetRoom);
+        }
+        if (source != null) {
+            // the source's edges are replaced, so they are never loaded
+            edgesLoaded.add(room.getShortName().toLowerCase());
+        }
+        for (Room child : rooms.adjacent(room)) {
+            rooms.removeEdge(room, child);
+        }
+        for (int i = 0; i < targetRooms.size(); i++) {
+            rooms.addEdge(room, targetRooms.get(i), labels.get(i));
+        }
+        exitOverlay.add(room);
+    }
+
+    /**
+     * Records that the exits of the given room changed, and saves undo to the
+     * transaction running on this thread, if there is one.
+     */
+    private void exitsChanged(Room room, Transaction.Undo undo) {
+        changedExits.add(room);
+        Transaction tx = Transaction.current();
+        if (tx != null) {
+            tx.log(undo);
+        }
+    }
+
+    /**
+     * Returns the exits leading out of the room with the given lowercase short
+     * name, building them if they are not cached or the room's edges changed
+     * since they were. A change to the edges of one room, by this player or
+     * another in a shared world, leaves the exits cached for the others.
+     * 
+     * @param shortName lowercase short name of the room
+     * @return the exits leading out of the room
+     */
+    private Exits exits(String shortName) {
+        Room room = getRoom(shortName);
+        loadEdges(room);
+        // read before the edges, so a change made meanwhile is seen next time
+        int version = rooms.version(room);
+        Exits ret = exits.get(shortName);
+        if (ret == null || ret.version != version) {
+            ret = new Exits(version, rooms.adjacent(room), rooms.labels(room));
+            exits.put(shortName, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Adds the edges leading out of the given room to the room graph if they
+     * come from source and have not been added yet.
+     * 
+     * @param room a loaded room
+     */
+    private void loadEdges(Room room) {
+        String shortName = room.getShortName().toLowerCase();
+        if (source == null || edgesLoaded.contains(shortName)) {
+            return;
+        }
+        List<String> targets = source.exits(shortName);
+        List<String> labels = source.exitLabels(shortName);
+        for (int i = 0; i < targets.size(); i++) {
+            Room targetRoom = getRoom(targets.get(i));
+            if (targetRoom != null) {
+                rooms.addEdge(room, targetRoom, labels.get(i));
+            }
+        }
+        edgesLoaded.add(shortName);
     }
 
     // /**
@@ -142,7 +651,16 @@ public class GameState {
         // sanity check to make sure we are all on the same page for caps (main
         // will probably do this anyway but we don't rely on that)
         shortName = shortName.toLowerCase().trim();
-        return nameToRoom.get(shortName);
+        Room room = nameToRoom.get(shortName);
+        if (room == null && source != null) {
+            room = source.loadRoom(shortName);
+            if (room != null) {
+                nameToRoom.put(shortName, room);
+                rooms.addNode(room);
+                room.trackChanges(changedRooms);
+            }
+        }
+        return room;
     }
 
     /**
@@ -151,7 +669,97 @@ public class GameState {
      * @return the room the player is currently in.
      */
     public Room getCurrentRoom() {
-        return nameToRoom.get(currRoom.toLowerCase());
+        return getRoom(currRoom);
+    }
+
+    /**
+     * Returns all the rooms in this game that have been loaded. Unless this
+     * game loads rooms on demand, that is every room. The returned collection
+     * can not be modified.
+     * 
+     * @return all the loaded rooms in this game
+     */
+    public Collection<Room> getRooms() {
+        return Collections.unmodifiableCollection(nameToRoom.values());
+    }
+
+    /**
+     * Returns the rooms that a snapshot of this game must hold. Unless this
+     * game loads rooms on demand, that is every room. Otherwise it is the rooms
+     * that differ from the rooms in source: those that replaced them when this
+     * was constructed and those that have been mutated since. The returned
+     * collection can not be modified.
+     * 
+     * @return the rooms that a snapshot of this game must hold
+     */
+    public Collection<Room> savedRooms() {
+        if (source == null) {
+            return getRooms();
+        }
+        Set<Room> ret = new LinkedHashSet<>(overlay);
+        ret.addAll(changedRooms);
+        return Collections.unmodifiableCollection(ret);
+    }
+
+    /**
+     * Returns the rooms that have been mutated since the last call to
+     * clearChanges, in the order they were first mutated. The returned
+     * collection can not be modified.
+     * 
+     * @return the rooms mutated since changes were last cleared
+     */
+    public Collection<Room> changedRooms() {
+        return Collections.unmodifiableCollection(changedRooms);
+    }
+
+    /**
+     * Returns the rooms whose exits have been opened or closed since the last
+     * call to clearChanges, in the order they first changed. The returned
+     * collection can not be modified.
+     * 
+     * @return the rooms whose exits changed since changes were last cleared
+     */
+    public Collection<Room> changedExits() {
+        return Collections.unmodifiableCollection(changedExits);
+    }
+
+    /**
+     * Returns the rooms whose exits a snapshot of this game must hold: those
+     * whose exits were replaced when this was loaded and those whose exits
+     * have changed since. Every other room has the exits it was first loaded
+     * with. The returned collection can not be modified.
+     * 
+     * @return the rooms whose exits a snapshot of this game must hold
+     */
+    public Collection<Room> savedExits() {
+        Set<Room> ret = new LinkedHashSet<>(exitOverlay);
+        ret.addAll(changedExits);
+        return Collections.unmodifiableCollection(ret);
+    }
+
+    /**
+     * Returns true iff the player has been mutated or has moved since the last
+     * call to clearChanges.
+     * 
+     * @return true iff the player changed since changes were last cleared
+     */
+    public boolean playerChanged() {
+        return playerMoved || player.changed;
+    }
+
+    /**
+     * Forgets all the changes recorded so far. Called once the changes have
+     * been saved.
+     */
+    public void clearChanges() {
+        if (overlay != null) {
+            overlay.addAll(changedRooms);
+        }
+        changedRooms.clear();
+        exitOverlay.addAll(changedExits);
+        changedExits.clear();
+        playerMoved = false;
+        player.changed = false;
     }
 
     /**
@@ -175,6 +783,176 @@ public class GameState {
      *         not recognized in this Room.
      */
     public String execute(String input) {
-        return nameToRoom.get(currRoom).execute(input);
+        StringBuilder out = new StringBuilder();
+        if (!execute(input, out)) {
+            return null;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Executes the command on the player's current room, appending the output
+     * that the commands produce to out. Returns false and appends nothing if
+     * the command was not recognized in this room.
+     * 
+     * In a shared world, no other player can change the rooms the command
+     * touches while it runs.
+     * 
+     * @param input the command to attempt to run
+     * @param out the buffer to append the output of the commands to
+     * @return true iff the command is recognized in the player's current room
+     */
+    public boolean execute(String input, StringBuilder out) {
+        if (world == null) {
+            return getCurrentRoom().execute(input, this, out);
+        }
+
+        // Lock every room the script can touch before running it, always in
+        // order of lowercase short name so that two players never wait on
+        // each other. Scripts that touch different rooms run in parallel.
+        Room room = getCurrentRoom();
+        List<Room> extra = Collections.emptyList();
+        while (true) {
+            String accepted = room.resolve(input, player.items());
+            if (accepted == null) {
+                return false;
+            }
+            Script script = room.getScript(accepted);
+            if (script == null) {
+                // removed since we resolved it
+                continue;
+            }
+            List<Room> locks = lockOrder(room, script, extra);
+            unlocked = null;
+            if (executeLocked(locks, 0, room, accepted, script, out)) {
+                return true;
+            }
+            if (unlocked != null) {
+                // the script moved through an exit that did not lead there
+                // when it was planned, and was undone; plan it again with
+                // that room locked too
+                extra = new ArrayList<>(extra);
+                extra.add(unlocked);
+            }
+            // or another player replaced the script before we had the locks
+        }
+    }
+
+    /**
+     * Appends the long description of the room the player is currently in and
+     * a list of the places the player can travel to to out.
+     * 
+     * @param out the buffer to append the description to
+     */
+    public void look(StringBuilder out) {
+        // add long description
+        out.append(getCurrentRoom().getLongDesc());
+        out.append("\n");
+
+        // build list of travel locations
+        out.append("You can go to");
+        for (String shortName : adjacentRooms()) {
+            out.append(" ").append(shortName);
+        }
+        List<String> labels = exitLabels();
+        if (!labels.isEmpty()) {
+            out.append("\nExits:");
+            for (String label : labels) {
+                out.append(" ").append(label);
+            }
+        }
+    }
+
+    /**
+     * Returns the rooms that running the given script in the given room can
+     * touch, and the given extra rooms, sorted by lowercase short name.
+     * 
+     * The script's moves are followed from the start through the exits as
+     * they are now, so that going through a labeled exit locks the room it
+     * leads to. Following stops at a move that leads nowhere yet; if the
+     * script makes it lead somewhere, go stops the script before the move.
+     */
+    private List<Room> lockOrder(Room start, Script script, List<Room> extra) {
+        SortedMap<String, Room> ret = new TreeMap<>();
+        String at = start.getShortName().toLowerCase();
+        ret.put(at, start);
+        for (Room room : extra) {
+            ret.put(room.getShortName().toLowerCase(), room);
+        }
+        for (String shortName : script.rooms()) {
+            Room room = getRoom(shortName);
+            if (room != null) {
+                ret.put(shortName, room);
+            }
+        }
+        for (String move : script.moves()) {
+            Room room = destination(at, move);
+            if (room == null) {
+                break;
+            }
+            at = room.getShortName().toLowerCase();
+            ret.put(at, room);
+        }
+        return new ArrayList<>(ret.values());
+    }
+
+    /**
+     * Locks locks[i] and every lock after it in turn, then runs the script
+     * registered to input in room if it is still the given script. Returns
+     * false without running anything if the script has been replaced, or
+     * false with the script undone if it tried to move to a room not in
+     * locks.
+     */
+    private boolean executeLocked(List<Room> locks, int i, Room room,
+            String input, Script script, StringBuilder out) {
+        if (i == locks.size()) {
+            if (room.getScript(input) != script) {
+                return false;
+            }
+            locked = locks;
+            try {
+                return room.execute(input, this, out) && unlocked == null;
+            } finally {
+                locked = null;
+            }
+        }
+        synchronized (locks.get(i)) {
+            return executeLocked(locks, i + 1, room, input, script, out);
+        }
+    }
+
+    /**
+     * The exits leading out of one room, indexed by lowercase short name and
+     * by label so that moving is a single hash lookup.
+     */
+    private static class Exits {
+
+        /** the version of the room's edges these were built from */
+        final int version;
+        /** lowercase short name of each adjacent room to that room */
+        final Map<String, Room> byName;
+        /** short names of the adjacent rooms in their true case */
+        final List<String> shortNames;
+        /** lower case label of each labeled exit to the room it leads to */
+        final Map<String, Room> byLabel;
+        /** the keys of byLabel, sorted */
+        final List<String> labels;
+
+        Exits(int version, Iterable<Room> adjacent,
+                Map<String, Room> labeled) {
+            this.version = version;
+            Map<String, Room> map = new HashMap<>();
+            List<String> names = new ArrayList<>();
+            for (Room room : adjacent) {
+                map.put(room.getShortName().toLowerCase(), room);
+                names.add(room.getShortName());
+            }
+            byName = map;
+            shortNames = Collections.unmodifiableList(names);
+            byLabel = labeled;
+            List<String> sorted = new ArrayList<>(labeled.keySet());
+            Collections.sort(sorted);
+            labels = Collections.unmodifiableList(sorted);
+        }
     }
 }
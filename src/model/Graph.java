@@ -1,35 +1,71 @@
 package model;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Graph represents a mutable, directed, non-labeled, non-multigraph. Edges of
- * Graph are one way, there are no edge labels, and edges are unique. Graphs can
- * consist of a number of nodes connected by edges.
- * 
+ * Graph represents a mutable, directed graph whose edges may be labeled. Edges
+ * of Graph are one way and unique. An edge may have a label, such as "north",
+ * and two edges between the same nodes are allowed if their labels differ. No
+ * node has two edges leading out of it with the same label, so a node and a
+ * label name at most one child. Graphs can consist of a number of nodes
+ * connected by edges.
+ *
+ * Labels are kept as small int ids in LabelDictionary.EXITS, so labeled edges
+ * cost no more than unlabeled ones.
+ *
+ * Graph is thread safe, and reading it never blocks. The edges of each node
+ * are kept in an immutable snapshot that a change replaces whole, so a reader
+ * always sees the edges of a node as they were either before or after a
+ * change, never half way through it. Changes are made one at a time. A change
+ * to an edge replaces the snapshots of both its nodes one after the other, so
+ * a reader that looks at both while the change is made may see it in one and
+ * not yet in the other. Moving a label to a new child replaces the parent's
+ * snapshot first and in one step, so the label always leads somewhere. Graphs are meant to be read far more often than they
+ * change: a change copies the edges of the nodes it touches.
+ *
  * Nodes store any objects of type K. All objects in graph of type K in nodes
  * must be unique, that is, for two objects in this i,j i.equals(j) must be
  * false.
- * 
+ *
  * @author Sean Wammer
- * 
+ *
  * @param <K> the type of the data that nodes in the this Graph store
  */
 public class Graph<K> {
-    // not yet implemented!
 
-    private Map<Node<K>, Set<Edge<K>>> nodes;
+    /*
+     * Representation invariant:
+     * ========================
+     *
+     * -an edge is in nodes.get(edge.parent()).out iff it is in
+     *  nodes.get(edge.child()).in, once a change is finished
+     * -adjacency snapshots are never mutated once they are in nodes
+     * -in each adjacency snapshot, labels[i] == out[i].label()
+     * -an adjacency snapshot's outVersion is the version of the change that
+     *  last changed its out edges, or 0 if none has
+     * -nodes and version are only written while holding the lock on this
+     */
+
+    /** each node to a snapshot of the edges leading into and out of it */
+    private final ConcurrentHashMap<Node<K>, Adjacency<K>> nodes;
+    /** incremented every time nodes or edges change */
+    private volatile int version;
 
     public Graph() {
-        nodes = new HashMap<>();
+        nodes = new ConcurrentHashMap<>();
     }
 
     /**
      * Returns true iff this contains a node with the given data.
-     * 
+     *
      * @param data - the data of the node to check
      * @return true iff the given node is in this graph.
      * @throws IllegalArgumentException if (data == null)
@@ -44,22 +80,23 @@ public class Graph<K> {
 
     /**
      * Adds a new node to this Graph.
-     * 
+     *
      * If the given node is already in this graph, then the previous node is
      * overwritten. The previous node is overwritten if and only if the two
      * nodes are equal, that is, for two nodes A and B, if A.equals(B), and B is
      * added after A is added, B will overwrite A.
-     * 
+     *
      * @param data The data to be inserted as a node in this Graph
      * @throws IllegalArgumentException if (data == null)
      */
-    public void addNode(K data) {
+    public synchronized void addNode(K data) {
         if (data == null) {
             throw new IllegalArgumentException("data must not be null");
         }
         Node<K> node = new Node<K>(data);
         if (!nodes.containsKey(node)) {
-            nodes.put(node, new HashSet<Edge<K>>());
+            nodes.put(node, Adjacency.<K> empty());
+            version++;
         }
     }
 
@@ -67,20 +104,42 @@ public class Graph<K> {
      * Adds an edge to the graph from parent to child. If parent or child nodes
      * are not in this graph they will be added to the graph as well as new
      * nodes.
-     * 
+     *
      * Duplicate edges are not added.
-     * 
+     *
      * @param parent The K the added edge points from
      * @param child The K the added edge points to
+     * @return true iff this Graph changed
      * @throws IllegalArgumentException if (parent == null || child == null)
      */
-    public void addEdge(K parent, K child) {
+    public boolean addEdge(K parent, K child) {
+        return addEdge(parent, child, null);
+    }
+
+    /**
+     * Adds an edge with the given label to the graph from parent to child. If
+     * parent or child nodes are not in this graph they will be added to the
+     * graph as well as new nodes. A null label adds an unlabeled edge.
+     *
+     * Duplicate edges are not added. If parent already has an edge with this
+     * label leading to a different child, that edge is replaced.
+     *
+     * @param parent The K the added edge points from
+     * @param child The K the added edge points to
+     * @param label the label of the added edge, or null for none
+     * @return true iff this Graph changed
+     * @throws IllegalArgumentException if (parent == null || child == null)
+     *         or label is blank
+     */
+    public synchronized boolean addEdge(K parent, K child, String label) {
         if (parent == null || child == null) {
             throw new IllegalArgumentException(
                     "parent and child must not be null");
         }
 
-        Edge edge = new Edge<K>(new Node<K>(parent), new Node<K>(child));
+        int labelId = LabelDictionary.EXITS.intern(label);
+        Edge<K> edge = new Edge<K>(new Node<K>(parent), new Node<K>(child),
+                labelId);
         Node<K> parentNode = edge.parent();
         Node<K> childNode = edge.child();
 
@@ -91,42 +150,425 @@ public class Graph<K> {
             addNode(child);
         }
 
-        // add edge to existing set in map
-        nodes.get(parentNode).add(edge);
+        Adjacency<K> parentEdges = nodes.get(parentNode);
+        if (parentEdges.indexOut(edge) >= 0) {
+            return false;
+        }
+        Edge<K> old = null;
+        if (labelId != LabelDictionary.NO_LABEL) {
+            int i = parentEdges.indexLabel(labelId);
+            old = i < 0 ? null : parentEdges.out[i];
+        }
+
+        // the parent drops the old exit and gains the new one in a single
+        // snapshot, so a reader never finds the label leading nowhere
+        int stamp = version + 1;
+        Adjacency<K> next = old == null ? parentEdges : parentEdges
+                .removeOut(old, stamp);
+        next = next.addOut(edge, stamp);
+        if (childNode.equals(parentNode)) {
+            next = next.addIn(edge);
+        }
+        if (old != null && old.child().equals(parentNode)) {
+            next = next.removeIn(old);
+        }
+        nodes.put(parentNode, next);
+        if (!childNode.equals(parentNode)) {
+            nodes.put(childNode, nodes.get(childNode).addIn(edge));
+        }
+        if (old != null && !old.child().equals(parentNode)) {
+            nodes.put(old.child(), nodes.get(old.child()).removeIn(old));
+        }
+        version++;
+        return true;
     }
 
     /**
-     * Removes the edge in this Graph from given parent to the given child. Has
-     * no effect if the edge does not exist.
-     * 
+     * Removes the node with the given data from this Graph, along with every
+     * edge leading into or out of it. Has no effect if there is no such node.
+     *
+     * Takes time in proportion to the number of edges of the node and its
+     * neighbors, not the size of the graph.
+     *
+     * @param data the data of the node to remove
+     * @throws IllegalArgumentException if (data == null)
+     */
+    public synchronized void removeNode(K data) {
+        if (data == null) {
+            throw new IllegalArgumentException("data must not be null");
+        }
+        Node<K> node = new Node<>(data);
+        Adjacency<K> edges = nodes.remove(node);
+        if (edges == null) {
+            return;
+        }
+        for (Edge<K> edge : edges.out) {
+            // a self loop's snapshot went with the node
+            Adjacency<K> child = nodes.get(edge.child());
+            if (child != null) {
+                nodes.put(edge.child(), child.removeIn(edge));
+            }
+        }
+        for (Edge<K> edge : edges.in) {
+            Adjacency<K> parent = nodes.get(edge.parent());
+            if (parent != null) {
+                nodes.put(edge.parent(), parent.removeOut(edge, version + 1));
+            }
+        }
+        version++;
+    }
+
+    /**
+     * Removes the edges in this Graph from given parent to the given child,
+     * whatever their labels. Has no effect if there is no such edge.
+     *
      * You specify the target edge by specifying end point nodes, A and B in
      * edge, (A,B).
-     * 
+     *
      * @param parent The node the target edge points from
      * @param child The node the target edge points to
+     * @return true iff this Graph changed
+     * @throws IllegalArgumentException if (parent == null || child == null)
+     */
+    public synchronized boolean removeEdge(K parent, K child) {
+        if (parent == null || child == null) {
+            throw new IllegalArgumentException(
+                    "parent and child must not be null");
+        }
+        Node<K> childNode = new Node<K>(child);
+        Adjacency<K> edges = nodes.get(new Node<K>(parent));
+        if (edges == null) {
+            return false;
+        }
+        boolean changed = false;
+        for (Edge<K> edge : edges.out) {
+            if (edge.child().equals(childNode)) {
+                remove(edge);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Removes the edge in this Graph from the given parent to the given child
+     * with the given label, leaving any other edges between them. A null label
+     * removes the unlabeled edge. Has no effect if there is no such edge.
+     *
+     * @param parent The node the target edge points from
+     * @param child The node the target edge points to
+     * @param label the label of the target edge, or null for none
+     * @return true iff this Graph changed
+     * @throws IllegalArgumentException if (parent == null || child == null)
+     */
+    public synchronized boolean removeEdge(K parent, K child, String label) {
+        Edge<K> edge = find(parent, child, label);
+        if (edge == null) {
+            return false;
+        }
+        remove(edge);
+        return true;
+    }
+
+    /**
+     * Returns true iff this Graph has an edge from the given parent to the
+     * given child with the given label. A null label looks for the unlabeled
+     * edge.
+     *
+     * @param parent The node the edge points from
+     * @param child The node the edge points to
+     * @param label the label of the edge, or null for none
+     * @return true iff the edge is in this Graph
+     * @throws IllegalArgumentException if (parent == null || child == null)
      */
-    public void removeEdge(K parent, K child) {
-        Node<K> parentNode = new Node<K>(parent);
-        if (nodes.containsKey(parentNode)) {
-            nodes.get(parentNode).remove(new Node<K>(child));
+    public boolean containsEdge(K parent, K child, String label) {
+        return find(parent, child, label) != null;
+    }
+
+    /**
+     * Returns the edge of this Graph from parent to child with the given
+     * label, or null if there is none.
+     */
+    private Edge<K> find(K parent, K child, String label) {
+        if (parent == null || child == null) {
+            throw new IllegalArgumentException(
+                    "parent and child must not be null");
+        }
+        int labelId = LabelDictionary.EXITS.id(label);
+        if (label != null && labelId == LabelDictionary.NO_LABEL) {
+            // no edge has ever had this label
+            return null;
+        }
+        Edge<K> edge = new Edge<K>(new Node<K>(parent), new Node<K>(child),
+                labelId);
+        Adjacency<K> edges = nodes.get(edge.parent());
+        if (edges == null) {
+            return null;
         }
+        int i = edges.indexOut(edge);
+        return i < 0 ? null : edges.out[i];
+    }
+
+    /**
+     * Removes the given edge, which must be in this Graph. Must be called
+     * while holding the lock on this.
+     */
+    private void remove(Edge<K> edge) {
+        nodes.put(edge.parent(), nodes.get(edge.parent()).removeOut(edge,
+                version + 1));
+        nodes.put(edge.child(), nodes.get(edge.child()).removeIn(edge));
+        version++;
+    }
+
+    /**
+     * Returns a number that changes whenever a node or edge is added to or
+     * removed from this Graph. Lets callers cache things derived from the
+     * graph and notice when those caches are stale.
+     *
+     * The version changes after the change it counts can be seen, so a cache
+     * built after reading the version is never newer than the version says.
+     *
+     * @return the current version of this Graph
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Returns a number that changes whenever an edge leading out of source is
+     * added or removed, or -1 if there is no node with object source. Lets
+     * callers cache things derived from the edges of one node without
+     * dropping them when the rest of the graph changes.
+     *
+     * @param source The node whose edges to check
+     * @return the current version of the edges leading out of source
+     */
+    public int version(K source) {
+        Adjacency<K> edges = nodes.get(new Node<>(source));
+        return edges == null ? -1 : edges.outVersion;
+    }
+
+    /**
+     * Returns all the node objects K in this Graph. Returns an empty set if
+     * this Graph has no nodes.
+     *
+     * @return all the node objects in this Graph
+     */
+    public Set<K> nodes() {
+        Set<K> ret = new HashSet<>();
+        for (Node<K> node : nodes.keySet()) {
+            ret.add(node.data());
+        }
+        return ret;
     }
 
     /**
      * Returns all the node objects K that are adjacent to source, or null if
      * there is no node with object source.
-     * 
+     *
      * @param source The node to retrieve adjacent nodes from
      */
     public Set<K> adjacent(K source) {
+        Adjacency<K> edges = nodes.get(new Node<>(source));
+        if (edges == null) {
+            return null;
+        }
         Set<K> adjacent = new HashSet<>();
-        Node<K> sourceNode = new Node<>(source);
 
         // get all the adjacent objects
-        for (Edge<K> edge : nodes.get(sourceNode)) {
+        for (Edge<K> edge : edges.out) {
             adjacent.add(edge.child().data());
         }
 
         return adjacent;
     }
+
+    /**
+     * Returns all the node objects K that have an edge leading to target, or
+     * null if there is no node with object target.
+     *
+     * Takes time in proportion to the number of edges leading into target.
+     *
+     * @param target The node to retrieve predecessors of
+     */
+    public Set<K> predecessors(K target) {
+        Adjacency<K> edges = nodes.get(new Node<>(target));
+        if (edges == null) {
+            return null;
+        }
+        Set<K> predecessors = new HashSet<>();
+        for (Edge<K> edge : edges.in) {
+            predecessors.add(edge.parent().data());
+        }
+        return predecessors;
+    }
+
+    /**
+     * Returns the node object K that the edge with the given label leads to
+     * from source, or null if source has no edge with that label or there is
+     * no node with object source. Labels are not case sensitive.
+     *
+     * Takes time in proportion to the number of edges leading out of source,
+     * without looking at anything but their label ids.
+     *
+     * @param source The node the edge leads from
+     * @param label the label of the edge
+     * @return the child of the edge with the given label, or null
+     */
+    public K exit(K source, String label) {
+        int id = LabelDictionary.EXITS.id(label);
+        if (id == LabelDictionary.NO_LABEL) {
+            return null;
+        }
+        Adjacency<K> edges = nodes.get(new Node<>(source));
+        int i = edges == null ? -1 : edges.indexLabel(id);
+        return i < 0 ? null : edges.out[i].child().data();
+    }
+
+    /**
+     * Returns every edge leading out of source as the node object K it leads
+     * to paired with its lower case label, or with null if it has no label, or
+     * returns null if there is no node with object source. Two edges to the
+     * same child with different labels are both returned. The edges are in the
+     * order they were added.
+     * 
+     * @param source The node to retrieve edges from
+     * @return the child and label of each edge out of source
+     */
+    public List<Map.Entry<K, String>> exits(K source) {
+        Adjacency<K> edges = nodes.get(new Node<>(source));
+        if (edges == null) {
+            return null;
+        }
+        List<Map.Entry<K, String>> ret = new ArrayList<>(edges.out.length);
+        for (Edge<K> edge : edges.out) {
+            ret.add(new AbstractMap.SimpleImmutableEntry<>(edge.child().data(),
+                    LabelDictionary.EXITS.label(edge.label())));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the lower case labels of the labeled edges leading out of
+     * source mapped to the node objects K they lead to, or null if there is no
+     * node with object source.
+     *
+     * @param source The node to retrieve labeled edges from
+     * @return the labels of the edges out of source and where they lead
+     */
+    public Map<String, K> labels(K source) {
+        Adjacency<K> edges = nodes.get(new Node<>(source));
+        if (edges == null) {
+            return null;
+        }
+        Map<String, K> ret = new HashMap<>();
+        for (Edge<K> edge : edges.out) {
+            if (edge.label() != LabelDictionary.NO_LABEL) {
+                ret.put(LabelDictionary.EXITS.label(edge.label()), edge.child()
+                        .data());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * An immutable snapshot of the edges leading into and out of one node.
+     * Changing the edges makes a new snapshot.
+     */
+    private static final class Adjacency<K> {
+
+        private static final Adjacency<Object> EMPTY = newEmpty();
+
+        /** the edges leading out of the node */
+        final Edge<K>[] out;
+        /** labels[i] is the label id of out[i], kept apart to scan quickly */
+        final int[] labels;
+        /** the edges leading into the node */
+        final Edge<K>[] in;
+        /** the graph version of the last change to out */
+        final int outVersion;
+
+        private Adjacency(Edge<K>[] out, int[] labels, Edge<K>[] in,
+                int outVersion) {
+            this.out = out;
+            this.labels = labels;
+            this.in = in;
+            this.outVersion = outVersion;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Adjacency<Object> newEmpty() {
+            Edge<Object>[] none = (Edge<Object>[]) new Edge<?>[0];
+            return new Adjacency<>(none, new int[0], none, 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <K> Adjacency<K> empty() {
+            return (Adjacency<K>) (Adjacency<?>) EMPTY;
+        }
+
+        int indexOut(Edge<K> edge) {
+            for (int i = 0; i < out.length; i++) {
+                if (out[i].equals(edge)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Returns the index in out of the edge with the given label, or -1. */
+        int indexLabel(int label) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == label) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Adds edge to out in the change to graph version stamp. */
+        Adjacency<K> addOut(Edge<K> edge, int stamp) {
+            int[] nextLabels = Arrays.copyOf(labels, labels.length + 1);
+            nextLabels[labels.length] = edge.label();
+            return new Adjacency<>(add(out, edge), nextLabels, in, stamp);
+        }
+
+        /** Removes edge from out in the change to graph version stamp. */
+        Adjacency<K> removeOut(Edge<K> edge, int stamp) {
+            int i = indexOut(edge);
+            if (i < 0) {
+                return this;
+            }
+            int[] nextLabels = Arrays.copyOf(labels, labels.length - 1);
+            System.arraycopy(labels, i + 1, nextLabels, i, labels.length - i
+                    - 1);
+            return new Adjacency<>(remove(out, edge), nextLabels, in, stamp);
+        }
+
+        Adjacency<K> addIn(Edge<K> edge) {
+            return new Adjacency<>(out, labels, add(in, edge), outVersion);
+        }
+
+        Adjacency<K> removeIn(Edge<K> edge) {
+            return new Adjacency<>(out, labels, remove(in, edge), outVersion);
+        }
+
+        private static <K> Edge<K>[] add(Edge<K>[] edges, Edge<K> edge) {
+            Edge<K>[] ret = Arrays.copyOf(edges, edges.length + 1);
+            ret[edges.length] = edge;
+            return ret;
+        }
+
+        private static <K> Edge<K>[] remove(Edge<K>[] edges, Edge<K> edge) {
+            for (int i = 0; i < edges.length; i++) {
+                if (edges[i].equals(edge)) {
+                    Edge<K>[] ret = Arrays.copyOf(edges, edges.length - 1);
+                    System.arraycopy(edges, i + 1, ret, i, edges.length - i
+                            - 1);
+                    return ret;
+                }
+            }
+            return edges;
+        }
+    }
 }
@@ -0,0 +1,504 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <b>GraphAlgorithms</b> answers questions about the shape of a world: which
+ * rooms can be reached from the start, which rooms lead nowhere, and which
+ * rooms a player can get into but never back out of. A world is checked with
+ * these before it is published.
+ *
+ * Every algorithm runs on the compressed arrays of an IndexedGraph, keeps
+ * sets of rooms in BitSets and its work lists in int arrays, and is iterative,
+ * so it takes time in proportion to the number of rooms and edges and never
+ * overflows the stack however deep the world goes. Reachability can also be
+ * searched for in parallel on a ForkJoinPool.
+ *
+ * All methods freeze the graphs they are given.
+ *
+ * @author Sean Wammer
+ */
+public final class GraphAlgorithms {
+
+    /**
+     * the fewest rooms a level of a parallel search must hold before it is
+     * split between threads, since smaller levels are searched faster on one
+     */
+    private static final int PARALLEL_LEVEL = 4096;
+    /** chunks each thread gets of a level, so threads that finish early help */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private GraphAlgorithms() {
+    }
+
+    /**
+     * Returns the ids of the rooms that can be reached from start, start
+     * included.
+     *
+     * @param graph the rooms and the edges between them
+     * @param start the id of the room to start from
+     * @return the ids of the rooms reachable from start
+     * @throws IndexOutOfBoundsException if start is not a room of graph
+     */
+    public static BitSet reachable(IndexedGraph<?> graph, int start) {
+        checkId(graph, start);
+        return reachable(graph.offsets(), graph.targets(), start);
+    }
+
+    /**
+     * Returns the ids of the rooms that can be reached from start, start
+     * included, searching each level of the graph in parallel on the given
+     * pool once it is large enough.
+     *
+     * @param graph the rooms and the edges between them
+     * @param start the id of the room to start from
+     * @param pool the pool to search on
+     * @return the ids of the rooms reachable from start
+     * @throws IndexOutOfBoundsException if start is not a room of graph
+     */
+    public static BitSet reachable(IndexedGraph<?> graph, int start,
+            ForkJoinPool pool) {
+        checkId(graph, start);
+        final int[] offsets = graph.offsets();
+        final int[] targets = graph.targets();
+        final AtomicLongArray visited = new AtomicLongArray(
+                (graph.size() + 63) >>> 6);
+        claim(visited, start);
+
+        int[] level = { start };
+        int levelSize = 1;
+        List<Callable<int[]>> chunks = new ArrayList<>();
+        while (levelSize > 0) {
+            if (levelSize < PARALLEL_LEVEL || pool.getParallelism() < 2) {
+                level = expand(offsets, targets, visited, level, 0, levelSize);
+                levelSize = level.length;
+                continue;
+            }
+
+            chunks.clear();
+            final int[] current = level;
+            int count = pool.getParallelism() * CHUNKS_PER_THREAD;
+            for (int i = 0; i < count; i++) {
+                final int from = (int) ((long) levelSize * i / count);
+                final int to = (int) ((long) levelSize * (i + 1) / count);
+                chunks.add(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        return expand(offsets, targets, visited, current,
+                                from, to);
+                    }
+                });
+            }
+            List<int[]> found = new ArrayList<>(count);
+            levelSize = 0;
+            for (Future<int[]> chunk : pool.invokeAll(chunks)) {
+                int[] rooms = join(chunk);
+                found.add(rooms);
+                levelSize += rooms.length;
+            }
+            level = new int[levelSize];
+            int next = 0;
+            for (int[] rooms : found) {
+                System.arraycopy(rooms, 0, level, next, rooms.length);
+                next += rooms.length;
+            }
+        }
+
+        long[] words = new long[visited.length()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = visited.get(i);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Returns the ids of the rooms that start can be reached from, start
+     * included.
+     *
+     * @param graph the rooms and the edges between them
+     * @param start the id of the room to end in
+     * @return the ids of the rooms start is reachable from
+     * @throws IndexOutOfBoundsException if start is not a room of graph
+     */
+    public static BitSet reaching(IndexedGraph<?> graph, int start) {
+        checkId(graph, start);
+        int[][] reverse = reverse(graph);
+        return reachable(reverse[0], reverse[1], start);
+    }
+
+    /**
+     * Returns the ids of the rooms with no exits.
+     *
+     * @param graph the rooms and the edges between them
+     * @return the ids of the rooms with no edges leading out of them
+     */
+    public static BitSet deadEnds(IndexedGraph<?> graph) {
+        int[] offsets = graph.offsets();
+        BitSet deadEnds = new BitSet(graph.size());
+        for (int v = 0; v < graph.size(); v++) {
+            if (offsets[v] == offsets[v + 1]) {
+                deadEnds.set(v);
+            }
+        }
+        return deadEnds;
+    }
+
+    /**
+     * Returns the ids of the rooms that can be reached from start but that
+     * start can not be reached from again. A player who enters one of these
+     * can never return to where they began. Dead ends other than start are
+     * always traps.
+     *
+     * @param graph the rooms and the edges between them
+     * @param start the id of the room players start in
+     * @return the ids of the rooms a player can get stuck in
+     * @throws IndexOutOfBoundsException if start is not a room of graph
+     */
+    public static BitSet traps(IndexedGraph<?> graph, int start) {
+        BitSet traps = reachable(graph, start);
+        traps.andNot(reaching(graph, start));
+        return traps;
+    }
+
+    /**
+     * Returns the number of edges leading into each room, indexed by id.
+     *
+     * @param graph the rooms and the edges between them
+     * @return the in degree of every room
+     */
+    public static int[] inDegrees(IndexedGraph<?> graph) {
+        int[] targets = graph.targets();
+        int[] inDegrees = new int[graph.size()];
+        for (int target : targets) {
+            inDegrees[target]++;
+        }
+        return inDegrees;
+    }
+
+    /**
+     * Returns the strongly connected component of every room, indexed by id.
+     * Two rooms are in the same component iff each can be reached from the
+     * other. Components are numbered from 0 so that no edge leads from a
+     * component to one with a higher number; component 0 has no way out.
+     *
+     * Uses Tarjan's algorithm with explicit stacks.
+     *
+     * @param graph the rooms and the edges between them
+     * @return the component number of every room
+     */
+    public static int[] components(IndexedGraph<?> graph) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int n = graph.size();
+
+        // order[v] is the order v was found in, or -1 if it has not been;
+        // low[v] is the smallest order reachable from v through the rooms
+        // still on the stack
+        int[] order = new int[n];
+        int[] low = new int[n];
+        int[] component = new int[n];
+        Arrays.fill(order, -1);
+        Arrays.fill(component, -1);
+        // rooms found but not yet given a component
+        int[] stack = new int[n];
+        int stackSize = 0;
+        // the rooms being searched from, and the next edge of each to follow
+        int[] path = new int[n];
+        int[] nextEdge = new int[n];
+        int found = 0;
+        int components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (order[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            path[0] = root;
+            nextEdge[0] = offsets[root];
+            order[root] = low[root] = found++;
+            stack[stackSize++] = root;
+
+            while (depth >= 0) {
+                int v = path[depth];
+                if (nextEdge[depth] < offsets[v + 1]) {
+                    int w = targets[nextEdge[depth]++];
+                    if (order[w] < 0) {
+                        depth++;
+                        path[depth] = w;
+                        nextEdge[depth] = offsets[w];
+                        order[w] = low[w] = found++;
+                        stack[stackSize++] = w;
+                    } else if (component[w] < 0) {
+                        // w is still on the stack
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+
+                // every edge of v has been followed
+                if (low[v] == order[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        component[w] = components;
+                    } while (w != v);
+                    components++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = path[depth];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return component;
+    }
+
+    /**
+     * Checks the given world for rooms players can not reach and rooms they
+     * can get stuck in.
+     *
+     * @param graph the rooms and the edges between them
+     * @param start the room players start in
+     * @param <K> the type of the rooms
+     * @return what the check found
+     * @throws IllegalArgumentException if start is not a room of graph
+     */
+    public static <K> Report<K> check(IndexedGraph<K> graph, K start) {
+        int startId = graph.id(start);
+        if (startId < 0) {
+            throw new IllegalArgumentException("no start room " + start);
+        }
+        BitSet reachable = reachable(graph, startId);
+        BitSet unreachable = new BitSet(graph.size());
+        unreachable.set(0, graph.size());
+        unreachable.andNot(reachable);
+        BitSet traps = (BitSet) reachable.clone();
+        traps.andNot(reaching(graph, startId));
+
+        int[] component = components(graph);
+        int components = 0;
+        for (int c : component) {
+            components = Math.max(components, c + 1);
+        }
+        int[] inDegrees = inDegrees(graph);
+        int maxInDegree = 0;
+        for (int inDegree : inDegrees) {
+            maxInDegree = Math.max(maxInDegree, inDegree);
+        }
+        return new Report<>(data(graph, unreachable), data(graph, traps),
+                data(graph, deadEnds(graph)), components, maxInDegree);
+    }
+
+    /**
+     * <b>Report</b> is what checking a world found.
+     *
+     * @param <K> the type of the rooms
+     */
+    public static final class Report<K> {
+
+        private final List<K> unreachable;
+        private final List<K> traps;
+        private final List<K> deadEnds;
+        private final int components;
+        private final int maxInDegree;
+
+        private Report(List<K> unreachable, List<K> traps, List<K> deadEnds,
+                int components, int maxInDegree) {
+            this.unreachable = Collections.unmodifiableList(unreachable);
+            this.traps = Collections.unmodifiableList(traps);
+            this.deadEnds = Collections.unmodifiableList(deadEnds);
+            this.components = components;
+            this.maxInDegree = maxInDegree;
+        }
+
+        /**
+         * Returns the rooms that can not be reached from the start.
+         *
+         * @return the unreachable rooms
+         */
+        public List<K> unreachable() {
+            return unreachable;
+        }
+
+        /**
+         * Returns the rooms reachable from the start that the start can not be
+         * reached from again.
+         *
+         * @return the rooms a player can get stuck in
+         */
+        public List<K> traps() {
+            return traps;
+        }
+
+        /**
+         * Returns the rooms with no exits.
+         *
+         * @return the rooms with no exits
+         */
+        public List<K> deadEnds() {
+            return deadEnds;
+        }
+
+        /**
+         * Returns the number of strongly connected components in the world.
+         *
+         * @return the number of strongly connected components
+         */
+        public int components() {
+            return components;
+        }
+
+        /**
+         * Returns the most edges leading into any one room.
+         *
+         * @return the largest in degree of any room
+         */
+        public int maxInDegree() {
+            return maxInDegree;
+        }
+
+        /**
+         * Returns true iff every room can be reached and no room is a trap.
+         *
+         * @return true iff the world has no unreachable rooms and no traps
+         */
+        public boolean isClean() {
+            return unreachable.isEmpty() && traps.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return unreachable.size() + " unreachable rooms " + unreachable
+                    + ", " + traps.size() + " traps " + traps + ", "
+                    + deadEnds.size() + " dead ends, " + components
+                    + " components, max in degree " + maxInDegree;
+        }
+    }
+
+    /**
+     * Breadth first search over the given CSR arrays.
+     */
+    private static BitSet reachable(int[] offsets, int[] targets, int start) {
+        int n = offsets.length - 1;
+        BitSet visited = new BitSet(n);
+        int[] queue = new int[n];
+        visited.set(start);
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (!visited.get(w)) {
+                    visited.set(w);
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Returns the rooms first reached by following the edges of
+     * level[from..to), claiming each in visited.
+     */
+    private static int[] expand(int[] offsets, int[] targets,
+            AtomicLongArray visited, int[] level, int from, int to) {
+        int[] found = new int[16];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            int v = level[i];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (claim(visited, w)) {
+                    if (size == found.length) {
+                        found = Arrays.copyOf(found, size * 2);
+                    }
+                    found[size++] = w;
+                }
+            }
+        }
+        return Arrays.copyOf(found, size);
+    }
+
+    /**
+     * Sets the bit of v, returning true iff this call set it.
+     */
+    private static boolean claim(AtomicLongArray visited, int v) {
+        int word = v >>> 6;
+        long bit = 1L << v;
+        while (true) {
+            long old = visited.get(word);
+            if ((old & bit) != 0) {
+                return false;
+            }
+            if (visited.compareAndSet(word, old, old | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the offsets and targets of the graph's edges turned around.
+     */
+    private static int[][] reverse(IndexedGraph<?> graph) {
+        int[] offsets = graph.offsets();
+        int[] targets = graph.targets();
+        int n = graph.size();
+        int[] reverseOffsets = new int[n + 1];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+        int[] next = Arrays.copyOf(reverseOffsets, n);
+        int[] reverseTargets = new int[targets.length];
+        for (int v = 0; v < n; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                reverseTargets[next[targets[e]]++] = v;
+            }
+        }
+        return new int[][] { reverseOffsets, reverseTargets };
+    }
+
+    private static <K> List<K> data(IndexedGraph<K> graph, BitSet ids) {
+        List<K> ret = new ArrayList<>(ids.cardinality());
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            ret.add(graph.data(id));
+        }
+        return ret;
+    }
+
+    private static int[] join(Future<int[]> chunk) {
+        try {
+            return chunk.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while searching", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static void checkId(IndexedGraph<?> graph, int id) {
+        if (id < 0 || id >= graph.size()) {
+            throw new IndexOutOfBoundsException("no node with id " + id);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>IndexedGraph</b> represents a directed, non-labeled, non-multigraph like
+ * Graph, but stores its adjacency as primitive int arrays instead of sets of
+ * Edge objects.
+ *
+ * Each node's data is interned to a dense int id from 0 to size() - 1 in the
+ * order nodes were added. Edges are stored per node in growable int arrays
+ * while the graph is being built. Once freeze() is called the edges are packed
+ * into one compressed sparse row (CSR) array and the graph can no longer be
+ * modified.
+ *
+ * Neighbours are visited with degree(id) and neighbor(id, i), which never
+ * allocate.
+ *
+ * @author Sean Wammer
+ *
+ * @param <K> the type of the data that nodes in the this IndexedGraph store
+ *
+ * @specfield nodes : list of K // node data, indexed by id
+ * @specfield edges : set of (int, int) // (parent id, child id) pairs
+ */
+public class IndexedGraph<K> {
+
+    private static final int INITIAL_DEGREE = 4;
+    private static final int[] NO_EDGES = new int[0];
+
+    /** node data to its id */
+    private final Map<K, Integer> ids;
+    /** node data by id */
+    private final List<K> data;
+
+    // editing representation, null once frozen
+    private int[][] children;
+    private int[] degrees;
+
+    // frozen (CSR) representation, null until frozen. The children of node i
+    // are targets[offsets[i]] to targets[offsets[i + 1] - 1].
+    private int[] offsets;
+    private int[] targets;
+
+    private int edgeCount;
+
+    // Abstraction Function:
+    // nodes = data, and id i refers to data.get(i)
+    // if not frozen, edges = { (i, children[i][j]) | 0 <= j < degrees[i] }
+    // if frozen, edges = { (i, targets[j]) | offsets[i] <= j < offsets[i+1] }
+    //
+    // Representation Invariant:
+    // ids.get(data.get(i)) == i for all 0 <= i < data.size()
+    // exactly one of (children, offsets) is null
+    // no node has the same child twice
+
+    /**
+     * Constructs a new, empty IndexedGraph.
+     */
+    public IndexedGraph() {
+        ids = new HashMap<>();
+        data = new ArrayList<>();
+        children = new int[16][];
+        degrees = new int[16];
+    }
+
+    /**
+     * Returns an IndexedGraph with the same nodes and edges as the given
+     * Graph. The returned graph is not frozen.
+     *
+     * @param graph the graph to copy
+     * @return a new IndexedGraph with the nodes and edges of graph
+     */
+    public static <K> IndexedGraph<K> of(Graph<K> graph) {
+        IndexedGraph<K> indexed = new IndexedGraph<>();
+        for (K node : graph.nodes()) {
+            int parent = indexed.intern(node);
+            for (K child : graph.adjacent(node)) {
+                indexed.addEdge(parent, indexed.intern(child));
+            }
+        }
+        return indexed;
+    }
+
+    /**
+     * Returns the number of nodes in this graph.
+     *
+     * @return the number of nodes in this graph
+     */
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Returns the number of edges in this graph.
+     *
+     * @return the number of edges in this graph
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * Returns the id of the node with the given data, adding a new node if
+     * there is none.
+     *
+     * @param node the node data to intern
+     * @return the id of the node with the given data
+     * @throws IllegalArgumentException if node == null
+     * @throws IllegalStateException if a new node is needed and this is frozen
+     */
+    public int intern(K node) {
+        int id = id(node);
+        if (id >= 0) {
+            return id;
+        }
+        checkNotFrozen();
+
+        id = data.size();
+        ids.put(node, id);
+        data.add(node);
+        if (id == degrees.length) {
+            int capacity = id * 2;
+            children = Arrays.copyOf(children, capacity);
+            degrees = Arrays.copyOf(degrees, capacity);
+        }
+        children[id] = NO_EDGES;
+        return id;
+    }
+
+    /**
+     * Returns the id of the node with the given data, or -1 if there is no such
+     * node.
+     *
+     * @param node the node data to look up
+     * @return the id of node or -1 if node is not in this graph
+     * @throws IllegalArgumentException if node == null
+     */
+    public int id(K node) {
+        if (node == null) {
+            throw new IllegalArgumentException("node must not be null");
+        }
+        Integer id = ids.get(node);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the data of the node with the given id.
+     *
+     * @param id the id of the node
+     * @return the data of the node with the given id
+     * @throws IndexOutOfBoundsException if id is not a node of this graph
+     */
+    public K data(int id) {
+        return data.get(id);
+    }
+
+    /**
+     * Adds an edge from the parent node to the child node, adding either node
+     * if it is missing. Duplicate edges are not added.
+     *
+     * @param parent the data the added edge points from
+     * @param child the data the added edge points to
+     * @throws IllegalArgumentException if parent == null or child == null
+     * @throws IllegalStateException if this is frozen
+     */
+    public void addEdge(K parent, K child) {
+        addEdge(intern(parent), intern(child));
+    }
+
+    /**
+     * Adds an edge from the node with id parent to the node with id child.
+     * Duplicate edges are not added.
+     *
+     * @param parent the id the added edge points from
+     * @param child the id the added edge points to
+     * @throws IndexOutOfBoundsException if either id is not a node of this
+     * @throws IllegalStateException if this is frozen
+     */
+    public void addEdge(int parent, int child) {
+        checkNotFrozen();
+        checkId(parent);
+        checkId(child);
+        if (containsEdge(parent, child)) {
+            return;
+        }
+
+        int[] edges = children[parent];
+        int degree = degrees[parent];
+        if (degree == edges.length) {
+            edges = Arrays.copyOf(edges, Math.max(INITIAL_DEGREE, degree * 2));
+            children[parent] = edges;
+        }
+        edges[degree] = child;
+        degrees[parent] = degree + 1;
+        edgeCount++;
+    }
+
+    /**
+     * Returns true iff there is an edge from parent to child.
+     *
+     * @param parent the id the edge points from
+     * @param child the id the edge points to
+     * @return true iff there is an edge from parent to child
+     * @throws IndexOutOfBoundsException if parent is not a node of this
+     */
+    public boolean containsEdge(int parent, int child) {
+        int degree = degree(parent);
+        for (int i = 0; i < degree; i++) {
+            if (neighbor(parent, i) == child) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of edges leading out of the node with the given id.
+     *
+     * @param id the id of the node
+     * @return the out degree of the node
+     * @throws IndexOutOfBoundsException if id is not a node of this
+     */
+    public int degree(int id) {
+        checkId(id);
+        if (offsets != null) {
+            return offsets[id + 1] - offsets[id];
+        }
+        return degrees[id];
+    }
+
+    /**
+     * Returns the id of the i-th child of the node with the given id, where
+     * 0 <= i < degree(id).
+     *
+     * @param id the id of the node
+     * @param i the index of the child to return
+     * @return the id of the i-th child of the node
+     * @throws IndexOutOfBoundsException if i is not between 0 and degree(id)
+     */
+    public int neighbor(int id, int i) {
+        if (i < 0 || i >= degree(id)) {
+            throw new IndexOutOfBoundsException("no neighbor " + i + " of " + id);
+        }
+        if (offsets != null) {
+            return targets[offsets[id] + i];
+        }
+        return children[id][i];
+    }
+
+    /**
+     * Packs the edges of this graph into a compressed sparse row array. After
+     * this the graph can no longer be modified. Has no effect if this is
+     * already frozen.
+     */
+    public void freeze() {
+        if (offsets != null) {
+            return;
+        }
+        int n = data.size();
+        int[] newOffsets = new int[n + 1];
+        int[] newTargets = new int[edgeCount];
+        int next = 0;
+        for (int i = 0; i < n; i++) {
+            newOffsets[i] = next;
+            System.arraycopy(children[i], 0, newTargets, next, degrees[i]);
+            next += degrees[i];
+        }
+        newOffsets[n] = next;
+
+        offsets = newOffsets;
+        targets = newTargets;
+        children = null;
+        degrees = null;
+    }
+
+    /**
+     * Returns true iff this graph has been frozen.
+     *
+     * @return true iff this graph has been frozen
+     */
+    public boolean isFrozen() {
+        return offsets != null;
+    }
+
+    /**
+     * Freezes this and returns the CSR offsets of its edges. The array is not
+     * copied, so it must not be modified.
+     */
+    int[] offsets() {
+        freeze();
+        return offsets;
+    }
+
+    /**
+     * Freezes this and returns the CSR targets of its edges. The array is not
+     * copied, so it must not be modified.
+     */
+    int[] targets() {
+        freeze();
+        return targets;
+    }
+
+    private void checkId(int id) {
+        if (id < 0 || id >= data.size()) {
+            throw new IndexOutOfBoundsException("no node with id " + id);
+        }
+    }
+
+    private void checkNotFrozen() {
+        if (offsets != null) {
+            throw new IllegalStateException("graph is frozen");
+        }
+    }
+}
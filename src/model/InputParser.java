@@ -0,0 +1,264 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <b>InputParser</b> turns what a player types into a standard form, so that
+ * one Script can answer every way of saying the same thing. "Grab the knife",
+ * "pick up knife" and "take knife" all parse to "take knife".
+ *
+ * Input is split into words. The first words are the verb, which is replaced
+ * by its standard form if it is a known synonym. Articles are dropped. The
+ * rest is one object, or two objects joined by a preposition, as in "put coin
+ * in box". Each object is matched against the items the player can see, so
+ * "take silver" parses to "take silver key" if that is the only item with
+ * "silver" in its name.
+ *
+ * Parsing looks at each word once, so it costs time in proportion to the
+ * length of the input, not the number of ways a script can be phrased. Items
+ * held in an ItemBag are found through the bag's index of the words in item
+ * names, so only items that share a word with the object are looked at; other
+ * items are looked at one by one. InputParser is not thread safe while verbs
+ * are being added, but can be shared once they have been.
+ *
+ * @author Sean Wammer
+ */
+public class InputParser {
+
+    /** the parser rooms use, with the standard verbs */
+    static final InputParser STANDARD = new InputParser();
+
+    private static final Set<String> ARTICLES = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "some", "my"));
+    private static final Set<String> PREPOSITIONS = new HashSet<>(
+            Arrays.asList("in", "into", "on", "onto", "to", "with", "at",
+                    "from", "under"));
+
+    /** verb phrases to their standard form */
+    private final Map<String, String> verbs = new HashMap<>();
+    /** the most words in any verb phrase */
+    private int longestVerb = 1;
+
+    /**
+     * Constructs a new InputParser that knows the standard verbs and their
+     * common synonyms.
+     */
+    public InputParser() {
+        addVerb("take", "get", "grab", "pick up", "collect");
+        addVerb("drop", "put down", "discard");
+        addVerb("look at", "examine", "inspect", "x", "check out");
+        addVerb("open");
+        addVerb("close", "shut");
+        addVerb("talk to", "speak to", "talk with", "speak with");
+        addVerb("attack", "hit", "fight", "strike");
+        addVerb("use");
+        addVerb("read");
+        addVerb("eat");
+    }
+
+    /**
+     * Adds a verb and the other phrases that mean the same thing. Each phrase
+     * may be several words, like "pick up". A phrase already added is given
+     * the new standard form.
+     *
+     * @param verb the standard form of the verb
+     * @param synonyms other phrases that mean verb
+     * @throws IllegalArgumentException if verb or a synonym is null or blank
+     */
+    public void addVerb(String verb, String... synonyms) {
+        verb = addPhrase(verb, null);
+        for (String synonym : synonyms) {
+            addPhrase(synonym, verb);
+        }
+    }
+
+    /**
+     * Returns the standard form of the given input, with no items to match
+     * objects against.
+     *
+     * @param input what the player typed
+     * @return the standard form of input
+     * @throws IllegalArgumentException if input == null
+     */
+    public String parse(String input) {
+        return parse(input, Collections.<String> emptyList(),
+                Collections.<String> emptyList());
+    }
+
+    /**
+     * Returns the standard form of the given input, matching its objects
+     * against the given items. An object matches an item if every word of the
+     * object is a word in the item's name and no other item matches. Objects
+     * that match no item, or more than one, are kept as typed.
+     *
+     * @param input what the player typed
+     * @param roomItems the items in the player's room
+     * @param inventory the items the player is carrying
+     * @return the standard form of input
+     * @throws IllegalArgumentException if input == null
+     */
+    public String parse(String input, Iterable<String> roomItems,
+            Iterable<String> inventory) {
+        if (input == null) {
+            throw new IllegalArgumentException("Input must not be null.");
+        }
+        String[] words = words(input.toLowerCase());
+        if (words.length == 0) {
+            return "";
+        }
+
+        // the longest verb phrase the input starts with
+        String verb = words[0];
+        int next = 1;
+        for (int n = Math.min(longestVerb, words.length); n > 0; n--) {
+            String standard = verbs.get(join(words, 0, n));
+            if (standard != null) {
+                verb = standard;
+                next = n;
+                break;
+            }
+        }
+
+        StringBuilder parsed = new StringBuilder(verb);
+        List<String> object = new ArrayList<>(words.length - next);
+        for (int i = next; i < words.length; i++) {
+            String word = words[i];
+            if (ARTICLES.contains(word)) {
+                continue;
+            }
+            if (PREPOSITIONS.contains(word) && !object.isEmpty()) {
+                appendObject(parsed, object, roomItems, inventory);
+                parsed.append(' ').append(word);
+                object.clear();
+                continue;
+            }
+            object.add(word);
+        }
+        appendObject(parsed, object, roomItems, inventory);
+        return parsed.toString();
+    }
+
+    /**
+     * Adds the given verb phrase mapped to standard, or to itself if standard
+     * is null. Returns the phrase with its words separated by single spaces.
+     */
+    private String addPhrase(String phrase, String standard) {
+        if (phrase == null || phrase.trim().isEmpty()) {
+            throw new IllegalArgumentException("Verbs must not be blank.");
+        }
+        String[] words = words(phrase.toLowerCase());
+        phrase = join(words, 0, words.length);
+        verbs.put(phrase, standard == null ? phrase : standard);
+        longestVerb = Math.max(longestVerb, words.length);
+        return phrase;
+    }
+
+    /**
+     * Returns the words of the given text, which are separated by whitespace.
+     * Returns no words for blank text.
+     *
+     * @param text the text to split
+     * @return the words of text, in order
+     */
+    static String[] words(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (!isSpace(text.charAt(i))
+                    && (i == 0 || isSpace(text.charAt(i - 1)))) {
+                count++;
+            }
+        }
+        String[] words = new String[count];
+        int start = -1;
+        count = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean space = i == text.length() || isSpace(text.charAt(i));
+            if (space && start >= 0) {
+                words[count++] = text.substring(start, i);
+                start = -1;
+            } else if (!space && start < 0) {
+                start = i;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Appends a space and the item the given object names, or the object as
+     * typed if it names no item or several. Appends nothing for no object.
+     */
+    private static void appendObject(StringBuilder parsed,
+            List<String> object, Iterable<String> roomItems,
+            Iterable<String> inventory) {
+        if (object.isEmpty()) {
+            return;
+        }
+        Set<String> found = new HashSet<>();
+        for (int list = 0; list < 2 && found.size() < 2; list++) {
+            Iterable<String> items = list == 0 ? roomItems : inventory;
+            if (!ItemBag.named(items, object, found)) {
+                for (String item : items) {
+                    String name = item.toLowerCase();
+                    if (names(words(name), object)) {
+                        found.add(name);
+                        if (found.size() > 1) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        parsed.append(' ');
+        if (found.size() == 1) {
+            parsed.append(found.iterator().next());
+        } else {
+            // no item, or more than one and the player must say which
+            parsed.append(object.get(0));
+            for (int i = 1; i < object.size(); i++) {
+                parsed.append(' ').append(object.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns true iff every word of object is one of the item words.
+     */
+    private static boolean names(String[] itemWords, List<String> object) {
+        for (String word : object) {
+            boolean found = false;
+            for (String itemWord : itemWords) {
+                if (itemWord.equals(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true iff c separates words, as \s does in a regular expression.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B'
+                || c == '\f' || c == '\r';
+    }
+
+    private static String join(String[] words, int from, int to) {
+        StringBuilder joined = new StringBuilder(words[from]);
+        for (int i = from + 1; i < to; i++) {
+            joined.append(' ').append(words[i]);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,550 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>ItemBag</b> is a mutable collection of items in which the same item can
+ * appear many times. It stores one count per different item instead of one
+ * entry per copy, so a room holding a thousand coins costs the same as a room
+ * holding one, and adding, removing and counting an item take constant time.
+ *
+ * Item names are interned to small int ids shared by every bag, and each bag
+ * maps ids to counts with primitive arrays. The first time a bag is searched
+ * by the words of item names, it indexes its items by word, and keeps the
+ * index up to date as items come and go.
+ *
+ * ItemBag is not thread safe. Room locks around its bag, and hands out a
+ * read-only view that takes the same lock.
+ *
+ * @author Sean Wammer
+ */
+public class ItemBag implements Items {
+
+    /*
+     * Representation invariant:
+     * ========================
+     *
+     * -ids[0..distinct) are different item ids, and counts[i] > 0 is the count
+     *  of ids[i]
+     * -index is an open addressing table of length a power of two, more than
+     *  twice distinct, holding slot + 1 for every slot in [0, distinct) at or
+     *  after the home position of its id with no empty entries in between,
+     *  and 0 everywhere else
+     * -size is the sum of counts[0..distinct)
+     * -wordIndex is null, or maps each word of the lower case name of each of
+     *  ids[0..distinct) to the ids among them whose name has that word, in
+     *  increasing order, and maps no other words
+     */
+
+    /** item name to id, shared by every bag */
+    private static final ConcurrentHashMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    /** item id to name, only ever appended to */
+    private static volatile String[] names = new String[64];
+    /** item id to the words of its lower case name, only ever appended to */
+    private static volatile String[][] words = new String[64][];
+    private static int nextId;
+
+    private int[] ids;
+    private int[] counts;
+    private int distinct;
+    private int size;
+    private int[] index;
+    /** word to the ids of the items here whose names have it, or null */
+    private Map<String, Posting> wordIndex;
+
+    /**
+     * Constructs a new empty ItemBag.
+     */
+    public ItemBag() {
+        ids = new int[4];
+        counts = new int[4];
+        index = new int[8];
+    }
+
+    /**
+     * Constructs a new ItemBag holding the given items, counting items that
+     * appear more than once.
+     *
+     * @param items the items to hold
+     */
+    public ItemBag(Collection<String> items) {
+        this();
+        for (String item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Adds one of the given item.
+     *
+     * @param item the item to add
+     * @throws IllegalArgumentException if item == null
+     */
+    public void add(String item) {
+        add(item, 1);
+    }
+
+    /**
+     * Adds n of the given item.
+     *
+     * @param item the item to add
+     * @param n how many to add
+     * @throws IllegalArgumentException if item == null or n < 0
+     */
+    public void add(String item, int n) {
+        if (item == null) {
+            throw new IllegalArgumentException("Item must not be null.");
+        }
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative.");
+        }
+        if (n == 0) {
+            return;
+        }
+        int id = intern(item);
+        int pos = probe(id);
+        if (index[pos] != 0) {
+            counts[index[pos] - 1] += n;
+        } else {
+            if (distinct == ids.length) {
+                ids = Arrays.copyOf(ids, distinct * 2);
+                counts = Arrays.copyOf(counts, distinct * 2);
+            }
+            ids[distinct] = id;
+            counts[distinct] = n;
+            distinct++;
+            index[pos] = distinct;
+            if (distinct * 2 >= index.length) {
+                rehash(index.length * 2);
+            }
+            if (wordIndex != null) {
+                indexWords(id);
+            }
+        }
+        size += n;
+    }
+
+    /**
+     * Removes one of the given item. Returns true iff there was one to remove.
+     *
+     * @param item the item to remove
+     * @return true iff one of item was removed
+     */
+    public boolean remove(String item) {
+        Integer id = item == null ? null : IDS.get(item);
+        if (id == null) {
+            return false;
+        }
+        int pos = probe(id);
+        if (index[pos] == 0) {
+            return false;
+        }
+        int slot = index[pos] - 1;
+        size--;
+        if (--counts[slot] > 0) {
+            return true;
+        }
+
+        // the last one is gone, so forget the item and fill its slot with the
+        // last slot
+        deleteIndex(pos);
+        if (wordIndex != null) {
+            unindexWords(id);
+        }
+        int last = distinct - 1;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            counts[slot] = counts[last];
+            index[probe(ids[slot])] = slot + 1;
+        }
+        distinct--;
+        return true;
+    }
+
+    /**
+     * Removes every item.
+     */
+    public void clear() {
+        distinct = 0;
+        size = 0;
+        Arrays.fill(index, 0);
+        wordIndex = null;
+    }
+
+    /**
+     * Makes this hold exactly what the given bag holds.
+     *
+     * @param other the bag to copy
+     */
+    public void setTo(ItemBag other) {
+        ids = Arrays.copyOf(other.ids, other.ids.length);
+        counts = Arrays.copyOf(other.counts, other.counts.length);
+        index = Arrays.copyOf(other.index, other.index.length);
+        distinct = other.distinct;
+        size = other.size;
+        // rebuilt if this is searched by word again
+        wordIndex = null;
+    }
+
+    /**
+     * Returns a new ItemBag holding what this holds.
+     *
+     * @return a copy of this
+     */
+    public ItemBag copy() {
+        ItemBag copy = new ItemBag();
+        copy.setTo(this);
+        return copy;
+    }
+
+    @Override
+    public int count(String item) {
+        Integer id = item == null ? null : IDS.get(item);
+        if (id == null) {
+            return 0;
+        }
+        int slot = index[probe(id)];
+        return slot == 0 ? 0 : counts[slot - 1];
+    }
+
+    @Override
+    public boolean contains(String item) {
+        return count(item) > 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int distinct() {
+        return distinct;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return distinctItems().iterator();
+    }
+
+    /**
+     * Returns every item in a new list, each item appearing as many times as
+     * it is in this.
+     *
+     * @return every item in this
+     */
+    public List<String> toList() {
+        List<String> list = new ArrayList<>(size);
+        String[] names = ItemBag.names;
+        for (int i = 0; i < distinct; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                list.add(names[ids[i]]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns a read-only view of this whose methods lock the given object,
+     * so that the view can be read while the owner of this is changing it.
+     *
+     * @param lock the object the owner of this locks while changing it
+     * @return a read-only view of this
+     */
+    public Items view(Object lock) {
+        return new View(lock);
+    }
+
+    /**
+     * Adds to found the lower case name of each item in items whose name has
+     * every one of the given lower case words, until found holds more than
+     * one name. Returns false and adds nothing if items is not an ItemBag or a
+     * view of one, and so has no index to search.
+     *
+     * @param items the items to search
+     * @param object the words the names must have, at least one
+     * @param found the set to add the names found to
+     * @return true iff items was searched
+     */
+    static boolean named(Iterable<String> items, List<String> object,
+            Set<String> found) {
+        if (items instanceof ItemBag) {
+            ((ItemBag) items).named(object, found);
+            return true;
+        }
+        if (items instanceof View) {
+            View view = (View) items;
+            synchronized (view.lock) {
+                view.bag().named(object, found);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    /**
+     * Adds the lower case names of the items here whose names have every one
+     * of the given words to found, stopping once found holds more than one.
+     * Only the items in the shortest list of the index are looked at.
+     */
+    private void named(List<String> object, Set<String> found) {
+        if (wordIndex == null) {
+            wordIndex = new HashMap<>();
+            for (int i = 0; i < distinct; i++) {
+                indexWords(ids[i]);
+            }
+        }
+        Posting[] postings = new Posting[object.size()];
+        Posting shortest = null;
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = wordIndex.get(object.get(i));
+            if (postings[i] == null) {
+                return;
+            }
+            if (shortest == null || postings[i].size < shortest.size) {
+                shortest = postings[i];
+            }
+        }
+        String[] names = ItemBag.names;
+        candidates: for (int i = 0; i < shortest.size; i++) {
+            int id = shortest.ids[i];
+            for (Posting posting : postings) {
+                if (posting != shortest && !posting.contains(id)) {
+                    continue candidates;
+                }
+            }
+            found.add(names[id].toLowerCase());
+            if (found.size() > 1) {
+                return;
+            }
+        }
+    }
+
+    private void indexWords(int id) {
+        for (String word : words[id]) {
+            Posting posting = wordIndex.get(word);
+            if (posting == null) {
+                posting = new Posting();
+                wordIndex.put(word, posting);
+            }
+            posting.add(id);
+        }
+    }
+
+    private void unindexWords(int id) {
+        for (String word : words[id]) {
+            Posting posting = wordIndex.get(word);
+            if (posting != null && posting.remove(id) && posting.size == 0) {
+                wordIndex.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Returns each different item once, in a new list.
+     */
+    private List<String> distinctItems() {
+        List<String> list = new ArrayList<>(distinct);
+        String[] names = ItemBag.names;
+        for (int i = 0; i < distinct; i++) {
+            list.add(names[ids[i]]);
+        }
+        return list;
+    }
+
+    /**
+     * Returns the position in index holding the slot of id, or the empty
+     * position where it would go.
+     */
+    private int probe(int id) {
+        int mask = index.length - 1;
+        int pos = home(id, mask);
+        while (index[pos] != 0 && ids[index[pos] - 1] != id) {
+            pos = (pos + 1) & mask;
+        }
+        return pos;
+    }
+
+    /**
+     * Empties the given position of index, moving later entries of the same
+     * run back so that every entry can still be found from its home.
+     */
+    private void deleteIndex(int pos) {
+        int mask = index.length - 1;
+        int hole = pos;
+        int next = pos;
+        while (true) {
+            index[hole] = 0;
+            while (true) {
+                next = (next + 1) & mask;
+                if (index[next] == 0) {
+                    return;
+                }
+                int home = home(ids[index[next] - 1], mask);
+                // the entry stays put if its home is cyclically in (hole, next]
+                boolean stays = hole <= next ? hole < home && home <= next
+                        : hole < home || home <= next;
+                if (!stays) {
+                    break;
+                }
+            }
+            index[hole] = index[next];
+            hole = next;
+        }
+    }
+
+    private void rehash(int length) {
+        index = new int[length];
+        int mask = length - 1;
+        for (int slot = 0; slot < distinct; slot++) {
+            int pos = home(ids[slot], mask);
+            while (index[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            index[pos] = slot + 1;
+        }
+    }
+
+    private static int home(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Returns the id of the given item name, giving it the next id if it has
+     * none yet.
+     */
+    private static int intern(String item) {
+        Integer id = IDS.get(item);
+        if (id != null) {
+            return id;
+        }
+        synchronized (IDS) {
+            id = IDS.get(item);
+            if (id == null) {
+                id = nextId++;
+                String[] current = names;
+                if (id == current.length) {
+                    current = Arrays.copyOf(current, id * 2);
+                }
+                current[id] = item;
+                String[][] currentWords = words;
+                if (id == currentWords.length) {
+                    currentWords = Arrays.copyOf(currentWords, id * 2);
+                }
+                currentWords[id] = InputParser.words(item.toLowerCase());
+                // publish the name before the id
+                words = currentWords;
+                names = current;
+                IDS.put(item, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * A read-only view of this whose methods lock the given object.
+     */
+    private final class View implements Items {
+
+        final Object lock;
+
+        View(Object lock) {
+            this.lock = lock;
+        }
+
+        ItemBag bag() {
+            return ItemBag.this;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            synchronized (lock) {
+                return distinctItems().iterator();
+            }
+        }
+
+        @Override
+        public int count(String item) {
+            synchronized (lock) {
+                return ItemBag.this.count(item);
+            }
+        }
+
+        @Override
+        public boolean contains(String item) {
+            return count(item) > 0;
+        }
+
+        @Override
+        public int size() {
+            synchronized (lock) {
+                return size;
+            }
+        }
+
+        @Override
+        public int distinct() {
+            synchronized (lock) {
+                return distinct;
+            }
+        }
+
+        @Override
+        public String toString() {
+            synchronized (lock) {
+                return ItemBag.this.toString();
+            }
+        }
+    }
+
+    /**
+     * The ids of the items with one word in their names, in increasing order.
+     */
+    private static final class Posting {
+
+        int[] ids = new int[2];
+        int size;
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        void add(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+    }
+}
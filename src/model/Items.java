@@ -0,0 +1,45 @@
+package model;
+
+/**
+ * <b>Items</b> is a read-only view of a collection of items in which the
+ * same item can appear many times, such as the items in a Room or a Player's
+ * inventory. The view changes as the collection does, without being copied.
+ *
+ * Iterating visits each different item once, in no particular order, and
+ * iterates over a copy of the different items, so it is safe while the
+ * collection changes.
+ *
+ * @author Sean Wammer
+ */
+public interface Items extends Iterable<String> {
+
+    /**
+     * Returns how many of the given item there are.
+     *
+     * @param item the item to count
+     * @return how many of item there are, 0 if none
+     */
+    int count(String item);
+
+    /**
+     * Returns true iff there is at least one of the given item.
+     *
+     * @param item the item to look for
+     * @return true iff count(item) > 0
+     */
+    boolean contains(String item);
+
+    /**
+     * Returns the number of items, counting each copy of an item.
+     *
+     * @return the number of items
+     */
+    int size();
+
+    /**
+     * Returns the number of different items.
+     *
+     * @return the number of different items
+     */
+    int distinct();
+}
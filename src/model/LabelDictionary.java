@@ -0,0 +1,114 @@
+package model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>LabelDictionary</b> gives each different edge label, such as "north" or
+ * "trapdoor", a small int id, so that an edge stores an int instead of its own
+ * copy of the label. A world with millions of exits has only a handful of
+ * different labels, so the dictionary stays tiny.
+ *
+ * Labels are stored lower case with surrounding whitespace removed, so "North"
+ * and "north " are the same label. Ids are dense, start at 0 and are never
+ * reused. LabelDictionary is thread safe, and looking up a label or an id
+ * takes no lock.
+ *
+ * @author Sean Wammer
+ */
+public final class LabelDictionary {
+
+    /** the id of no label, for edges without one */
+    public static final int NO_LABEL = -1;
+
+    /** the dictionary that the labels of exits between rooms are kept in */
+    public static final LabelDictionary EXITS = new LabelDictionary();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    /** label by id, only ever appended to */
+    private volatile String[] labels = new String[16];
+    private int size;
+
+    /**
+     * Returns the id of the given label, giving it the next id if it has none
+     * yet. Returns NO_LABEL if label is null.
+     *
+     * @param label the label to look up
+     * @return the id of label, or NO_LABEL if label is null
+     * @throws IllegalArgumentException if label is blank
+     */
+    public int intern(String label) {
+        if (label == null) {
+            return NO_LABEL;
+        }
+        String key = normalize(label);
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("Labels must not be blank.");
+        }
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        synchronized (ids) {
+            id = ids.get(key);
+            if (id == null) {
+                id = size++;
+                String[] current = labels;
+                if (id == current.length) {
+                    current = Arrays.copyOf(current, id * 2);
+                }
+                current[id] = key;
+                // publish the label before the id
+                labels = current;
+                ids.put(key, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Returns the id of the given label, or NO_LABEL if label is null or has
+     * never been interned.
+     *
+     * @param label the label to look up
+     * @return the id of label or NO_LABEL
+     */
+    public int id(String label) {
+        if (label == null) {
+            return NO_LABEL;
+        }
+        Integer id = ids.get(normalize(label));
+        return id == null ? NO_LABEL : id;
+    }
+
+    /**
+     * Returns the label with the given id, or null if id is NO_LABEL.
+     *
+     * @param id the id of the label
+     * @return the lower case label with the given id, or null
+     * @throws IndexOutOfBoundsException if id is not NO_LABEL or an id of this
+     */
+    public String label(int id) {
+        if (id == NO_LABEL) {
+            return null;
+        }
+        String[] current = labels;
+        if (id < 0 || id >= current.length || current[id] == null) {
+            throw new IndexOutOfBoundsException("no label with id " + id);
+        }
+        return current[id];
+    }
+
+    /**
+     * Returns the number of different labels in this dictionary.
+     *
+     * @return the number of different labels
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private static String normalize(String label) {
+        return label.toLowerCase().trim();
+    }
+}
@@ -0,0 +1,173 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <b>LatencyHistogram</b> counts how long something took, in nanoseconds,
+ * using a fixed amount of memory no matter how many values are recorded.
+ *
+ * Values below 16 get a bucket each. Above that, every power of two is split
+ * into 8 buckets, so a reported value is never more than 12.5% above the value
+ * that was recorded. Values up to Long.MAX_VALUE fit. Recording is lock free
+ * and safe from any number of threads.
+ *
+ * @author Sean Wammer
+ */
+public class LatencyHistogram {
+
+    /** number of values that get a bucket each */
+    private static final int LINEAR = 16;
+    /** log base 2 of the number of buckets each power of two is split into */
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** log base 2 of LINEAR, the first power of two that is split */
+    private static final int FIRST_EXPONENT = 4;
+    private static final int BUCKETS = LINEAR + (63 - FIRST_EXPONENT)
+            * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value. Negative values are recorded as 0.
+     *
+     * @param nanos the value to record
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long oldMax = max.get();
+        while (nanos > oldMax && !max.compareAndSet(oldMax, nanos)) {
+            oldMax = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the number of values recorded
+     */
+    public long count() {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of the values recorded.
+     *
+     * @return the sum of the values recorded
+     */
+    public long total() {
+        return total.get();
+    }
+
+    /**
+     * Returns the largest value recorded, or 0 if none have been.
+     *
+     * @return the largest value recorded
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded, or 0 if none have been.
+     *
+     * @return the mean of the values recorded
+     */
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0 : (double) total() / n;
+    }
+
+    /**
+     * Returns a value that the given fraction of the recorded values are at
+     * or below, rounded up to the top of its bucket but never above max().
+     * Returns 0 if no values have been recorded.
+     *
+     * @param fraction the fraction of values, for example 0.99
+     * @return the value at that fraction
+     * @throws IllegalArgumentException if fraction is not between 0 and 1
+     */
+    public long percentile(double fraction) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("fraction must be in [0, 1]");
+        }
+        long n = count();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Records every value recorded by other, as if each had been recorded
+     * here too. Values recorded to other while this runs may or may not be
+     * added.
+     *
+     * @param other the histogram to add to this one
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n > 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.addAndGet(other.count());
+        total.addAndGet(other.total());
+        long otherMax = other.max();
+        long oldMax = max.get();
+        while (otherMax > oldMax && !max.compareAndSet(oldMax, otherMax)) {
+            oldMax = max.get();
+        }
+    }
+
+    /**
+     * Forgets every value recorded. Values recorded while this runs may or
+     * may not be forgotten.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    static long highestInBucket(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + FIRST_EXPONENT;
+        long sub = (bucket - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        long lowest = (SUB_BUCKETS + sub) * width;
+        // the top bucket would overflow past Long.MAX_VALUE
+        return lowest + (width - 1) < 0 ? Long.MAX_VALUE : lowest + width - 1;
+    }
+}
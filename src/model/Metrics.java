@@ -0,0 +1,400 @@
+package model;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <b>Metrics</b> measures how long the game spends on each kind of Command, on
+ * each room's scripts and on each turn, so that slow scripts in player made
+ * worlds can be found before players notice them.
+ *
+ * Metrics are off until setEnabled(true) is called, and then cost two clock
+ * reads per Command. The memory each Command allocates can also be counted on
+ * JVMs that support it, at the cost of a little more time per Command.
+ *
+ * Results can be read at any time from any thread, as histograms or as a
+ * printed report, and the report can be printed periodically.
+ *
+ * At most MAX_SCRIPTS scripts get a histogram of their own, kept for the
+ * scripts that have taken the most time in total. Every other script is
+ * counted in otherScripts().
+ *
+ * @author Sean Wammer
+ */
+public final class Metrics {
+
+    private static volatile boolean enabled;
+    private static volatile boolean countAllocations;
+
+    private static final LatencyHistogram TURNS = new LatencyHistogram();
+    private static final LatencyHistogram[] COMMANDS;
+    private static final AtomicLongArray COMMAND_BYTES;
+
+    /** the most scripts that get a histogram of their own */
+    public static final int MAX_SCRIPTS = 64;
+
+    /** the tracked scripts, by identity, so recording builds no key */
+    private static final Map<Script, ScriptStats> SCRIPTS = new ConcurrentHashMap<>();
+    private static final LatencyHistogram OTHER_SCRIPTS = new LatencyHistogram();
+    /**
+     * no more than the least total time of any tracked script, once
+     * MAX_SCRIPTS are tracked. Totals only grow, so a run that took no longer
+     * than this can not replace any tracked script.
+     */
+    private static volatile long admitNanos;
+
+    /** the JVM's per thread allocation counter, or null if it has none */
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS;
+
+    private static ScheduledExecutorService dumper;
+    private static ScheduledFuture<?> dump;
+
+    static {
+        CommandType[] types = CommandType.values();
+        COMMANDS = new LatencyHistogram[types.length];
+        for (int i = 0; i < types.length; i++) {
+            COMMANDS[i] = new LatencyHistogram();
+        }
+        COMMAND_BYTES = new AtomicLongArray(types.length);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            if (!allocations.isThreadAllocatedMemorySupported()) {
+                allocations = null;
+            }
+        }
+        ALLOCATIONS = allocations;
+    }
+
+    // static utility class, no instances
+    private Metrics() {
+    }
+
+    /**
+     * Turns measuring on or off. Turning it off keeps what has been measured.
+     *
+     * @param on true to start measuring, false to stop
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Returns true iff the game is being measured.
+     *
+     * @return true iff the game is being measured
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns counting the bytes each Command allocates on or off. Returns false
+     * and has no effect if this JVM can not count allocations.
+     *
+     * @param on true to count allocations, false to stop
+     * @return true iff this JVM can count allocations
+     */
+    public static boolean setAllocationCounting(boolean on) {
+        if (ALLOCATIONS == null) {
+            return false;
+        }
+        if (on) {
+            ALLOCATIONS.setThreadAllocatedMemoryEnabled(true);
+        }
+        countAllocations = on;
+        return true;
+    }
+
+    /**
+     * Returns the histogram of how long each turn took, from a player's input
+     * reaching GameModel.execute to the output being ready.
+     *
+     * @return the histogram of turn times
+     */
+    public static LatencyHistogram turns() {
+        return TURNS;
+    }
+
+    /**
+     * Returns the histogram of how long each Command of the given type took.
+     *
+     * @param type the type of Command
+     * @return the histogram of that type's run times
+     */
+    public static LatencyHistogram command(CommandType type) {
+        return COMMANDS[type.ordinal()];
+    }
+
+    /**
+     * Returns the number of bytes allocated by Commands of the given type
+     * while allocations were being counted.
+     *
+     * @param type the type of Command
+     * @return the bytes allocated by that type
+     */
+    public static long commandBytes(CommandType type) {
+        return COMMAND_BYTES.get(type.ordinal());
+    }
+
+    /**
+     * Returns the histogram of how long the scripts registered to each input
+     * in each room took, keyed by "room short name: input", for the scripts
+     * that have a histogram of their own. The returned map is a copy, but the
+     * histograms in it keep updating.
+     *
+     * @return the histogram of each tracked script's run times
+     */
+    public static Map<String, LatencyHistogram> scripts() {
+        Map<String, LatencyHistogram> scripts = new HashMap<>();
+        for (ScriptStats stats : SCRIPTS.values()) {
+            LatencyHistogram old = scripts.get(stats.name);
+            // a script replaced by one registered to the same input keeps its
+            // entry until it is pushed out, so keep the busier of the two
+            if (old == null || old.count() < stats.histogram.count()) {
+                scripts.put(stats.name, stats.histogram);
+            }
+        }
+        return scripts;
+    }
+
+    /**
+     * Returns the histogram of how long every script without a histogram of
+     * its own took, including scripts that were pushed out of scripts() by
+     * slower ones.
+     *
+     * @return the histogram of the other scripts' run times
+     */
+    public static LatencyHistogram otherScripts() {
+        return OTHER_SCRIPTS;
+    }
+
+    /**
+     * Forgets everything measured so far.
+     */
+    public static void reset() {
+        TURNS.reset();
+        for (int i = 0; i < COMMANDS.length; i++) {
+            COMMANDS[i].reset();
+            COMMAND_BYTES.set(i, 0);
+        }
+        synchronized (SCRIPTS) {
+            SCRIPTS.clear();
+            admitNanos = 0;
+        }
+        OTHER_SCRIPTS.reset();
+    }
+
+    /**
+     * Returns a printable report of everything measured so far: each turn,
+     * each kind of Command that has run, and the slowest scripts.
+     *
+     * @return a report of the measurements
+     */
+    public static String report() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("%-24s %10s %10s %10s %10s %10s %10s%n",
+                "", "count", "mean ns", "p50 ns", "p99 ns", "max ns",
+                "bytes/op"));
+        row(out, "turn", TURNS, -1);
+        for (CommandType type : CommandType.values()) {
+            LatencyHistogram histogram = command(type);
+            if (histogram.count() > 0) {
+                row(out, type.name(), histogram, countAllocations ? commandBytes(type)
+                        : -1);
+            }
+        }
+
+        List<Map.Entry<String, LatencyHistogram>> scripts = new ArrayList<>(
+                scripts().entrySet());
+        Collections.sort(scripts,
+                new Comparator<Map.Entry<String, LatencyHistogram>>() {
+                    @Override
+                    public int compare(Map.Entry<String, LatencyHistogram> a,
+                            Map.Entry<String, LatencyHistogram> b) {
+                        return Long.compare(b.getValue().percentile(0.99), a
+                                .getValue().percentile(0.99));
+                    }
+                });
+        if (!scripts.isEmpty()) {
+            out.append(String.format("slowest scripts by p99:%n"));
+        }
+        for (Map.Entry<String, LatencyHistogram> script : scripts.subList(0,
+                Math.min(10, scripts.size()))) {
+            row(out, script.getKey(), script.getValue(), -1);
+        }
+        if (OTHER_SCRIPTS.count() > 0) {
+            row(out, "other scripts", OTHER_SCRIPTS, -1);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Prints report() to out every period until stopDump is called. Replaces
+     * any dump already running.
+     *
+     * @param period the time between reports
+     * @param unit the unit of period
+     * @param out where to print the reports
+     */
+    public static synchronized void startDump(long period, TimeUnit unit,
+            final PrintStream out) {
+        stopDump();
+        if (dumper == null) {
+            dumper = Executors
+                    .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "metrics-dump");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+        dump = dumper.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                out.print(report());
+                out.flush();
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops printing reports. Has no effect if none are being printed.
+     */
+    public static synchronized void stopDump() {
+        if (dump != null) {
+            dump.cancel(false);
+            dump = null;
+        }
+    }
+
+    /**
+     * Returns the bytes the calling thread has allocated so far, or 0 if
+     * allocations are not being counted. Commands call this when they start.
+     */
+    static long allocatedBytes() {
+        if (!countAllocations) {
+            return 0;
+        }
+        return ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread()
+                .getId());
+    }
+
+    /**
+     * Records a Command of the given type that started at the given time, with
+     * the calling thread having allocated the given bytes at the start.
+     */
+    static void recordCommand(CommandType type, long startNanos,
+            long startBytes) {
+        COMMANDS[type.ordinal()].record(System.nanoTime() - startNanos);
+        if (countAllocations && startBytes > 0) {
+            COMMAND_BYTES.addAndGet(type.ordinal(), allocatedBytes()
+                    - startBytes);
+        }
+    }
+
+    /**
+     * Records the given script, registered to input in the given room, that
+     * started at the given time.
+     */
+    static void recordScript(Room room, String input, Script script,
+            long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        ScriptStats stats = SCRIPTS.get(script);
+        if (stats == null) {
+            if (SCRIPTS.size() >= MAX_SCRIPTS && elapsed <= admitNanos) {
+                OTHER_SCRIPTS.record(elapsed);
+                return;
+            }
+            stats = track(room, input, script, elapsed);
+            if (stats == null) {
+                OTHER_SCRIPTS.record(elapsed);
+                return;
+            }
+        }
+        stats.histogram.record(elapsed);
+    }
+
+    /**
+     * Returns the histogram of the given script, giving it one if fewer than
+     * MAX_SCRIPTS are tracked, or if this run alone took longer than the
+     * tracked script with the least total time, which is then folded into
+     * OTHER_SCRIPTS. Returns null if the script is not to be tracked. A value
+     * recorded to the pushed out script while it is folded may be lost.
+     */
+    private static ScriptStats track(Room room, String input, Script script,
+            long elapsed) {
+        synchronized (SCRIPTS) {
+            ScriptStats stats = SCRIPTS.get(script);
+            if (stats != null) {
+                return stats;
+            }
+            if (SCRIPTS.size() >= MAX_SCRIPTS) {
+                Map.Entry<Script, ScriptStats> least = null;
+                for (Map.Entry<Script, ScriptStats> entry : SCRIPTS.entrySet()) {
+                    if (least == null
+                            || entry.getValue().histogram.total() < least
+                                    .getValue().histogram.total()) {
+                        least = entry;
+                    }
+                }
+                long leastTotal = least.getValue().histogram.total();
+                admitNanos = leastTotal;
+                if (elapsed <= leastTotal) {
+                    return null;
+                }
+                SCRIPTS.remove(least.getKey());
+                OTHER_SCRIPTS.add(least.getValue().histogram);
+            }
+            stats = new ScriptStats(room.getShortName() + ": " + input);
+            SCRIPTS.put(script, stats);
+            return stats;
+        }
+    }
+
+    /**
+     * Records a turn that started at the given time.
+     */
+    static void recordTurn(long startNanos) {
+        TURNS.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * The name and histogram of one tracked script.
+     */
+    private static final class ScriptStats {
+        final String name;
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        ScriptStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private static void row(StringBuilder out, String name,
+            LatencyHistogram histogram, long bytes) {
+        long count = histogram.count();
+        out.append(String.format("%-24s %10d %10.0f %10d %10d %10d %10s%n",
+                name, count, histogram.mean(), histogram.percentile(0.5),
+                histogram.percentile(0.99), histogram.max(), bytes < 0
+                        || count == 0 ? "-" : Long.toString(bytes / count)));
+    }
+}
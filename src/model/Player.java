@@ -1,6 +1,5 @@
 package model;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,7 +13,12 @@ public class Player {
     private String name;
     private int curHealth;
     private int maxHealth;
-    private List<String> inventory;
+    private ItemBag inventory;
+    /** read-only view of inventory, handed out by items() */
+    private Items inventoryView;
+
+    /** true iff this has been mutated since the game state was last saved */
+    boolean changed;
 
     // TODO: add other fields
 
@@ -25,10 +29,8 @@ public class Player {
         this.maxHealth = maxHealth;
 
         // copy in
-        this.inventory = new ArrayList<>();
-        for (String item : inventory) {
-            this.inventory.add(item);
-        }
+        this.inventory = new ItemBag(inventory);
+        this.inventoryView = this.inventory.view(this);
 
         // TODO: instantiate other fields
     }
@@ -88,7 +90,9 @@ public class Player {
      * @param name the new name of this
      */
     public void setName(String name) {
+        willChange();
         this.name = name;
+        changed = true;
     }
 
     /**
@@ -97,7 +101,9 @@ public class Player {
      * @param health the new current health to set this at
      */
     public void setCurHealth(int health) {
+        willChange();
         curHealth = health;
+        changed = true;
     }
 
     /**
@@ -106,7 +112,9 @@ public class Player {
      * @param health the new max health to set this at
      */
     public void setMaxHealth(int health) {
+        willChange();
         maxHealth = health;
+        changed = true;
     }
 
     /**
@@ -115,7 +123,9 @@ public class Player {
      * @param item the item to give the player
      */
     public void giveItem(String item) {
+        willChange();
         inventory.add(item);
+        changed = true;
     }
 
     /**
@@ -125,7 +135,30 @@ public class Player {
      * @param item the item to remove from the player's inventory
      */
     public void removeItem(String item) {
-        inventory.remove(item);
+        willChange();
+        if (inventory.remove(item)) {
+            changed = true;
+        }
+    }
+
+    /**
+     * Returns a list of all the items in this player's inventory. Changing the
+     * returned list does not change the inventory.
+     * 
+     * @return a list of the items in this player's inventory
+     */
+    public List<String> getInventory() {
+        return inventory.toList();
+    }
+
+    /**
+     * Returns a read-only view of this player's inventory, which changes as
+     * the inventory does. Unlike getInventory(), nothing is copied.
+     * 
+     * @return a view of the items in this player's inventory
+     */
+    public Items items() {
+        return inventoryView;
     }
 
     /**
@@ -136,4 +169,29 @@ public class Player {
     public boolean isDead() {
         return curHealth <= 0;
     }
+
+    /**
+     * Saves the state of this player to the transaction running on this
+     * thread, if there is one, so that the transaction can undo the change
+     * that is about to be made.
+     */
+    private void willChange() {
+        Transaction tx = Transaction.current();
+        if (tx == null || tx.hasSaved(this)) {
+            return;
+        }
+        final String oldName = name;
+        final int oldCurHealth = curHealth;
+        final int oldMaxHealth = maxHealth;
+        final ItemBag oldInventory = inventory.copy();
+        tx.save(this, new Transaction.Undo() {
+            @Override
+            public void undo() {
+                name = oldName;
+                curHealth = oldCurHealth;
+                maxHealth = oldMaxHealth;
+                inventory.setTo(oldInventory);
+            }
+        });
+    }
 }
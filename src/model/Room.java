@@ -1,9 +1,12 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -11,6 +14,10 @@ import sun.reflect.generics.reflectiveObjects.NotImplementedException;
  * <b>Room</b> represents a a mutable room in a text adventure game. Rooms can
  * register user commands associated with Scripts that run Commands.
  * 
+ * Rooms are thread safe. Every method locks the room, so a Script that must
+ * see several rooms unchanged while it runs can lock them all first (see
+ * GameState).
+ * 
  * @author Sean Wammer
  */
 public class Room {
@@ -22,9 +29,25 @@ public class Room {
     private String name;
     private String shortDesc;
     private String longDesc;
-    private List<String> items;
+    private ItemBag items;
+    /** read-only view of items, handed out by items() */
+    private Items itemsView;
     private Map<String, Script> acceptedInput;
 
+    /**
+     * The keys of acceptedInput, for finding inputs by prefix or by typo, and
+     * the standard form of each key (see InputParser) to the key. Both are
+     * built the first time an input is not recognized, and null until then.
+     */
+    private CommandTrie<String> inputIndex;
+    private Map<String, String> phrasings;
+
+    /**
+     * Set of changed rooms this room adds itself to when it is mutated, or
+     * null if nobody is tracking changes to this room.
+     */
+    private Set<Room> changes;
+
     private static final String DEFAULT_STRING = "...";
 
     public Room(String shortName) {
@@ -43,7 +66,8 @@ public class Room {
      * @param name the descriptive or long name of this
      * @param shortDesc short description of this
      * @param longDesc long description of this
-     * @param items a list of items currently in this room
+     * @param items a list of items currently in this room, with an item
+     *        appearing once for each copy of it
      * @param acceptedInput a map from accepted inputs to Scripts to execute
      * @throws IllegalArgumentException if shortName is null
      */
@@ -54,7 +78,8 @@ public class Room {
         this.name = name;
         this.shortDesc = shortDesc;
         this.longDesc = longDesc;
-        this.items = items;
+        this.items = new ItemBag(items);
+        this.itemsView = this.items.view(this);
         this.acceptedInput = acceptedInput;
 
         checkRep();
@@ -75,7 +100,7 @@ public class Room {
      * 
      * @return the long name of this room.
      */
-    public String getName() {
+    public synchronized String getName() {
         return name;
     }
 
@@ -84,7 +109,7 @@ public class Room {
      * 
      * @return the short description of this room.
      */
-    public String getShortDesc() {
+    public synchronized String getShortDesc() {
         return shortDesc;
     }
 
@@ -93,7 +118,7 @@ public class Room {
      * 
      * @return the long description of this room.
      */
-    public String getLongDesc() {
+    public synchronized String getLongDesc() {
         return longDesc;
     }
 
@@ -105,12 +130,19 @@ public class Room {
      * 
      * @return a list of items in this room.
      */
-    public List<String> getItems() {
-        List<String> retList = new ArrayList<>();
-        for (String item : items) {
-            retList.add(item);
-        }
-        return retList;
+    public synchronized List<String> getItems() {
+        return items.toList();
+    }
+
+    /**
+     * Returns a read-only view of the items in this room, which changes as
+     * they do. Unlike getItems(), nothing is copied, so counting or looking
+     * for an item costs the same however many items this room holds.
+     * 
+     * @return a view of the items in this room
+     */
+    public Items items() {
+        return itemsView;
     }
 
     /**
@@ -122,18 +154,92 @@ public class Room {
      *         script associated with this input.
      * @throws IllegalArgumentException if input == null
      */
-    public Script getScript(String input) {
+    public synchronized Script getScript(String input) {
         return acceptedInput.get(fix(input));
     }
 
+    /**
+     * Returns the input registered in this room that the given input stands
+     * for. That is the input itself if it is registered, otherwise the
+     * registered input that means the same thing once both are parsed (see
+     * InputParser), otherwise the only registered input that starts with it.
+     * Returns null if there is no such input, or if more than one input starts
+     * with it.
+     * 
+     * @param input the user command, or the start of one
+     * @return the registered input that input stands for, or null
+     * @throws IllegalArgumentException if input == null
+     */
+    public synchronized String resolve(String input) {
+        return resolve(input, Collections.<String> emptyList());
+    }
+
+    /**
+     * Returns the input registered in this room that the given input stands
+     * for, as for resolve(String), also matching the objects of input against
+     * the given inventory.
+     * 
+     * @param input the user command, or the start of one
+     * @param inventory the items the player is carrying
+     * @return the registered input that input stands for, or null
+     * @throws IllegalArgumentException if input == null
+     */
+    public synchronized String resolve(String input,
+            Iterable<String> inventory) {
+        input = fix(input);
+        if (acceptedInput.containsKey(input)) {
+            return input;
+        }
+        index();
+        // objects named the way the items are, then the way they were typed
+        String phrased = phrasings.get(InputParser.STANDARD.parse(input, items,
+                inventory));
+        if (phrased == null) {
+            phrased = phrasings.get(InputParser.STANDARD.parse(input));
+        }
+        if (phrased != null) {
+            return phrased;
+        }
+        return inputIndex.complete(input);
+    }
+
+    /**
+     * Returns up to limit inputs registered in this room that the player may
+     * have meant by the given unrecognized input, closest first. Inputs with
+     * one typo are suggested for short inputs, and with two for inputs of
+     * five or more characters.
+     * 
+     * @param input the unrecognized user command
+     * @param limit the most inputs to return
+     * @return the registered inputs close to input
+     * @throws IllegalArgumentException if input == null
+     */
+    public synchronized List<String> suggest(String input, int limit) {
+        input = fix(input);
+        return index().suggest(input, input.length() < 5 ? 1 : 2, limit);
+    }
+
+    /**
+     * Returns all the inputs this room has registered to a script, in lower
+     * case. The returned set is a copy, so it does not change when scripts are
+     * added to or removed from this room.
+     * 
+     * @return all the inputs this room accepts
+     */
+    public synchronized Set<String> getInputs() {
+        return new HashSet<>(acceptedInput.keySet());
+    }
+
     /**
      * Sets the long (descriptive) name of this room.
      * 
      * @param name the new name
      * @throws IllegalArgumentException if name == null
      */
-    public void setName(String name) {
+    public synchronized void setName(String name) {
+        willChange();
         this.name = name;
+        changed();
         checkRep();
     }
 
@@ -143,8 +249,10 @@ public class Room {
      * @param shortDesc the new short description
      * @throws IllegalArgumentException if shortDesc == null
      */
-    public void setShortDesc(String shortDesc) {
+    public synchronized void setShortDesc(String shortDesc) {
+        willChange();
         this.shortDesc = shortDesc;
+        changed();
         checkRep();
     }
 
@@ -154,8 +262,10 @@ public class Room {
      * @param longDesc the new long description
      * @throws IllegalArgumentException if longDesc == null
      */
-    public void setLongDesc(String longDesc) {
+    public synchronized void setLongDesc(String longDesc) {
+        willChange();
         this.longDesc = longDesc;
+        changed();
         checkRep();
     }
 
@@ -172,13 +282,19 @@ public class Room {
      * @param script the script to add to this room
      * @throws IllegalArgumentException if input == null or script == null
      */
-    public Script addScript(String input, Script script) {
+    public synchronized Script addScript(String input, Script script) {
         input = fix(input);
         if (script == null) {
             throw new IllegalArgumentException("Given script must not be null.");
         }
         checkRep();
 
+        willChange();
+        changed();
+        if (inputIndex != null) {
+            inputIndex.put(input, input);
+            phrasings.put(InputParser.STANDARD.parse(input), input);
+        }
         return acceptedInput.put(input, script);
     }
 
@@ -188,8 +304,19 @@ public class Room {
      * @param input the user command associated with the Script to remove
      * @throws IllegalArgumentException if input == null
      */
-    public void removeScript(String input) {
-        acceptedInput.remove(fix(input));
+    public synchronized void removeScript(String input) {
+        willChange();
+        input = fix(input);
+        if (acceptedInput.remove(input) != null) {
+            changed();
+            if (inputIndex != null) {
+                inputIndex.remove(input);
+                String phrased = InputParser.STANDARD.parse(input);
+                if (input.equals(phrasings.get(phrased))) {
+                    phrasings.remove(phrased);
+                }
+            }
+        }
         checkRep();
     }
 
@@ -201,7 +328,7 @@ public class Room {
      * @return true iff this room has the given input registered to a script
      * @throws IllegalArgumentException if input == null
      */
-    public boolean acceptsInput(String input) {
+    public synchronized boolean acceptsInput(String input) {
         checkRep();
         return acceptedInput.containsKey(fix(input));
     }
@@ -211,8 +338,10 @@ public class Room {
      * 
      * @param item the item to add to this room
      */
-    public void addItem(String item) {
+    public synchronized void addItem(String item) {
+        willChange();
         items.add(item);
+        changed();
     }
 
     /**
@@ -221,8 +350,13 @@ public class Room {
      * 
      * @param item the item to remove from this room
      */
-    public boolean removeItem(String item) {
-        return items.remove(item);
+    public synchronized boolean removeItem(String item) {
+        willChange();
+        boolean removed = items.remove(item);
+        if (removed) {
+            changed();
+        }
+        return removed;
     }
 
     /**
@@ -230,7 +364,8 @@ public class Room {
      * the Commands produce to be printed by main or the empty string if there
      * is no output. Returns null if the input was not recognized in this room.
      * 
-     * Input is sanitized by this method.
+     * Input is sanitized by this method, and may be the start of a longer
+     * input if no other input starts the same way.
      * 
      * @param input the command to attempt to run
      * @return the output that these commands produce to be printed by main or
@@ -239,13 +374,76 @@ public class Room {
      * @throws IllegalArgumentException if input == null
      */
     public String execute(String input) {
-        input = fix(input);
-        if (!acceptsInput(input)) {
+        StringBuilder out = new StringBuilder();
+        if (!execute(input, out)) {
             return null;
+        }
+        return out.toString();
+    }
+
+    /**
+     * Runs the Script associated with the given input, appending the output
+     * that the Commands produce to out. Returns false and appends nothing if
+     * the input was not recognized in this room.
+     * 
+     * Input is sanitized by this method, and may be the start of a longer
+     * input if no other input starts the same way.
+     * 
+     * @param input the command to attempt to run
+     * @param out the buffer to append the output of the script to
+     * @return true iff the command is recognized in this Room
+     * @throws IllegalArgumentException if input == null
+     */
+    public synchronized boolean execute(String input, StringBuilder out) {
+        input = resolve(input);
+        if (input == null) {
+            return false;
+        }
+        Script script = acceptedInput.get(input);
+        if (!Metrics.isEnabled()) {
+            script.execute(out);
+            checkRep();
+            return true;
+        } else {
+            long start = System.nanoTime();
+            script.execute(out);
+            Metrics.recordScript(this, input, script, start);
+            checkRep();
+            return true;
+        }
+    }
+
+    /**
+     * Runs the Script associated with the given input on behalf of the player
+     * of the given game state, appending the output that the Commands produce
+     * to out. Returns false and appends nothing if the input was not
+     * recognized in this room. Input may be abbreviated as for
+     * execute(String, StringBuilder).
+     * 
+     * @param input the command to attempt to run
+     * @param state the game state of the player running the command
+     * @param out the buffer to append the output of the script to
+     * @return true iff the command is recognized in this Room
+     * @throws IllegalArgumentException if input == null
+     */
+    synchronized boolean execute(String input, GameState state,
+            StringBuilder out) {
+        input = resolve(input, state == null ? Collections.<String> emptyList()
+                : state.getPlayer().items());
+        if (input == null) {
+            return false;
+        }
+        Script script = acceptedInput.get(input);
+        if (!Metrics.isEnabled()) {
+            script.execute(state, out);
+            checkRep();
+            return true;
         } else {
-            String result = acceptedInput.get(input).execute();
+            long start = System.nanoTime();
+            script.execute(state, out);
+            Metrics.recordScript(this, input, script, start);
             checkRep();
-            return result;
+            return true;
         }
     }
 
@@ -278,6 +476,73 @@ public class Room {
         return other.getShortName().equals(getShortName());
     }
 
+    /**
+     * Makes this room add itself to the given set whenever it is mutated, so
+     * that the game state knows which rooms need saving.
+     * 
+     * @param changes the set to add this room to when it changes, or null to
+     *        stop tracking changes
+     */
+    synchronized void trackChanges(Set<Room> changes) {
+        this.changes = changes;
+    }
+
+    /**
+     * Saves the state of this room to the transaction running on this thread,
+     * if there is one, so that the transaction can undo the change that is
+     * about to be made.
+     */
+    private void willChange() {
+        Transaction tx = Transaction.current();
+        if (tx == null || tx.hasSaved(this)) {
+            return;
+        }
+        final String oldName = name;
+        final String oldShortDesc = shortDesc;
+        final String oldLongDesc = longDesc;
+        final ItemBag oldItems = items.copy();
+        final Map<String, Script> oldInput = new HashMap<>(acceptedInput);
+        tx.save(this, new Transaction.Undo() {
+            @Override
+            public void undo() {
+                synchronized (Room.this) {
+                    name = oldName;
+                    shortDesc = oldShortDesc;
+                    longDesc = oldLongDesc;
+                    items.setTo(oldItems);
+                    acceptedInput.clear();
+                    acceptedInput.putAll(oldInput);
+                    inputIndex = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the index of this room's inputs, building it and phrasings if
+     * needed.
+     */
+    private CommandTrie<String> index() {
+        if (inputIndex == null) {
+            inputIndex = new CommandTrie<>();
+            phrasings = new HashMap<>();
+            for (String input : acceptedInput.keySet()) {
+                inputIndex.put(input, input);
+                phrasings.put(InputParser.STANDARD.parse(input), input);
+            }
+        }
+        return inputIndex;
+    }
+
+    /**
+     * Records that this room has been mutated.
+     */
+    private void changed() {
+        if (changes != null) {
+            changes.add(this);
+        }
+    }
+
     /**
      * Standardizes the input so that we are more likely to recognize commands.
      * 
@@ -314,7 +579,7 @@ public class Room {
                     "long description must not be null.");
         }
         if (items == null) {
-            throw new IllegalArgumentException("items list must not be null.");
+            throw new IllegalArgumentException("items must not be null.");
         }
         if (acceptedInput == null) {
             throw new IllegalArgumentException(
@@ -0,0 +1,59 @@
+package model;
+
+import java.util.List;
+
+/**
+ * <b>RoomSource</b> supplies rooms to a GameState on demand, so that a world
+ * does not have to be built all at once when a game is loaded.
+ *
+ * Short names given to a RoomSource are always lower case.
+ *
+ * @author Sean Wammer
+ */
+public interface RoomSource {
+
+    /**
+     * Returns true iff this source has a room with the given short name.
+     *
+     * @param shortName the lower case short name of the room
+     * @return true iff this source has the room
+     */
+    boolean containsRoom(String shortName);
+
+    /**
+     * Builds a new Room for the given short name, or returns null if this
+     * source has no such room. Every call returns a new Room, so the caller
+     * owns the result and may mutate it.
+     *
+     * @param shortName the lower case short name of the room
+     * @return a new Room with the given short name or null
+     */
+    Room loadRoom(String shortName);
+
+    /**
+     * Returns the short names of the rooms that the given room has edges to,
+     * or an empty list if there is no such room.
+     *
+     * @param shortName the lower case short name of the room
+     * @return the short names of the rooms adjacent to the given room
+     */
+    List<String> exits(String shortName);
+
+    /**
+     * Returns the labels of the edges that exits returns for the given room,
+     * in the same order, with null for edges that have no label. Returns an
+     * empty list if there is no such room.
+     *
+     * @param shortName the lower case short name of the room
+     * @return the label of each edge out of the given room, or null
+     */
+    List<String> exitLabels(String shortName);
+
+    /**
+     * Returns a planner for routes between the rooms of this source, following
+     * the edges that exits returns. Every call returns the same planner.
+     *
+     * @return a route planner for the rooms of this source
+     */
+    RoutePlanner planner();
+}
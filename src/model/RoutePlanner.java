@@ -0,0 +1,510 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>RoutePlanner</b> finds the shortest route between two rooms of a world,
+ * so that a player can travel many rooms with one command.
+ *
+ * The planner copies the world's edges into int arrays, forward and backward,
+ * when it is built, and searches with a bidirectional breadth first search
+ * that only touches primitive arrays, so a search allocates nothing but the
+ * route it returns. Worlds with very long routes can also precompute the
+ * distances to and from a few landmark rooms, which give a lower bound on the
+ * length of any route. Routes the bound says are long are then searched for
+ * from the start only, heading straight for the goal (A* with the ALT lower
+ * bound). Landmarks cost 8 bytes per room each.
+ *
+ * A planner sees the world as it was when it was built. Searches lock the
+ * planner, so one planner can be shared by many players.
+ *
+ * @author Sean Wammer
+ */
+public class RoutePlanner {
+
+    /** distance to a room that can not be reached */
+    private static final int FAR = Integer.MAX_VALUE;
+    /**
+     * the fewest rooms a route must pass through, by the landmarks, for the
+     * search to use them. Shorter routes are found faster by searching from
+     * both ends, since the landmarks rarely tell rooms a few steps apart
+     * apart.
+     */
+    private static final int LONG_ROUTE = 32;
+
+    /** lowercase short names and ids of the rooms */
+    private final IndexedGraph<String> graph;
+    private final int size;
+
+    // children of room i are forward[forwardOffsets[i]..forwardOffsets[i+1]),
+    // and parents of room i likewise in backward
+    private final int[] forwardOffsets;
+    private final int[] forward;
+    private final int[] backwardOffsets;
+    private final int[] backward;
+
+    // landmark rooms, distances from each landmark to every room and from
+    // every room to each landmark, FAR if there is no route
+    private int[] landmarks = new int[0];
+    private int[][] fromLandmark = new int[0][];
+    private int[][] toLandmark = new int[0][];
+
+    // scratch space reused by every search. A room has been reached by the
+    // current search from one side iff its stamp on that side is stamp.
+    private int stamp;
+    private final int[] forwardStamp;
+    private final int[] backwardStamp;
+    private final int[] forwardParent;
+    private final int[] backwardParent;
+    private final int[] forwardDistance;
+    private final int[] backwardDistance;
+    private final int[] forwardQueue;
+    private final int[] backwardQueue;
+    private long[] heap = new long[16];
+    private int[] heapRooms = new int[16];
+
+    /**
+     * Constructs a new RoutePlanner over the given graph of lowercase room
+     * short names. Freezes the graph.
+     *
+     * @param graph the rooms and the edges between them
+     */
+    public RoutePlanner(IndexedGraph<String> graph) {
+        graph.freeze();
+        this.graph = graph;
+        this.size = graph.size();
+
+        forwardOffsets = new int[size + 1];
+        forward = new int[graph.edgeCount()];
+        backwardOffsets = new int[size + 1];
+        backward = new int[graph.edgeCount()];
+        for (int i = 0; i < size; i++) {
+            int degree = graph.degree(i);
+            forwardOffsets[i + 1] = forwardOffsets[i] + degree;
+            for (int j = 0; j < degree; j++) {
+                int child = graph.neighbor(i, j);
+                forward[forwardOffsets[i] + j] = child;
+                backwardOffsets[child + 1]++;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            backwardOffsets[i + 1] += backwardOffsets[i];
+        }
+        int[] next = Arrays.copyOf(backwardOffsets, size);
+        for (int i = 0; i < size; i++) {
+            for (int j = forwardOffsets[i]; j < forwardOffsets[i + 1]; j++) {
+                backward[next[forward[j]]++] = i;
+            }
+        }
+
+        forwardStamp = new int[size];
+        backwardStamp = new int[size];
+        forwardParent = new int[size];
+        backwardParent = new int[size];
+        forwardDistance = new int[size];
+        backwardDistance = new int[size];
+        forwardQueue = new int[size];
+        backwardQueue = new int[size];
+    }
+
+    /**
+     * Returns a RoutePlanner over the rooms of the given graph.
+     *
+     * @param rooms the rooms and the edges between them
+     * @return a planner for rooms
+     */
+    public static RoutePlanner of(Graph<Room> rooms) {
+        IndexedGraph<String> names = new IndexedGraph<>();
+        for (Room room : rooms.nodes()) {
+            int parent = names.intern(room.getShortName().toLowerCase());
+            for (Room child : rooms.adjacent(room)) {
+                names.addEdge(parent,
+                        names.intern(child.getShortName().toLowerCase()));
+            }
+        }
+        return new RoutePlanner(names);
+    }
+
+    /**
+     * Returns a new RoutePlanner over the rooms of this one in which each room
+     * named in exits leads to the given rooms instead of the rooms it leads to
+     * here. Rooms that are only named in exits are added. The new planner has
+     * no landmarks.
+     *
+     * @param exits lowercase short names of rooms to the lowercase short names
+     *        of the rooms they lead to
+     * @return a planner for the rooms of this with the given exits
+     */
+    public RoutePlanner withExits(
+            Map<String, ? extends Collection<String>> exits) {
+        IndexedGraph<String> names = new IndexedGraph<>();
+        for (int i = 0; i < size; i++) {
+            names.intern(graph.data(i));
+        }
+        for (int i = 0; i < size; i++) {
+            if (!exits.containsKey(graph.data(i))) {
+                for (int j = forwardOffsets[i]; j < forwardOffsets[i + 1]; j++) {
+                    names.addEdge(i, forward[j]);
+                }
+            }
+        }
+        for (Map.Entry<String, ? extends Collection<String>> entry : exits
+                .entrySet()) {
+            int parent = names.intern(entry.getKey());
+            for (String child : entry.getValue()) {
+                names.addEdge(parent, names.intern(child));
+            }
+        }
+        return new RoutePlanner(names);
+    }
+
+    /**
+     * Returns the number of rooms this planner knows.
+     *
+     * @return the number of rooms this planner knows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Picks count landmark rooms spread across the world and records the
+     * distance from each to every room and back, so that later searches can
+     * use them. Replaces any landmarks picked before.
+     *
+     * Each landmark is the room furthest from the landmarks picked so far,
+     * starting from room 0.
+     *
+     * @param count the number of landmarks to pick
+     * @throws IllegalArgumentException if count < 0
+     */
+    public synchronized void precomputeLandmarks(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative");
+        }
+        count = Math.min(count, size);
+        int[] picked = new int[count];
+        int[][] from = new int[count][];
+        int[][] to = new int[count][];
+
+        // nearest[v] is the distance from the closest landmark to v
+        int[] nearest = new int[size];
+        Arrays.fill(nearest, FAR);
+        int next = 0;
+        for (int k = 0; k < count; k++) {
+            picked[k] = next;
+            from[k] = distances(next, forwardOffsets, forward);
+            to[k] = distances(next, backwardOffsets, backward);
+
+            int best = -1;
+            for (int v = 0; v < size; v++) {
+                nearest[v] = Math.min(nearest[v], from[k][v]);
+                // unreached rooms make the best landmarks of all
+                if (best < 0 || nearest[v] > nearest[best]) {
+                    best = v;
+                }
+            }
+            next = best;
+        }
+        landmarks = picked;
+        fromLandmark = from;
+        toLandmark = to;
+    }
+
+    /**
+     * Returns the number of landmarks searches use.
+     *
+     * @return the number of landmarks
+     */
+    public synchronized int landmarkCount() {
+        return landmarks.length;
+    }
+
+    /**
+     * Returns the shortest route from one room to another: the short names of
+     * the rooms to go to in order, ending with to. Returns an empty list if
+     * from and to are the same room, and null if either room is unknown or to
+     * can not be reached from from.
+     *
+     * @param from the short name of the room to start in
+     * @param to the short name of the room to end in
+     * @return the rooms to go to in order, or null if there is no route
+     */
+    public synchronized List<String> route(String from, String to) {
+        int source = graph.id(from.toLowerCase().trim());
+        int target = graph.id(to.toLowerCase().trim());
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        if (source == target) {
+            return Collections.emptyList();
+        }
+        nextStamp();
+        if (landmarks.length > 0) {
+            int h = bound(source, target);
+            if (h == FAR) {
+                return null;
+            }
+            if (h >= LONG_ROUTE) {
+                return aStar(source, target, h);
+            }
+        }
+        return bidirectional(source, target);
+    }
+
+    /**
+     * Searches outward from both ends one level at a time, always growing the
+     * smaller frontier, until the two searches meet.
+     */
+    private List<String> bidirectional(int source, int target) {
+        reach(forwardStamp, forwardParent, forwardDistance, source, -1, 0);
+        reach(backwardStamp, backwardParent, backwardDistance, target, -1, 0);
+        forwardQueue[0] = source;
+        backwardQueue[0] = target;
+        int forwardHead = 0;
+        int forwardTail = 1;
+        int backwardHead = 0;
+        int backwardTail = 1;
+
+        while (forwardHead < forwardTail && backwardHead < backwardTail) {
+            int best = FAR;
+            int meet = -1;
+            int meetParent = -1;
+            boolean fromSource = forwardTail - forwardHead <= backwardTail
+                    - backwardHead;
+
+            // finish one whole level, since the first meeting found in it is
+            // not always on the shortest route
+            int[] queue = fromSource ? forwardQueue : backwardQueue;
+            int head = fromSource ? forwardHead : backwardHead;
+            int tail = fromSource ? forwardTail : backwardTail;
+            int levelEnd = tail;
+            int[] offsets = fromSource ? forwardOffsets : backwardOffsets;
+            int[] edges = fromSource ? forward : backward;
+            int[] stamps = fromSource ? forwardStamp : backwardStamp;
+            int[] parents = fromSource ? forwardParent : backwardParent;
+            int[] distance = fromSource ? forwardDistance : backwardDistance;
+            int[] otherStamps = fromSource ? backwardStamp : forwardStamp;
+            int[] otherDistance = fromSource ? backwardDistance
+                    : forwardDistance;
+
+            while (head < levelEnd) {
+                int v = queue[head++];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = edges[e];
+                    if (otherStamps[w] == stamp) {
+                        int length = distance[v] + 1 + otherDistance[w];
+                        if (length < best) {
+                            best = length;
+                            meet = w;
+                            meetParent = v;
+                        }
+                    }
+                    if (stamps[w] != stamp) {
+                        reach(stamps, parents, distance, w, v, distance[v] + 1);
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            if (fromSource) {
+                forwardHead = head;
+                forwardTail = tail;
+            } else {
+                backwardHead = head;
+                backwardTail = tail;
+            }
+
+            if (meet >= 0) {
+                // meet was reached from meetParent on this side
+                if (fromSource) {
+                    return path(meetParent, meet, forwardParent,
+                            backwardParent);
+                }
+                return path(meet, meetParent, forwardParent, backwardParent);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Searches from source toward target, trying rooms in order of the
+     * distance so far plus the landmark lower bound on the distance left.
+     */
+    private List<String> aStar(int source, int target, int h) {
+        reach(forwardStamp, forwardParent, forwardDistance, source, -1, 0);
+        int heapSize = push(0, h, h, source);
+        while (heapSize > 0) {
+            long top = heap[0];
+            int v = heapRooms[0];
+            heapSize = pop(heapSize);
+            int estimate = (int) (top >>> 32);
+            if (estimate - (int) top > forwardDistance[v]) {
+                // a shorter way to v was found after this entry was queued
+                continue;
+            }
+            if (v == target) {
+                return path(target, -1, forwardParent, backwardParent);
+            }
+            for (int e = forwardOffsets[v]; e < forwardOffsets[v + 1]; e++) {
+                int w = forward[e];
+                int distance = forwardDistance[v] + 1;
+                if (forwardStamp[w] != stamp || distance < forwardDistance[w]) {
+                    h = bound(w, target);
+                    if (h == FAR) {
+                        // the landmarks prove target can not be reached from w
+                        continue;
+                    }
+                    reach(forwardStamp, forwardParent, forwardDistance, w, v,
+                            distance);
+                    heapSize = push(heapSize, distance + h, h, w);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a lower bound on the distance from v to target using the
+     * triangle inequality with every landmark, or FAR if a landmark proves
+     * there is no route.
+     */
+    private int bound(int v, int target) {
+        int best = 0;
+        for (int k = 0; k < landmarks.length; k++) {
+            int fromV = fromLandmark[k][v];
+            int fromTarget = fromLandmark[k][target];
+            // d(L, target) <= d(L, v) + d(v, target)
+            if (fromV != FAR && fromTarget != FAR) {
+                best = Math.max(best, fromTarget - fromV);
+            } else if (fromV != FAR) {
+                // L reaches v but not target, so v can not reach target
+                return FAR;
+            }
+            int toV = toLandmark[k][v];
+            int toTarget = toLandmark[k][target];
+            // d(v, L) <= d(v, target) + d(target, L)
+            if (toV != FAR && toTarget != FAR) {
+                best = Math.max(best, toV - toTarget);
+            } else if (toTarget != FAR) {
+                // target reaches L but v does not, so v can not reach target
+                return FAR;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the route through the edge from a to b: the rooms after the
+     * source up to a by following forward parents back from a, then b and
+     * the rooms after it by following backward parents to the target. b may
+     * be -1 for a route that ends at a.
+     */
+    private List<String> path(int a, int b, int[] forwardParents,
+            int[] backwardParents) {
+        List<String> route = new ArrayList<>();
+        for (int v = a; forwardParents[v] >= 0; v = forwardParents[v]) {
+            route.add(graph.data(v));
+        }
+        Collections.reverse(route);
+        for (int v = b; v >= 0; v = backwardParents[v]) {
+            route.add(graph.data(v));
+        }
+        return route;
+    }
+
+    private void reach(int[] stamps, int[] parents, int[] distance, int v,
+            int parent, int d) {
+        stamps[v] = stamp;
+        parents[v] = parent;
+        distance[v] = d;
+    }
+
+    /**
+     * Starts a new search, forgetting every room reached before.
+     */
+    private void nextStamp() {
+        stamp++;
+        if (stamp == 0) {
+            // wrapped around, so old stamps could look current
+            Arrays.fill(forwardStamp, 0);
+            Arrays.fill(backwardStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Returns the breadth first distance from start to every room, following
+     * the given edges.
+     */
+    private int[] distances(int start, int[] offsets, int[] edges) {
+        int[] distance = new int[size];
+        Arrays.fill(distance, FAR);
+        int[] queue = forwardQueue;
+        distance[start] = 0;
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = edges[e];
+                if (distance[w] == FAR) {
+                    distance[w] = distance[v] + 1;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        return distance;
+    }
+
+    // a binary min heap of rooms keyed by (estimate << 32 | bound), so that
+    // of the rooms with the same estimate the one nearest the target comes
+    // first, which keeps the search from spreading across ties
+
+    private int push(int heapSize, int estimate, int bound, int v) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+            heapRooms = Arrays.copyOf(heapRooms, heapSize * 2);
+        }
+        long key = ((long) estimate << 32) | bound;
+        int i = heapSize;
+        while (i > 0 && heap[(i - 1) / 2] > key) {
+            heap[i] = heap[(i - 1) / 2];
+            heapRooms[i] = heapRooms[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = key;
+        heapRooms[i] = v;
+        return heapSize + 1;
+    }
+
+    private int pop(int heapSize) {
+        heapSize--;
+        long last = heap[heapSize];
+        int lastRoom = heapRooms[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapRooms[i] = heapRooms[child];
+            i = child;
+        }
+        heap[i] = last;
+        heapRooms[i] = lastRoom;
+        return heapSize;
+    }
+}
@@ -1,7 +1,10 @@
 package model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -69,6 +72,16 @@ public class Script {
      */
     
     private List<Command> commands;
+    /**
+     * lowercase short names of the rooms this script names, sorted, or null
+     * if not computed since the last command was added
+     */
+    private volatile String[] rooms;
+    /**
+     * where each move of this script goes, in order, or null if not computed
+     * since the last command was added
+     */
+    private volatile String[] moves;
     // TODO add other fields
     
     public Script() {
@@ -83,6 +96,18 @@ public class Script {
      */
     public void add(Command command) {
         commands.add(command);
+        rooms = null;
+        moves = null;
+    }
+
+    /**
+     * Returns the Commands of this script in the order they run. The returned
+     * list can not be modified.
+     * 
+     * @return the Commands of this script
+     */
+    public List<Command> getCommands() {
+        return Collections.unmodifiableList(commands);
     }
 
     /**
@@ -91,18 +116,121 @@ public class Script {
      * @return the output that these commands produce to be printed by main.
      */
     public String execute() {
-        String ret = "";
-        for (Command command : commands) {
-            String result = command.execute();
-            // TODO decide behavior for bad Command case (do we want good debugging, or robust games that don't crash?)
-            // perhaps we can just have a debug flag in..GameModel?
-            if (result == null) {
-                // COMMAND ERROR!! RAISE EXCEPTION HERE? WE DON'T WANT TO ADD
-                // 'null' TO THE RETURN STRING
+        StringBuilder out = new StringBuilder();
+        execute(out);
+        return out.toString();
+    }
+
+    /**
+     * Returns the lowercase short names of every room that the Commands of
+     * this script name as an argument, sorted and without duplicates. Apart
+     * from these, running this script only touches the room the player starts
+     * in and the rooms its moves() lead to. Scripts that this script adds are
+     * not run, so the rooms they name are not included.
+     * 
+     * @return the sorted short names of the rooms this script names
+     */
+    public String[] rooms() {
+        String[] ret = rooms;
+        if (ret == null) {
+            SortedSet<String> names = new TreeSet<>();
+            for (Command command : commands) {
+                String room = command.targetRoom();
+                if (room != null) {
+                    names.add(room);
+                }
             }
+            ret = names.toArray(new String[names.size()]);
+            rooms = ret;
+        }
+        return ret;
+    }
 
-            ret += result;
+    /**
+     * Returns the lowercase short name or exit label that each Command of this
+     * script that moves the player goes to, in the order they run. Each move
+     * starts from the room the move before it led to.
+     * 
+     * @return where each move of this script goes, in order
+     */
+    public String[] moves() {
+        String[] ret = moves;
+        if (ret == null) {
+            List<String> destinations = new ArrayList<>();
+            for (Command command : commands) {
+                String destination = command.destination();
+                if (destination != null) {
+                    destinations.add(destination);
+                }
+            }
+            ret = destinations.toArray(new String[destinations.size()]);
+            moves = ret;
         }
         return ret;
     }
+
+    /**
+     * Executes the list of Command in this Script recursively in order,
+     * appending the output they produce to out.
+     * 
+     * A script runs as one transaction. If a Command fails, the script stops
+     * and every change it made to rooms and the player is undone, and nothing
+     * is appended to out, so a failed script never leaves the game half
+     * changed.
+     * 
+     * @param out the buffer to append the output of these commands to
+     * @return true iff every Command ran without error
+     * @throws IllegalStateException if a Command was constructed without a
+     *         GameModel
+     */
+    public boolean execute(StringBuilder out) {
+        return execute(null, out);
+    }
+
+    /**
+     * Executes the list of Command in this Script in order on behalf of the
+     * player of the given game state, appending the output they produce to
+     * out. Runs as one transaction, like execute(StringBuilder).
+     * 
+     * @param state the game state of the player running this script, or null
+     *        for the game each Command was constructed with
+     * @param out the buffer to append the output of these commands to
+     * @return true iff every Command ran without error
+     */
+    public boolean execute(GameState state, StringBuilder out) {
+        int mark = out.length();
+        Transaction tx = Transaction.begin();
+        boolean success = false;
+        try {
+            success = executeCommands(state, out);
+        } finally {
+            // also undo the changes if a Command throws
+            if (tx != null) {
+                if (success) {
+                    tx.commit();
+                } else {
+                    tx.rollback();
+                }
+            }
+            if (!success) {
+                out.setLength(mark);
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Executes the Commands in order until one fails. Returns true iff none
+     * failed.
+     */
+    private boolean executeCommands(GameState state, StringBuilder out) {
+        for (Command command : commands) {
+            boolean ran = state == null ? command.execute(out) : command
+                    .execute(state, out);
+            if (!ran) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
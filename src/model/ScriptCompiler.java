@@ -0,0 +1,97 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.Command.InvalidGameDataException;
+
+/**
+ * <b>ScriptCompiler</b> turns the flat token form of a script into an
+ * executable Script. See Script for the flat file format.
+ *
+ * Nested ADD_SCRIPT and ADD_SCRIPT_TO blocks are compiled by the Commands they
+ * belong to when those Commands are constructed, so a whole script tree is
+ * parsed exactly once when it is loaded. Running a compiled script never
+ * parses anything.
+ *
+ * @author Sean Wammer
+ */
+public final class ScriptCompiler {
+
+    /** Marks the end of a nested ADD_SCRIPT or ADD_SCRIPT_TO block */
+    public static final String END_SCRIPT = "END_SCRIPT";
+
+    // static utility class, no instances
+    private ScriptCompiler() {
+    }
+
+    /**
+     * Compiles tokens starting at index start into a Script. Every token from
+     * start to the end of tokens must belong to the script.
+     *
+     * @param gameModel the game model the compiled Commands act on
+     * @param tokens the flat tokens of the script
+     * @param start the index of the first command type in tokens
+     * @return the compiled Script
+     * @throws InvalidGameDataException if a command type is not recognized or
+     *         a nested script is missing its END_SCRIPT
+     */
+    public static Script compile(GameModel gameModel, String[] tokens,
+            int start) {
+        Script script = new Script();
+
+        // while there are still commands, add to the script
+        int i = start;
+        while (i < tokens.length) {
+            // Build next command
+            CommandType ct = CommandType.get(tokens[i]);
+            if (ct == null) {
+                throw new InvalidGameDataException("Unrecognized command \""
+                        + tokens[i] + "\" in script");
+            }
+            List<String> arguments = new ArrayList<String>();
+
+            // build arg array
+            i++;
+            if (ct == CommandType.ADD_SCRIPT || ct == CommandType.ADD_SCRIPT_TO) {
+                // continue until we find the matching END_SCRIPT. Nested
+                // blocks keep their own END_SCRIPT as an argument so that the
+                // nested Command can compile them in turn.
+                int depth = 0;
+                while (true) {
+                    if (i >= tokens.length) {
+                        throw new InvalidGameDataException(
+                                "END_SCRIPT not found. END_SCRIPT required at the end of ADD_SCRIPT commands");
+                    }
+                    String token = tokens[i];
+                    if (token.equalsIgnoreCase(END_SCRIPT)) {
+                        if (depth == 0) {
+                            break;
+                        }
+                        depth--;
+                    } else {
+                        CommandType nested = CommandType.get(token);
+                        if (nested == CommandType.ADD_SCRIPT
+                                || nested == CommandType.ADD_SCRIPT_TO) {
+                            depth++;
+                        }
+                    }
+                    arguments.add(token);
+                    i++;
+                }
+                i++;
+            } else {
+                // continue until we find another command
+                while (i < tokens.length && CommandType.get(tokens[i]) == null) {
+                    arguments.add(tokens[i]);
+                    i++;
+                }
+            }
+
+            // add this command to the script
+            String[] args = arguments.toArray(new String[0]);
+            script.add(new Command(gameModel, ct, args));
+        }
+        return script;
+    }
+}
@@ -0,0 +1,103 @@
+package model;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>SharedWorld</b> is one set of rooms that many players play in at the same
+ * time, each from their own thread. Every player has their own Player and
+ * current room, but a change one player makes to a room is seen by all of
+ * them.
+ * 
+ * Rooms lock themselves, and a script locks every room it can touch before it
+ * runs (see GameState), so players in different rooms never wait on each
+ * other. The rooms are fixed once the world is constructed, but scripts may
+ * open and close the exits between them. Reading the exits never waits for
+ * a player that is changing them (see Graph).
+ * 
+ * @author Sean Wammer
+ */
+public class SharedWorld {
+
+    final Graph<Room> rooms;
+    final Map<String, Room> nameToRoom;
+    /** rooms mutated by any player since changes were last cleared */
+    final Set<Room> changedRooms;
+
+    private final Player newPlayer;
+    private final String startRoom;
+    private RoutePlanner planner;
+    /** the rooms graph version that planner was built against */
+    private int plannerVersion;
+
+    /**
+     * Constructs a new SharedWorld with the given rooms. Players that join
+     * start out as a copy of newPlayer, in the given start room. The world
+     * takes ownership of its parameters, so they must not be used afterwards.
+     * 
+     * @param rooms a graph of all the rooms in this world with edges between
+     *        adjacent rooms
+     * @param nameToRoom a map of the lowercase short names of rooms to the
+     *        rooms in 'rooms'
+     * @param newPlayer the player that joining players are copied from
+     * @param startRoom the short name of the room players join in
+     * @throws IllegalArgumentException if there is no room named startRoom
+     */
+    public SharedWorld(Graph<Room> rooms, Map<String, Room> nameToRoom,
+            Player newPlayer, String startRoom) {
+        if (!nameToRoom.containsKey(startRoom.toLowerCase().trim())) {
+            throw new IllegalArgumentException("no start room " + startRoom);
+        }
+        this.rooms = rooms;
+        this.nameToRoom = nameToRoom;
+        this.changedRooms = Collections
+                .newSetFromMap(new ConcurrentHashMap<Room, Boolean>());
+        this.newPlayer = newPlayer;
+        this.startRoom = startRoom;
+        for (Room room : nameToRoom.values()) {
+            room.trackChanges(changedRooms);
+        }
+    }
+
+    /**
+     * Returns the game state of a new player with the given name in this
+     * world. The game state must only be used by one thread at a time.
+     * 
+     * @param playerName the name of the new player
+     * @return the game state of the new player
+     */
+    public GameState join(String playerName) {
+        Player player = new Player(playerName, newPlayer.curHealth(),
+                newPlayer.maxHealth(), newPlayer.getInventory());
+        return new GameState(this, player, startRoom);
+    }
+
+    /**
+     * Returns the room with the given short name or null if there is no room
+     * with this short name. Not case sensitive.
+     * 
+     * @param shortName the short name of the desired room
+     * @return the room with the given short name or null
+     */
+    public Room getRoom(String shortName) {
+        return nameToRoom.get(shortName.toLowerCase().trim());
+    }
+
+    /**
+     * Returns the route planner for this world, shared by every player. The
+     * planner is built the first time it is needed, and built again when it is
+     * needed after an exit has been opened or closed.
+     * 
+     * @return the route planner for this world
+     */
+    synchronized RoutePlanner planner() {
+        int version = rooms.version();
+        if (planner == null || plannerVersion != version) {
+            planner = RoutePlanner.of(rooms);
+            plannerVersion = version;
+        }
+        return planner;
+    }
+}
@@ -0,0 +1,118 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <b>Transaction</b> makes the changes a Script makes to the game all happen
+ * or not at all.
+ *
+ * While a transaction is running on a thread, every Room, Player and GameState
+ * saves its state to the transaction the first time it is about to change, and
+ * every exit opened or closed between rooms is logged. If the script fails,
+ * the transaction puts them all back the way they were.
+ * Nothing is copied until something changes, and each object is copied at most
+ * once, so a script that only prints costs nothing extra.
+ *
+ * @author Sean Wammer
+ */
+final class Transaction {
+
+    /** the transaction running on each thread, if any */
+    private static final ThreadLocal<Transaction> CURRENT = new ThreadLocal<>();
+
+    /** objects that have saved their state, in the order they saved it */
+    private final Map<Object, Undo> saved = new IdentityHashMap<>();
+    private final List<Undo> undoLog = new ArrayList<>();
+
+    private Transaction() {
+    }
+
+    /**
+     * Starts a transaction on the calling thread. Returns null if one is
+     * already running, in which case changes belong to that transaction.
+     *
+     * @return the started transaction, or null if one was already running
+     */
+    static Transaction begin() {
+        if (CURRENT.get() != null) {
+            return null;
+        }
+        Transaction tx = new Transaction();
+        CURRENT.set(tx);
+        return tx;
+    }
+
+    /**
+     * Returns the transaction running on the calling thread, or null if there
+     * is none.
+     *
+     * @return the transaction running on the calling thread or null
+     */
+    static Transaction current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns true iff the given object has already saved its state to this
+     * transaction. Objects call this before building an Undo for save.
+     *
+     * @param owner the object about to change
+     * @return true iff owner has already saved its state
+     */
+    boolean hasSaved(Object owner) {
+        return saved.containsKey(owner);
+    }
+
+    /**
+     * Records how to put the given object back the way it was before this
+     * transaction changed it. Only the first call for each object counts.
+     *
+     * @param owner the object about to change
+     * @param undo puts owner back the way it is now
+     */
+    void save(Object owner, Undo undo) {
+        if (!saved.containsKey(owner)) {
+            saved.put(owner, undo);
+            undoLog.add(undo);
+        }
+    }
+
+    /**
+     * Records how to undo one change that is not part of the state of a
+     * single object, such as an exit added to the room graph. Every call
+     * counts, and the undo runs in turn with those saved by objects.
+     *
+     * @param undo undoes the change that is about to be made
+     */
+    void log(Undo undo) {
+        undoLog.add(undo);
+    }
+
+    /**
+     * Ends this transaction, keeping every change made during it.
+     */
+    void commit() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Ends this transaction, undoing every change made during it in the
+     * reverse order they were made.
+     */
+    void rollback() {
+        CURRENT.remove();
+        for (int i = undoLog.size() - 1; i >= 0; i--) {
+            undoLog.get(i).undo();
+        }
+    }
+
+    /**
+     * Puts one object back the way it was when it was saved.
+     */
+    interface Undo {
+        void undo();
+    }
+}
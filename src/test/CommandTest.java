@@ -8,8 +8,10 @@ import java.util.List;
 import model.Command;
 import model.CommandType;
 import model.GameModel;
+import model.GameState;
 import model.Player;
 import model.Room;
+import model.Script;
 
 import org.junit.Test;
 import org.junit.BeforeClass;
@@ -92,7 +94,29 @@ public class CommandTest {
     public void testAddScript() {
         // just check if the room accepts the script now, and execute it to make
         // sure it prints hello
-        fail("Test not implemented!");
+        String[] args = { "say hello", "PRINT", "hello", "ADD_SCRIPT",
+                "say bye", "PRINT", "bye", "END_SCRIPT" };
+        Command com = new Command(model, CommandType.ADD_SCRIPT, args);
+
+        Room room = model.getGameState().getCurrentRoom();
+        assertTrue(!room.acceptsInput("say hello"));
+
+        String actual = com.execute();
+        assertEquals("ADD_SCRIPT should return empty string", "", actual);
+        assertTrue(room.acceptsInput("say hello"));
+        assertEquals("added script should print hello", "hello",
+                room.execute("say hello"));
+        assertTrue(room.acceptsInput("say bye"));
+
+        // the nested script is compiled once, so re-adding installs the same
+        // script again
+        Script first = room.getScript("say hello");
+        com.execute();
+        assertSame("ADD_SCRIPT should not re-parse its script", first,
+                room.getScript("say hello"));
+
+        room.removeScript("say hello");
+        room.removeScript("say bye");
     }
 
     @Test
@@ -181,4 +205,59 @@ public class CommandTest {
     public void testSetNameOf() {
         fail("Test not implemented!");
     }
+
+    @Test
+    public void testWithoutGameModel() {
+        // commands loaded for a shared world have no GameModel and only run
+        // for the player whose game state they are given
+        Command print = new Command(null, CommandType.PRINT,
+                new String[] { "hello" });
+        StringBuilder out = new StringBuilder();
+        assertTrue(print.execute(model.getGameState(), out));
+        assertEquals("hello", out.toString());
+        try {
+            print.execute();
+            fail("a command without a GameModel needs a GameState");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testOpenExit() {
+        GameState state = model.getGameState();
+        Command open = new Command(model, CommandType.OPEN_EXIT, new String[] {
+                "kitchen", "Backyard", "door" });
+        assertEquals("OPEN_EXIT should return empty string", "",
+                open.execute());
+        assertEquals("Backyard", state.labeledExits("kitchen").get("door"));
+        assertTrue(state.adjacentRooms("kitchen").contains("Backyard"));
+        assertEquals("kitchen", open.targetRoom());
+
+        Command bad = new Command(model, CommandType.OPEN_EXIT, new String[] {
+                "kitchen", "nowhere at all" });
+        assertNull("OPEN_EXIT to a missing room should fail", bad.execute());
+
+        Command close = new Command(model, CommandType.CLOSE_EXIT,
+                new String[] { "kitchen", "door" });
+        assertEquals("", close.execute());
+        assertFalse(state.adjacentRooms("kitchen").contains("Backyard"));
+    }
+
+    @Test
+    public void testCloseExit() {
+        GameState state = model.getGameState();
+        Command close = new Command(model, CommandType.CLOSE_EXIT,
+                new String[] { "hallway", "Kitchen" });
+        assertEquals("CLOSE_EXIT should return empty string", "",
+                close.execute());
+        assertFalse(state.adjacentRooms("hallway").contains("Kitchen"));
+        assertEquals("closing a closed exit should not fail", "",
+                close.execute());
+
+        Command open = new Command(model, CommandType.OPEN_EXIT, new String[] {
+                "hallway", "kitchen" });
+        assertEquals("", open.execute());
+        assertTrue(state.adjacentRooms("hallway").contains("Kitchen"));
+    }
 }
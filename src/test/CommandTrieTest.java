@@ -0,0 +1,64 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import model.CommandTrie;
+
+import org.junit.Test;
+
+public class CommandTrieTest {
+
+    @Test
+    public void testPutGetRemove() {
+        CommandTrie<Integer> trie = new CommandTrie<>();
+        assertNull(trie.put("look", 1));
+        assertNull(trie.put("lock door", 2));
+        assertEquals(Integer.valueOf(1), trie.put("look", 3));
+        assertEquals(2, trie.size());
+        assertEquals(Integer.valueOf(3), trie.get("look"));
+        assertNull(trie.get("loo"));
+        assertNull(trie.get("looking"));
+
+        assertEquals(Integer.valueOf(3), trie.remove("look"));
+        assertNull(trie.remove("look"));
+        assertNull(trie.get("look"));
+        assertEquals(1, trie.size());
+        assertEquals(Integer.valueOf(2), trie.get("lock door"));
+    }
+
+    @Test
+    public void testComplete() {
+        CommandTrie<String> trie = new CommandTrie<>();
+        trie.put("go", "go");
+        trie.put("get axe", "get axe");
+        trie.put("get apple", "get apple");
+        trie.put("open chest", "open chest");
+
+        assertEquals("go", trie.complete("go"));
+        assertEquals("open chest", trie.complete("o"));
+        assertEquals("get axe", trie.complete("get ax"));
+        assertNull("ambiguous", trie.complete("get"));
+        assertNull("ambiguous", trie.complete("g"));
+        assertNull("missing", trie.complete("jump"));
+
+        trie.remove("get apple");
+        assertEquals("get axe", trie.complete("ge"));
+    }
+
+    @Test
+    public void testSuggest() {
+        CommandTrie<String> trie = new CommandTrie<>();
+        for (String command : new String[] { "look", "lock door", "help",
+                "hello", "jump" }) {
+            trie.put(command, command);
+        }
+        assertEquals(Arrays.asList("look"), trie.suggest("lok", 1, 3));
+        assertEquals(Arrays.asList("hello", "help"), trie.suggest("helo", 1, 3));
+        assertEquals(Arrays.asList("hello"), trie.suggest("helo", 1, 1));
+        assertEquals(Arrays.asList("lock door"),
+                trie.suggest("lock dor", 2, 3));
+        assertTrue(trie.suggest("dance", 2, 3).isEmpty());
+    }
+}
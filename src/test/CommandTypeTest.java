@@ -0,0 +1,83 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+
+import model.CommandType;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CommandTypeTest {
+
+    @After
+    public void teardown() {
+        // registered names are global, so later tests must not see them
+        CommandType.unregister("UNIT_TEST_ECHO");
+        CommandType.unregister("PRINT");
+    }
+
+    @Test
+    public void testGetEveryType() {
+        for (CommandType type : CommandType.values()) {
+            assertEquals("every CommandType should be found by name", type,
+                    CommandType.get(type.name()));
+        }
+    }
+
+    @Test
+    public void testGetIgnoresCaseAndWhitespace() {
+        assertEquals(CommandType.ADD_SCRIPT, CommandType.get(" add_Script\t"));
+        assertEquals(CommandType.SET_SHORT_DESC,
+                CommandType.get("set_short_desc"));
+    }
+
+    @Test
+    public void testGetNotACommand() {
+        assertNull(CommandType.get("You take the knife off the small table."));
+        assertNull(CommandType.get("END_SCRIPT"));
+        assertNull(CommandType.get(""));
+        assertNull(CommandType.get("   "));
+    }
+
+    @Test
+    public void testRegister() {
+        assertNull(CommandType.get("unit_test_echo"));
+        CommandType.register("UNIT_TEST_ECHO", CommandType.PRINT);
+        assertEquals(CommandType.PRINT, CommandType.get(" Unit_Test_Echo "));
+
+        // the original names still work after the table grows
+        for (CommandType type : CommandType.values()) {
+            assertEquals(type, CommandType.get(type.name()));
+        }
+    }
+
+    @Test
+    public void testUnregister() {
+        CommandType.register("UNIT_TEST_ECHO", CommandType.PRINT);
+        CommandType.unregister(" unit_test_echo ");
+        assertNull(CommandType.get("UNIT_TEST_ECHO"));
+
+        // a built in name goes back to its own type
+        CommandType.register("PRINT", CommandType.LOOK);
+        CommandType.unregister("print");
+        assertEquals(CommandType.PRINT, CommandType.get("PRINT"));
+    }
+
+    @Test
+    public void testRegisterInTurkishLocale() {
+        // Turkish upper cases i to a dotted capital I
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            CommandType.register("unit_test_echo", CommandType.PRINT);
+            assertEquals(CommandType.PRINT, CommandType.get("UNIT_TEST_ECHO"));
+            assertEquals(CommandType.PRINT, CommandType.get("unit_test_echo"));
+            CommandType.unregister("unit_test_echo");
+            assertNull(CommandType.get("UNIT_TEST_ECHO"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+}
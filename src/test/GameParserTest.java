@@ -0,0 +1,437 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import model.Command.InvalidGameDataException;
+import model.GameModel;
+import model.GameState;
+import model.Room;
+import utility.GameParser;
+import utility.GameSaver;
+import utility.WorldImage;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GameParserTest {
+
+    private static GameModel model;
+    private File dir;
+
+    @BeforeClass
+    public static void setupClass() throws IOException {
+        model = GameModel.loadGame(1);
+    }
+
+    @Before
+    public void setup() throws IOException {
+        // work on a copy of save file 1
+        dir = Files.createTempDirectory("adventure").toFile();
+        dir.deleteOnExit();
+        for (String name : new String[] { "rooms.tsv", "edges.tsv", "player.tsv" }) {
+            File copy = new File(dir, name);
+            Files.copy(new File("saves/1", name).toPath(), copy.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            copy.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testLoad() throws IOException {
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        assertEquals("Kitchen", state.getCurrentRoom().getShortName());
+        assertEquals(3, state.getRooms().size());
+        assertTrue(state.getCurrentRoom().getItems().contains("knife"));
+        assertTrue(state.getCurrentRoom().acceptsInput("take knife"));
+        assertEquals("You jump with joy!", state.execute("jump"));
+        assertTrue(state.go("hallway"));
+    }
+
+    @Test
+    public void testSharedText() throws IOException {
+        // the same text in two rooms and a script is stored once
+        Files.write(new File(dir, "rooms.tsv").toPath(), ("ROOM\tKitchen\tK"
+                + "\tA room.\tA plain room.\n" + "SCRIPT\tpaint\n"
+                + "SET_DESC\tA plain room.\n" + "END_SCRIPT\n"
+                + "ROOM\tHallway\tH\tA room.\tA plain room.\n"
+                + "ROOM\tBackyard\tB\tOutside.\tGrass.\n")
+                .getBytes(StandardCharsets.UTF_8));
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        Room kitchen = state.getRoom("kitchen");
+        Room hallway = state.getRoom("hallway");
+        assertSame(kitchen.getLongDesc(), hallway.getLongDesc());
+        assertSame(kitchen.getShortDesc(), hallway.getShortDesc());
+        assertSame(kitchen.getLongDesc(), kitchen.getScript("paint")
+                .getCommands().get(0).toTokens().get(1));
+    }
+
+    @Test
+    public void testJournalRoundTrip() throws IOException {
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        state.getRoom("hallway").setLongDesc("A\ttab and a\nnew line \\o/");
+        state.getPlayer().giveItem("lamp");
+        GameSaver.saveGameState(dir.getPath(), state);
+        new File(dir, "journal.tsv").deleteOnExit();
+
+        GameState loaded = new GameParser().loadGameState(model, dir.getPath());
+        Room hallway = loaded.getRoom("hallway");
+        assertEquals("A\ttab and a\nnew line \\o/", hallway.getLongDesc());
+        assertTrue(loaded.getPlayer().getInventory().contains("lamp"));
+        assertTrue("edges should still point at the replayed room",
+                loaded.go("hallway"));
+        assertSame(hallway, loaded.getCurrentRoom());
+    }
+
+    @Test
+    public void testUncommittedBatchIgnored() throws IOException {
+        File journal = new File(dir, "journal.tsv");
+        journal.deleteOnExit();
+        Files.write(journal.toPath(), "ROOM\tHallway\tHall\tshort\tlong\n"
+                .getBytes(StandardCharsets.UTF_8));
+
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        assertEquals("The West Wing Hallway", state.getRoom("hallway").getName());
+    }
+
+    @Test
+    public void testTornJournal() throws IOException {
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        state.getRoom("hallway").addItem("lamp");
+        GameSaver.saveGameState(dir.getPath(), state);
+        File journal = new File(dir, "journal.tsv");
+        journal.deleteOnExit();
+        byte[] committed = Files.readAllBytes(journal.toPath());
+
+        // a save that stopped half way through writing a room
+        state.getRoom("hallway").addItem("rope");
+        GameSaver.saveGameState(dir.getPath(), state);
+        byte[] whole = Files.readAllBytes(journal.toPath());
+        int torn = committed.length + 8;
+        Files.write(journal.toPath(), Arrays.copyOf(whole, torn));
+        GameState reloaded = new GameParser().loadGameState(model,
+                dir.getPath());
+        assertTrue(reloaded.getRoom("hallway").getItems().contains("lamp"));
+        assertFalse(reloaded.getRoom("hallway").getItems().contains("rope"));
+
+        // a committed batch with a bad record is still an error
+        Files.write(journal.toPath(), committed);
+        Files.write(journal.toPath(), ("ROOM\tHallway\nCOMMIT\n")
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try {
+            new GameParser().loadGameState(model, dir.getPath());
+            fail("a committed bad record should not load");
+        } catch (InvalidGameDataException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("journal.tsv"));
+        }
+    }
+
+    @Test
+    public void testErrorLocation() throws IOException {
+        File player = new File(dir, "player.tsv");
+        Files.write(player.toPath(), "ITEM\tlamp\n".getBytes(
+                StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(new File(dir, "edges.tsv").toPath(),
+                "Kitchen\tAttic\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        try {
+            new GameParser().loadGameState(model, dir.getPath());
+            fail("unknown room in edges.tsv should not load");
+        } catch (InvalidGameDataException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("edges.tsv:5:9:"));
+        }
+    }
+
+    @Test
+    public void testParallelLoad() throws IOException {
+        // big enough to be split into several chunks
+        StringBuilder rooms = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            rooms.append("ROOM\tRoom" + i + "\tRoom number " + i
+                    + "\tA plain room.\tA plain room with a plain floor.\n");
+            rooms.append("ITEM\tpebble\n");
+            rooms.append("SCRIPT\tknock\n");
+            rooms.append("PRINT\tKnock knock " + i + "\n");
+            rooms.append("ADD_SCRIPT\twho is there\n");
+            rooms.append("PRINT\tNobody.\n");
+            rooms.append("END_SCRIPT\n");
+            rooms.append("END_SCRIPT\n");
+        }
+        rooms.append(new String(Files.readAllBytes(new File(dir, "rooms.tsv")
+                .toPath()), StandardCharsets.UTF_8));
+        Files.write(new File(dir, "rooms.tsv").toPath(), rooms.toString()
+                .getBytes(StandardCharsets.UTF_8));
+
+        GameState serial = new GameParser(1).loadGameState(model, dir.getPath());
+        GameState parallel = new GameParser(4).loadGameState(model,
+                dir.getPath());
+        assertEquals(20003, parallel.getRooms().size());
+        assertEquals(serial.getRooms().size(), parallel.getRooms().size());
+        assertEquals("Knock knock 12345", parallel.getRoom("room12345")
+                .execute("knock"));
+        assertEquals("Kitchen", parallel.getCurrentRoom().getShortName());
+    }
+
+    @Test
+    public void testParallelDuplicateRoom() throws IOException {
+        StringBuilder rooms = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            rooms.append("ROOM\tRoom" + (i % 39999) + "\tname\tshort\tA long enough description.\n");
+        }
+        Files.write(new File(dir, "rooms.tsv").toPath(), rooms.toString()
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            new GameParser(4).loadGameState(model, dir.getPath());
+            fail("duplicate rooms should not load");
+        } catch (InvalidGameDataException e) {
+            assertTrue(e.getMessage(),
+                    e.getMessage().contains("rooms.tsv:40000:6: duplicate room"));
+        }
+    }
+
+    @Test
+    public void testWorldImage() throws IOException {
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        File image = new File(dir, "world.bin");
+        image.deleteOnExit();
+        WorldImage.write(state, image);
+        // rooms.tsv now only overrides rooms in the image
+        Files.delete(new File(dir, "rooms.tsv").toPath());
+        Files.delete(new File(dir, "edges.tsv").toPath());
+
+        GameState loaded = new GameParser().loadGameState(model, dir.getPath());
+        assertTrue(loaded.getRooms().isEmpty());
+        assertTrue(loaded.getCurrentRoom().acceptsInput("take knife"));
+        assertEquals("only the current room should be built", 1,
+                loaded.getRooms().size());
+        assertEquals("You jump with joy!", loaded.execute("jump"));
+        assertTrue(loaded.go("hallway"));
+        assertTrue(loaded.go("backyard"));
+        assertFalse(loaded.go("kitchen"));
+        assertEquals(3, loaded.getRooms().size());
+
+        loaded.getRoom("backyard").addItem("spade");
+        GameSaver.saveGameState(dir.getPath(), loaded);
+        new File(dir, "journal.tsv").deleteOnExit();
+        GameState reloaded = new GameParser().loadGameState(model,
+                dir.getPath());
+        assertEquals("Backyard", reloaded.getCurrentRoom().getShortName());
+        assertTrue(reloaded.getCurrentRoom().getItems().contains("spade"));
+        assertTrue(reloaded.go("hallway"));
+    }
+
+    @Test
+    public void testTravelInWorldImage() throws IOException {
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        File image = new File(dir, "world.bin");
+        image.deleteOnExit();
+        WorldImage.write(state, image);
+        Files.delete(new File(dir, "rooms.tsv").toPath());
+        Files.delete(new File(dir, "edges.tsv").toPath());
+
+        GameState loaded = new GameParser().loadGameState(model, dir.getPath());
+        assertTrue(loaded.closeExit("kitchen", "hallway"));
+        assertNull(loaded.travel("hallway"));
+        assertTrue(loaded.openExit("kitchen", "backyard", "door"));
+        assertEquals("routes should use exits opened since the image",
+                Arrays.asList("backyard", "hallway"), loaded.travel("hallway"));
+    }
+
+    @Test
+    public void testLabeledExits() throws IOException {
+        Files.write(new File(dir, "edges.tsv").toPath(), ("Kitchen\tHallway"
+                + "\tNorth\nHallway\tKitchen\tsouth\nHallway\tKitchen\tback\n"
+                + "Hallway\tBackyard\n").getBytes(StandardCharsets.UTF_8));
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        assertEquals(Arrays.asList("north"), state.exitLabels());
+        assertTrue(state.go("NORTH"));
+        assertEquals("Hallway", state.getCurrentRoom().getShortName());
+        assertEquals(Arrays.asList("back", "south"), state.exitLabels());
+
+        // the labels survive a world image
+        File image = new File(dir, "world.bin");
+        image.deleteOnExit();
+        WorldImage.write(state, image);
+        Files.delete(new File(dir, "rooms.tsv").toPath());
+        Files.delete(new File(dir, "edges.tsv").toPath());
+        GameState loaded = new GameParser().loadGameState(model, dir.getPath());
+        assertTrue(loaded.go("north"));
+        assertTrue(loaded.go("back"));
+        assertTrue(loaded.go("hallway"));
+        assertTrue(loaded.go("backyard"));
+    }
+
+    @Test
+    public void testLabeledAndUnlabeledExitInImage() throws IOException {
+        Files.write(new File(dir, "edges.tsv").toPath(), ("Kitchen\tHallway\n"
+                + "Kitchen\tHallway\tnorth\nHallway\tKitchen\n")
+                .getBytes(StandardCharsets.UTF_8));
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        File image = new File(dir, "world.bin");
+        image.deleteOnExit();
+        WorldImage.write(state, image);
+        Files.delete(new File(dir, "rooms.tsv").toPath());
+        Files.delete(new File(dir, "edges.tsv").toPath());
+
+        GameState loaded = new GameParser().loadGameState(model, dir.getPath());
+        assertEquals(2, loaded.allExits("kitchen").size());
+        assertTrue(loaded.closeExit("kitchen", "north"));
+        assertTrue("the unlabeled exit should survive the image",
+                loaded.go("hallway"));
+    }
+
+    @Test
+    public void testDuplicateExitLabel() throws IOException {
+        Files.write(new File(dir, "edges.tsv").toPath(), ("Kitchen\tHallway"
+                + "\tnorth\nKitchen\tBackyard\tNorth\n")
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            new GameParser().loadGameState(model, dir.getPath());
+            fail("two exits with the same label should not load");
+        } catch (InvalidGameDataException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("edges.tsv:2:"));
+        }
+    }
+
+    @Test
+    public void testSavedExits() throws IOException {
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        assertTrue(state.openExit("kitchen", "backyard", "door"));
+        assertTrue(state.closeExit("hallway", "kitchen"));
+        GameSaver.saveGameState(dir.getPath(), state);
+        new File(dir, "journal.tsv").deleteOnExit();
+        assertTrue(state.changedExits().isEmpty());
+
+        GameState reloaded = new GameParser().loadGameState(model,
+                dir.getPath());
+        assertEquals("Backyard", reloaded.labeledExits("kitchen").get("door"));
+        assertEquals(Arrays.asList("Backyard"),
+                reloaded.adjacentRooms("hallway"));
+
+        // compacting moves the exits from the journal to exits.tsv
+        GameSaver.compact(dir.getPath(), reloaded);
+        new File(dir, "exits.tsv").deleteOnExit();
+        assertFalse(new File(dir, "journal.tsv").exists());
+        GameState compacted = new GameParser().loadGameState(model,
+                dir.getPath());
+        assertEquals(2, compacted.savedExits().size());
+        assertTrue(compacted.go("door"));
+        assertTrue(compacted.go("hallway"));
+        assertFalse(compacted.go("kitchen"));
+    }
+
+    @Test
+    public void testLabeledAndUnlabeledExitSaved() throws IOException {
+        // kitchen already has an unlabeled exit to the hallway
+        GameState state = new GameParser().loadGameState(model, dir.getPath());
+        assertTrue(state.openExit("kitchen", "hallway", "north"));
+        GameSaver.saveGameState(dir.getPath(), state);
+        new File(dir, "journal.tsv").deleteOnExit();
+
+        GameState reloaded = new GameParser().loadGameState(model,
+                dir.getPath());
+        assertEquals(2, reloaded.allExits("kitchen").size());
+        GameSaver.compact(dir.getPath(), reloaded);
+        new File(dir, "exits.tsv").deleteOnExit();
+
+        GameState compacted = new GameParser().loadGameState(model,
+                dir.getPath());
+        assertTrue(compacted.closeExit("kitchen", "north"));
+        assertTrue("the unlabeled exit should survive saving",
+                compacted.go("hallway"));
+    }
+
+    @Test
+    public void testUnknownExitRoom() throws IOException {
+        File exits = new File(dir, "exits.tsv");
+        exits.deleteOnExit();
+        Files.write(exits.toPath(), "EXITS\tKitchen\nEXIT\tCellar\n"
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            new GameParser().loadGameState(model, dir.getPath());
+            fail("exits to unknown rooms should not load");
+        } catch (InvalidGameDataException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exits.tsv:2:"));
+        }
+    }
+
+    @Test
+    public void testOverlayExits() throws IOException {
+        File save = Files.createTempDirectory("adventure").toFile();
+        save.deleteOnExit();
+        GameState state = new GameParser().loadGameState(model, save.getPath(),
+                dir.getPath());
+        assertTrue(state.closeExit("kitchen", "hallway"));
+        assertTrue(state.openExit("kitchen", "backyard", "door"));
+        GameSaver.saveGameState(save.getPath(), state);
+        GameSaver.compact(save.getPath(), state);
+        new File(save, "rooms.tsv").deleteOnExit();
+        new File(save, "exits.tsv").deleteOnExit();
+        new File(save, "player.tsv").deleteOnExit();
+
+        GameState reloaded = new GameParser().loadGameState(model,
+                save.getPath(), dir.getPath());
+        assertEquals(Arrays.asList("Backyard"), reloaded.adjacentRooms());
+        assertEquals("routes should go through the opened door",
+                Arrays.asList("backyard", "hallway"),
+                reloaded.travel("hallway"));
+        assertEquals("Hallway", reloaded.getCurrentRoom().getShortName());
+        assertTrue("other rooms keep the base world's exits",
+                reloaded.go("kitchen"));
+    }
+
+    @Test
+    public void testOverlay() throws IOException {
+        File save = Files.createTempDirectory("adventure").toFile();
+        save.deleteOnExit();
+        GameState state = new GameParser().loadGameState(model, save.getPath(),
+                dir.getPath());
+        assertEquals("Kitchen", state.getCurrentRoom().getShortName());
+        assertTrue(state.go("hallway"));
+        state.getRoom("hallway").addItem("lamp");
+        GameSaver.saveGameState(save.getPath(), state);
+        GameSaver.compact(save.getPath(), state);
+        new File(save, "rooms.tsv").deleteOnExit();
+        new File(save, "player.tsv").deleteOnExit();
+
+        GameState reloaded = new GameParser().loadGameState(model,
+                save.getPath(), dir.getPath());
+        assertEquals("Hallway", reloaded.getCurrentRoom().getShortName());
+        assertTrue(reloaded.getCurrentRoom().getItems().contains("lamp"));
+        assertEquals("only changed rooms should be in the overlay", 1,
+                reloaded.savedRooms().size());
+        assertTrue(reloaded.go("backyard"));
+
+        File other = Files.createTempDirectory("adventure").toFile();
+        other.deleteOnExit();
+        GameState fresh = new GameParser().loadGameState(model,
+                other.getPath(), dir.getPath());
+        assertFalse("saves should not see each other's changes", fresh
+                .getRoom("hallway").getItems().contains("lamp"));
+    }
+
+    @Test
+    public void testBaseWorldChanged() throws IOException {
+        File save = Files.createTempDirectory("adventure").toFile();
+        save.deleteOnExit();
+        GameState state = new GameParser().loadGameState(model, save.getPath(),
+                dir.getPath());
+        assertFalse(state.go("backyard"));
+
+        Files.write(new File(dir, "edges.tsv").toPath(),
+                "Kitchen\tBackyard\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        GameState reloaded = new GameParser().loadGameState(model,
+                save.getPath(), dir.getPath());
+        assertTrue("a changed base world should be loaded again",
+                reloaded.go("backyard"));
+    }
+}
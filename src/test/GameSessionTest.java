@@ -0,0 +1,100 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import main.GameServer;
+import main.GameSession;
+
+import org.junit.Test;
+
+public class GameSessionTest {
+
+    /**
+     * Plays save file 1 with the given input without changing it, and returns
+     * everything the session printed.
+     */
+    private static String play(String input) {
+        StringWriter out = new StringWriter();
+        new GameSession(new StringReader(input), out).run();
+        return out.toString();
+    }
+
+    @Test
+    public void testSession() {
+        String out = play("1\nlook\njump\ndance\nq\n");
+        assertTrue(out.contains("Save file 1 successfully loaded."));
+        assertTrue(out.contains("You can travel to:"));
+        assertTrue(out.contains("You jump with joy!"));
+        assertTrue(out.contains("Command not recognized."));
+        assertTrue(out.contains("Your save file number is 1"));
+    }
+
+    @Test
+    public void testAbbreviations() {
+        String out = play("1\nju\njunp\nqu\n");
+        assertTrue(out.contains("You jump with joy!"));
+        assertTrue(out.contains("Did you mean \"jump\"?"));
+        assertTrue(out.contains("Your save file number is 1"));
+    }
+
+    @Test
+    public void testEndOfInput() {
+        // hanging up without quitting still ends the session and saves
+        String out = play("1\nlook\n");
+        assertTrue(out.contains("Your save file number is 1"));
+        assertTrue(play("").startsWith("Welcome"));
+    }
+
+    @Test
+    public void testServer() throws Exception {
+        final GameServer server = new GameServer(0);
+        Thread accept = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        accept.start();
+        try {
+            Socket[] players = new Socket[4];
+            for (int i = 0; i < players.length; i++) {
+                players[i] = new Socket("localhost", server.getPort());
+            }
+            // every session is waiting for input at once
+            for (Socket player : players) {
+                Writer in = new OutputStreamWriter(player.getOutputStream(),
+                        StandardCharsets.UTF_8);
+                in.write("1\njump\nq\n");
+                in.flush();
+            }
+            for (Socket player : players) {
+                BufferedReader out = new BufferedReader(new InputStreamReader(
+                        player.getInputStream(), StandardCharsets.UTF_8));
+                StringBuilder text = new StringBuilder();
+                for (String line = out.readLine(); line != null; line = out
+                        .readLine()) {
+                    text.append(line).append('\n');
+                }
+                assertTrue(text.toString().contains("You jump with joy!"));
+                player.close();
+            }
+        } finally {
+            server.close();
+            accept.join();
+        }
+    }
+}
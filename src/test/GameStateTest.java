@@ -1,19 +1,60 @@
 package test;
 
 import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.GameState;
+import model.Graph;
+import model.Player;
+import model.Room;
+
 import org.junit.Test;
-import org.junit.BeforeClass;
+import org.junit.Before;
 
 public class GameStateTest {
 
-    @BeforeClass
-    public static void setup() {
-        
+    private GameState state;
+    private Graph<Room> rooms;
+    private Room kitchen;
+    private Room hall;
+    private Room yard;
+
+    @Before
+    public void setup() {
+        kitchen = new Room("Kitchen");
+        hall = new Room("Great Hall");
+        yard = new Room("Yard");
+
+        rooms = new Graph<>();
+        rooms.addEdge(kitchen, hall);
+        rooms.addEdge(hall, kitchen);
+        rooms.addEdge(hall, yard);
+
+        Map<String, Room> nameToRoom = new HashMap<>();
+        for (Room room : new Room[] { kitchen, hall, yard }) {
+            nameToRoom.put(room.getShortName().toLowerCase(), room);
+        }
+        Player player = new Player("bob", 20, 20, new ArrayList<String>());
+        state = new GameState(rooms, player, "kitchen", nameToRoom);
     }
     
     @Test
 	public void testAdjacentRooms() {
-		fail("Not yet implemented");
+		List<String> adjacent = state.adjacentRooms();
+		assertEquals(1, adjacent.size());
+		assertEquals("short names should keep their case", "Great Hall",
+		        adjacent.get(0));
+
+		// adding an edge should be seen by the cached exits
+		rooms.addEdge(kitchen, yard);
+		assertEquals(2, state.adjacentRooms().size());
+		assertTrue(state.adjacentRooms().contains("Yard"));
 	}
 	
     @Test
@@ -23,9 +64,79 @@ public class GameStateTest {
 	
     @Test
 	public void testGo() {
-	    fail("Not yet implemented");
+	    assertFalse("yard is not adjacent to the kitchen", state.go("yard"));
+	    assertEquals(kitchen, state.getCurrentRoom());
+
+	    // mixed case short names should be reachable in any case
+	    assertTrue(state.go(" great HALL "));
+	    assertEquals(hall, state.getCurrentRoom());
+	    assertTrue(state.go("Yard"));
+	    assertEquals(yard, state.getCurrentRoom());
+	    assertFalse("there are no exits from the yard", state.go("kitchen"));
+	}
+	
+    @Test
+	public void testTravel() {
+	    assertEquals(Arrays.asList("great hall", "yard"), state.travel("YARD"));
+	    assertEquals(yard, state.getCurrentRoom());
+	    assertNull("there are no exits from the yard", state.travel("kitchen"));
+	    assertEquals(yard, state.getCurrentRoom());
+	    assertTrue(state.travel("yard").isEmpty());
+
+	    // the planner should see edges added after it was built
+	    rooms.addEdge(yard, kitchen);
+	    assertEquals(Arrays.asList("kitchen"), state.travel("kitchen"));
+	    assertNull(state.travel("cellar"));
+	}
+	
+    @Test
+	public void testGoByLabel() {
+	    rooms.addEdge(kitchen, hall, "North");
+	    assertEquals(Arrays.asList("north"), state.exitLabels());
+	    assertTrue(state.go("north"));
+	    assertEquals(hall, state.getCurrentRoom());
+	    assertTrue(state.exitLabels().isEmpty());
+	    assertFalse(state.go("north"));
+	    assertEquals(Collections.singletonMap("north", "Great Hall"),
+	            state.labeledExits("Kitchen"));
 	}
 	
+    @Test
+	public void testOpenAndCloseExits() {
+	    assertEquals(Arrays.asList("great hall", "yard"), state.route("yard"));
+	    assertTrue(state.openExit("kitchen", "Yard", "Door"));
+	    assertEquals("routes should use the new exit", Arrays.asList("yard"),
+	            state.route("yard"));
+	    assertEquals(Collections.singletonMap("door", "Yard"),
+	            state.labeledExits("kitchen"));
+	    assertFalse("rooms must exist", state.openExit("yard", "cellar", null));
+	    assertFalse("labels must not be blank",
+	            state.openExit("yard", "kitchen", " "));
+
+	    // a label leads to one room, so opening it again moves the exit
+	    assertTrue(state.openExit("kitchen", "great hall", "door"));
+	    assertEquals(Collections.singletonMap("door", "Great Hall"),
+	            state.labeledExits("kitchen"));
+	    assertEquals(Arrays.asList("Great Hall"), state.adjacentRooms());
+
+	    // closing by room closes every exit to it, labeled or not
+	    assertTrue(state.closeExit("kitchen", "Great Hall"));
+	    assertTrue(state.adjacentRooms().isEmpty());
+	    assertTrue(state.exitLabels().isEmpty());
+	    assertFalse(state.go("door"));
+	    assertTrue("closing a closed exit has no effect",
+	            state.closeExit("kitchen", "door"));
+	    assertFalse(state.closeExit("cellar", "door"));
+
+	    // closing by label leaves the other exits to the room
+	    assertTrue(state.openExit("great hall", "yard", "gate"));
+	    assertTrue(state.closeExit("great hall", "gate"));
+	    assertTrue(state.adjacentRooms("great hall").contains("Yard"));
+	    assertTrue(state.labeledExits("great hall").isEmpty());
+	    assertEquals(Arrays.asList(kitchen, hall),
+	            new ArrayList<>(state.changedExits()));
+	}
+
     @Test
 	public void testSetRoomDesc() {
 	    fail("Not yet implemented");
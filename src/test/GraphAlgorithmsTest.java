@@ -0,0 +1,120 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import model.GraphAlgorithms;
+import model.IndexedGraph;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphAlgorithmsTest {
+
+    private IndexedGraph<String> graph;
+
+    @Before
+    public void setup() {
+        // start <-> hall -> pit, hall <-> cellar -> vault <-> tomb, attic
+        graph = new IndexedGraph<>();
+        graph.addEdge("start", "hall");
+        graph.addEdge("hall", "start");
+        graph.addEdge("hall", "pit");
+        graph.addEdge("hall", "cellar");
+        graph.addEdge("cellar", "hall");
+        graph.addEdge("cellar", "vault");
+        graph.addEdge("vault", "tomb");
+        graph.addEdge("tomb", "vault");
+        graph.intern("attic");
+    }
+
+    @Test
+    public void testReachable() {
+        assertEquals(ids("start", "hall", "pit", "cellar", "vault", "tomb"),
+                GraphAlgorithms.reachable(graph, graph.id("start")));
+        assertEquals(ids("vault", "tomb"),
+                GraphAlgorithms.reachable(graph, graph.id("tomb")));
+        assertEquals(ids("start", "hall", "cellar"),
+                GraphAlgorithms.reaching(graph, graph.id("start")));
+    }
+
+    @Test
+    public void testTrapsAndDeadEnds() {
+        assertEquals(ids("pit", "vault", "tomb"),
+                GraphAlgorithms.traps(graph, graph.id("start")));
+        assertEquals(ids("pit", "attic"), GraphAlgorithms.deadEnds(graph));
+
+        GraphAlgorithms.Report<String> report = GraphAlgorithms.check(graph,
+                "start");
+        assertFalse(report.isClean());
+        assertEquals(Arrays.asList("attic"), report.unreachable());
+        assertEquals(3, report.traps().size());
+        assertEquals(2, report.maxInDegree());
+    }
+
+    @Test
+    public void testComponents() {
+        int[] component = GraphAlgorithms.components(graph);
+        int start = component[graph.id("start")];
+        assertEquals(start, component[graph.id("hall")]);
+        assertEquals(start, component[graph.id("cellar")]);
+        assertEquals(component[graph.id("vault")], component[graph.id("tomb")]);
+        assertTrue(start != component[graph.id("vault")]);
+        assertTrue(start != component[graph.id("pit")]);
+        assertTrue("components should be in reverse topological order",
+                component[graph.id("vault")] < start);
+        assertTrue(component[graph.id("pit")] < start);
+    }
+
+    @Test
+    public void testDeepComponents() {
+        // one long cycle, deeper than a recursive search could go
+        IndexedGraph<Integer> cycle = new IndexedGraph<>();
+        int size = 200000;
+        for (int i = 0; i < size; i++) {
+            cycle.intern(i);
+        }
+        for (int i = 0; i < size; i++) {
+            cycle.addEdge(i, (i + 1) % size);
+        }
+        int[] component = GraphAlgorithms.components(cycle);
+        for (int c : component) {
+            assertEquals(component[0], c);
+        }
+    }
+
+    @Test
+    public void testParallelReachable() {
+        Random random = new Random(7);
+        IndexedGraph<Integer> big = new IndexedGraph<>();
+        int size = 100000;
+        for (int i = 0; i < size; i++) {
+            big.intern(i);
+        }
+        for (int i = 0; i < size; i++) {
+            big.addEdge(i, random.nextInt(size));
+            big.addEdge(i, random.nextInt(size));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(GraphAlgorithms.reachable(big, 0),
+                    GraphAlgorithms.reachable(big, 0, pool));
+            assertEquals(ids("start", "hall", "pit", "cellar", "vault", "tomb"),
+                    GraphAlgorithms.reachable(graph, graph.id("start"), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private BitSet ids(String... rooms) {
+        BitSet ids = new BitSet();
+        for (String room : rooms) {
+            ids.set(graph.id(room));
+        }
+        return ids;
+    }
+}
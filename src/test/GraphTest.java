@@ -1,43 +1,260 @@
 package test;
 
 import static org.junit.Assert.*;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import model.Graph;
+
 import org.junit.Test;
-import org.junit.BeforeClass;
+import org.junit.Before;
 
 public class GraphTest {
 
-    @BeforeClass
-    public static void setup() {
-        
+    private Graph<String> graph;
+
+    @Before
+    public void setup() {
+        // a <-> b -> c, a -> c, c -> c
+        graph = new Graph<>();
+        graph.addEdge("a", "b");
+        graph.addEdge("b", "a");
+        graph.addEdge("b", "c");
+        graph.addEdge("a", "c");
+        graph.addEdge("c", "c");
     }
-    
+
     @Test
 	public void testAddEdge() {
-		fail("Not yet implemented");
+	    int version = graph.version();
+	    graph.addEdge("a", "b");
+	    assertEquals("duplicate edges should not change the graph", version,
+	            graph.version());
+
+	    graph.addEdge("c", "d");
+	    assertTrue("missing nodes should be added", graph.containsNode("d"));
+	    assertEquals(set("c", "d"), graph.adjacent("c"));
+	    assertEquals(set("c"), graph.predecessors("d"));
 	}
-    
+
     @Test
 	public void testRemoveEdge() {
-	    fail("Not yet implemented");
+	    int version = graph.version();
+	    graph.removeEdge("a", "b");
+	    assertEquals(set("c"), graph.adjacent("a"));
+	    assertEquals(Collections.emptySet(), graph.predecessors("b"));
+	    assertTrue(graph.version() != version);
+
+	    version = graph.version();
+	    graph.removeEdge("a", "b");
+	    graph.removeEdge("x", "a");
+	    assertEquals("missing edges should not change the graph", version,
+	            graph.version());
+	    assertTrue("nodes should stay", graph.containsNode("b"));
 	}
-	
+
     @Test
 	public void testAddNode() {
-	    fail("Not yet implemented");
+	    graph.addNode("d");
+	    assertTrue(graph.containsNode("d"));
+	    assertEquals(Collections.emptySet(), graph.adjacent("d"));
+	    assertEquals(Collections.emptySet(), graph.predecessors("d"));
+
+	    graph.addNode("a");
+	    assertEquals("adding a node again should keep its edges", set("b", "c"),
+	            graph.adjacent("a"));
 	}
-	
+
     @Test
 	public void testRemoveNode() {
-	    fail("Not yet implemented");
+	    graph.removeNode("c");
+	    assertFalse(graph.containsNode("c"));
+	    assertEquals(set("a", "b"), graph.nodes());
+	    assertEquals("edges into c should go", set("b"), graph.adjacent("a"));
+	    assertEquals(set("a"), graph.adjacent("b"));
+	    assertNull(graph.predecessors("c"));
+
+	    graph.removeNode("a");
+	    assertEquals("edges out of a should go", Collections.emptySet(),
+	            graph.predecessors("b"));
+	    assertEquals(Collections.emptySet(), graph.adjacent("b"));
+
+	    // a removed node comes back without its old edges
+	    graph.addNode("c");
+	    assertEquals(Collections.emptySet(), graph.predecessors("c"));
+
+	    int version = graph.version();
+	    graph.removeNode("x");
+	    assertEquals(version, graph.version());
 	}
-	
+
     @Test
 	public void testAdjacent() {
-	    fail("Not yet implemented");
+	    assertEquals(set("b", "c"), graph.adjacent("a"));
+	    assertEquals(set("a", "c"), graph.adjacent("b"));
+	    assertEquals("self loops should be adjacent", set("c"),
+	            graph.adjacent("c"));
+	    assertEquals(set("a", "b", "c"), graph.predecessors("c"));
+	    assertEquals(set("b"), graph.predecessors("a"));
 	}
-	
+
     @Test
 	public void testAdjacentMissingNode() {
-	    fail("Not yet implemented");
+	    assertNull(graph.adjacent("x"));
+	    assertNull(graph.predecessors("x"));
+	}
+
+    @Test
+	public void testNodeVersion() {
+	    int version = graph.version("a");
+	    graph.addNode("d");
+	    graph.addEdge("b", "a", "back");
+	    graph.addEdge("d", "a");
+	    assertEquals("edges into a should not change its version", version,
+	            graph.version("a"));
+	    graph.addEdge("a", "d");
+	    assertTrue(graph.version("a") != version);
+
+	    version = graph.version("a");
+	    graph.removeNode("d");
+	    assertTrue("removing a child should change the version",
+	            graph.version("a") != version);
+	    assertEquals(-1, graph.version("d"));
+	}
+
+    @Test
+	public void testLabels() {
+	    graph.addEdge("a", "b", "North");
+	    graph.addEdge("a", "c", "down");
+	    assertEquals("b", graph.exit("a", "north"));
+	    assertEquals("c", graph.exit("a", " DOWN"));
+	    assertNull(graph.exit("a", "up"));
+	    assertNull(graph.exit("x", "north"));
+	    assertEquals(set("b", "c"), graph.adjacent("a"));
+
+	    // a label leads to one room, so reusing it moves the exit
+	    graph.addEdge("a", "c", "north");
+	    assertEquals("c", graph.exit("a", "north"));
+	    assertEquals("the unlabeled edge to b should stay", set("b", "c"),
+	            graph.adjacent("a"));
+	    assertEquals(2, graph.labels("a").size());
+
+	    graph.removeEdge("a", "c");
+	    assertNull(graph.exit("a", "north"));
+	    assertTrue(graph.labels("a").isEmpty());
+
+	    graph.addEdge("b", "a", "back");
+	    graph.removeNode("a");
+	    assertTrue("labels into a removed node should go",
+	            graph.labels("b").isEmpty());
+	}
+
+    @Test
+	public void testExits() {
+	    graph.addEdge("a", "b", "North");
+	    assertEquals(Arrays.asList(entry("b", null), entry("c", null),
+	            entry("b", "north")), graph.exits("a"));
+	    assertNull(graph.exits("x"));
 	}
+
+    @Test
+	public void testRemoveLabeledEdge() {
+	    graph.addEdge("a", "b", "north");
+	    assertTrue(graph.containsEdge("a", "b", "North"));
+	    assertTrue(graph.removeEdge("a", "b", "north"));
+	    assertNull(graph.exit("a", "north"));
+	    assertTrue("the unlabeled edge should stay",
+	            graph.containsEdge("a", "b", null));
+
+	    int version = graph.version();
+	    assertFalse(graph.removeEdge("a", "b", "north"));
+	    assertFalse(graph.containsEdge("a", "b", "a label never used"));
+	    assertFalse(graph.addEdge("a", "b"));
+	    assertEquals(version, graph.version());
+	}
+
+    @Test
+	public void testReadDuringWrites() throws InterruptedException {
+	    final AtomicReference<String> error = new AtomicReference<>();
+	    Thread writer = new Thread(new Runnable() {
+	        @Override
+	        public void run() {
+	            for (int i = 0; i < 20000; i++) {
+	                graph.addEdge("a", "d", "door");
+	                graph.removeEdge("a", "d");
+	            }
+	        }
+	    });
+	    writer.start();
+	    // a reader sees the door either open or closed, never half way
+	    while (writer.isAlive()) {
+	        HashSet<String> adjacent = new HashSet<>(graph.adjacent("a"));
+	        adjacent.remove("d");
+	        if (!adjacent.equals(set("b", "c"))) {
+	            error.set("saw " + adjacent);
+	        }
+	        String door = graph.exit("a", "door");
+	        if (door != null && !door.equals("d")) {
+	            error.set("door leads to " + door);
+	        }
+	    }
+	    writer.join();
+	    assertNull(error.get());
+	    assertEquals(set("b", "c"), graph.adjacent("a"));
+	    assertEquals(Collections.emptySet(), graph.predecessors("d"));
+	}
+
+    @Test
+	public void testReadDuringRelabel() throws InterruptedException {
+	    final AtomicReference<String> error = new AtomicReference<>();
+	    graph.addEdge("a", "b", "door");
+	    Thread writer = new Thread(new Runnable() {
+	        @Override
+	        public void run() {
+	            for (int i = 0; i < 20000; i++) {
+	                graph.addEdge("a", i % 2 == 0 ? "d" : "b", "door");
+	            }
+	        }
+	    });
+	    writer.start();
+	    // moving the door never leaves it leading nowhere
+	    while (writer.isAlive()) {
+	        String door = graph.exit("a", "door");
+	        if (door == null) {
+	            error.set("door leads nowhere");
+	        }
+	    }
+	    writer.join();
+	    assertNull(error.get());
+	    assertEquals("b", graph.exit("a", "door"));
+	    assertEquals("the old child should lose the moved edge",
+	            Collections.emptySet(), graph.predecessors("d"));
+	    assertEquals(set("b", "c"), graph.adjacent("a"));
+	}
+
+    @Test
+	public void testRelabelSelfLoop() {
+	    graph.addEdge("c", "c", "up");
+	    graph.addEdge("c", "a", "up");
+	    assertEquals("a", graph.exit("c", "up"));
+	    assertEquals("the unlabeled loop should stay", set("a", "b", "c"),
+	            graph.predecessors("c"));
+	    graph.addEdge("c", "c", "up");
+	    assertEquals("c", graph.exit("c", "up"));
+	    assertEquals(set("b"), graph.predecessors("a"));
+	    assertEquals(set("c"), graph.adjacent("c"));
+	}
+
+    private static Map.Entry<String, String> entry(String child, String label) {
+        return new AbstractMap.SimpleImmutableEntry<>(child, label);
+    }
+
+    private static HashSet<String> set(String... nodes) {
+        return new HashSet<>(Arrays.asList(nodes));
+    }
 }
@@ -0,0 +1,82 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import model.Graph;
+import model.IndexedGraph;
+
+import org.junit.Test;
+
+public class IndexedGraphTest {
+
+    @Test
+    public void testIntern() {
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        assertEquals(-1, graph.id("a"));
+        int a = graph.intern("a");
+        int b = graph.intern("b");
+        assertEquals("ids should be dense", 0, a);
+        assertEquals("ids should be dense", 1, b);
+        assertEquals("interning again should return the same id", a,
+                graph.intern("a"));
+        assertEquals("a", graph.data(a));
+        assertEquals(2, graph.size());
+    }
+
+    @Test
+    public void testAddEdge() {
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        graph.addEdge("a", "b");
+        graph.addEdge("a", "c");
+        graph.addEdge("a", "b");
+        int a = graph.id("a");
+
+        assertEquals("duplicate edges should not be added", 2, graph.degree(a));
+        assertEquals(2, graph.edgeCount());
+        assertTrue(graph.containsEdge(a, graph.id("b")));
+        assertFalse(graph.containsEdge(graph.id("b"), a));
+        assertEquals(0, graph.degree(graph.id("c")));
+    }
+
+    @Test
+    public void testFreeze() {
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        for (int i = 0; i < 100; i++) {
+            graph.addEdge("room" + i, "room" + ((i + 1) % 100));
+            graph.addEdge("room" + i, "room" + ((i + 7) % 100));
+        }
+        graph.freeze();
+        assertTrue(graph.isFrozen());
+
+        for (int i = 0; i < 100; i++) {
+            int id = graph.id("room" + i);
+            assertEquals(2, graph.degree(id));
+            assertEquals("room" + ((i + 1) % 100),
+                    graph.data(graph.neighbor(id, 0)));
+            assertEquals("room" + ((i + 7) % 100),
+                    graph.data(graph.neighbor(id, 1)));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddEdgeFrozen() {
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        graph.addEdge("a", "b");
+        graph.freeze();
+        graph.addEdge("b", "a");
+    }
+
+    @Test
+    public void testOf() {
+        Graph<String> graph = new Graph<>();
+        graph.addEdge("kitchen", "hall");
+        graph.addEdge("hall", "kitchen");
+        graph.addEdge("hall", "yard");
+
+        IndexedGraph<String> indexed = IndexedGraph.of(graph);
+        assertEquals(3, indexed.size());
+        assertEquals(3, indexed.edgeCount());
+        assertTrue(indexed.containsEdge(indexed.id("hall"), indexed.id("yard")));
+        assertFalse(indexed.containsEdge(indexed.id("yard"), indexed.id("hall")));
+    }
+}
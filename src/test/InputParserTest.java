@@ -0,0 +1,101 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import model.InputParser;
+import model.ItemBag;
+import model.Room;
+import model.ScriptCompiler;
+
+import org.junit.Test;
+
+public class InputParserTest {
+
+    private static final List<String> NONE = Collections.emptyList();
+
+    @Test
+    public void testVerbs() {
+        InputParser parser = new InputParser();
+        assertEquals("take knife", parser.parse("take knife"));
+        assertEquals("take knife", parser.parse("  Grab the  KNIFE "));
+        assertEquals("take knife", parser.parse("pick up a knife"));
+        assertEquals("look at painting", parser.parse("examine the painting"));
+        assertEquals("jump", parser.parse("jump"));
+        assertEquals("", parser.parse("   "));
+
+        parser.addVerb("dance", "boogie", "cut a rug");
+        assertEquals("dance", parser.parse("cut a rug"));
+        assertEquals("dance with bear", parser.parse("boogie with the bear"));
+    }
+
+    @Test
+    public void testObjects() {
+        InputParser parser = new InputParser();
+        List<String> room = Arrays.asList("silver key", "gold key", "Rope");
+        List<String> inventory = Arrays.asList("old lamp");
+
+        assertEquals("take silver key", parser.parse("take silver", room,
+                inventory));
+        assertEquals("take rope", parser.parse("get the rope", room,
+                inventory));
+        assertEquals("use old lamp", parser.parse("use lamp", room, inventory));
+        assertEquals("ambiguous objects are kept as typed", "take key",
+                parser.parse("take key", room, inventory));
+        assertEquals("open door with silver key", parser.parse(
+                "open the door with the silver", room, inventory));
+        assertEquals("take sword", parser.parse("take sword", room, NONE));
+    }
+
+    @Test
+    public void testObjectsInItemBags() {
+        InputParser parser = new InputParser();
+        ItemBag room = new ItemBag(Arrays.asList("silver key", "gold key",
+                "Rope", "Rope"));
+        ItemBag inventory = new ItemBag(Arrays.asList("old lamp"));
+
+        assertEquals("take silver key", parser.parse("take silver", room,
+                inventory));
+        assertEquals("take rope", parser.parse("get the rope", room,
+                inventory));
+        assertEquals("use old lamp", parser.parse("use  lamp", room,
+                inventory.view(inventory)));
+        assertEquals("take key", parser.parse("take key", room, inventory));
+        assertEquals("take gold silver", parser.parse("take gold silver",
+                room, inventory));
+
+        // the index follows items as they come and go
+        room.remove("gold key");
+        assertEquals("take silver key", parser.parse("take key", room,
+                inventory));
+        inventory.add("brass key");
+        assertEquals("take key", parser.parse("take key", room, inventory));
+        room.remove("Rope");
+        assertEquals("take rope", parser.parse("take rope", room, inventory));
+        room.remove("Rope");
+        room.clear();
+        assertEquals("take brass key", parser.parse("take key", room,
+                inventory));
+    }
+
+    @Test
+    public void testRoomDispatch() {
+        Room room = new Room("Shed");
+        room.addItem("rusty axe");
+        room.addItem("rope");
+        room.addScript("take rusty axe", ScriptCompiler.compile(null,
+                new String[] { "PRINT", "You take the axe." }, 0));
+        room.addScript("take the rope", ScriptCompiler.compile(null,
+                new String[] { "PRINT", "You take the rope." }, 0));
+
+        // one script answers every phrasing
+        assertEquals("take rusty axe", room.resolve("grab the axe"));
+        assertEquals("take rusty axe", room.resolve("pick up rusty axe"));
+        assertEquals("take rusty axe", room.resolve("Collect the AXE"));
+        assertEquals("take the rope", room.resolve("get rope"));
+        assertNull(room.resolve("drop axe"));
+    }
+}
@@ -0,0 +1,98 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import model.ItemBag;
+import model.Items;
+import model.Room;
+
+import org.junit.Test;
+
+public class ItemBagTest {
+
+    @Test
+    public void testCounts() {
+        ItemBag bag = new ItemBag(Arrays.asList("coin", "lamp", "coin"));
+        assertEquals(3, bag.size());
+        assertEquals(2, bag.distinct());
+        assertEquals(2, bag.count("coin"));
+        assertEquals(0, bag.count("sword"));
+        assertFalse(bag.contains(null));
+
+        bag.add("coin", 1000);
+        assertEquals(1002, bag.count("coin"));
+        assertTrue(bag.remove("lamp"));
+        assertFalse(bag.remove("lamp"));
+        assertFalse(bag.contains("lamp"));
+        assertEquals(1, bag.distinct());
+        assertEquals(Collections.nCopies(1002, "coin"), bag.toList());
+
+        ItemBag copy = bag.copy();
+        bag.clear();
+        assertEquals(0, bag.size());
+        assertEquals(1002, copy.count("coin"));
+        bag.setTo(copy);
+        assertEquals(1002, bag.count("coin"));
+    }
+
+    @Test
+    public void testMatchesList() {
+        // random adds and removes agree with counting by hand
+        Random random = new Random(7);
+        ItemBag bag = new ItemBag();
+        Map<String, Integer> expected = new HashMap<>();
+        int size = 0;
+        for (int i = 0; i < 20000; i++) {
+            String item = "item" + random.nextInt(300);
+            Integer count = expected.get(item);
+            if (random.nextInt(3) == 0) {
+                assertEquals(count != null, bag.remove(item));
+                if (count != null) {
+                    size--;
+                    if (count == 1) {
+                        expected.remove(item);
+                    } else {
+                        expected.put(item, count - 1);
+                    }
+                }
+            } else {
+                bag.add(item);
+                size++;
+                expected.put(item, count == null ? 1 : count + 1);
+            }
+        }
+        assertEquals(size, bag.size());
+        assertEquals(expected.size(), bag.distinct());
+        List<String> items = new ArrayList<>();
+        for (String item : bag) {
+            items.add(item);
+            assertEquals((int) expected.get(item), bag.count(item));
+        }
+        assertEquals(expected.size(), items.size());
+        for (int i = 0; i < 300; i++) {
+            Integer count = expected.get("item" + i);
+            assertEquals(count == null ? 0 : count, bag.count("item" + i));
+        }
+    }
+
+    @Test
+    public void testRoomView() {
+        Room room = new Room("Vault");
+        Items items = room.items();
+        assertEquals(0, items.size());
+        room.addItem("gold");
+        room.addItem("gold");
+        assertEquals(2, items.count("gold"));
+        assertTrue(room.removeItem("gold"));
+        assertEquals(1, items.size());
+        assertEquals(Arrays.asList("gold"), room.getItems());
+    }
+}
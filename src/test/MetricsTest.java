@@ -0,0 +1,128 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.CommandType;
+import model.GameState;
+import model.Graph;
+import model.LatencyHistogram;
+import model.Metrics;
+import model.Player;
+import model.Room;
+import model.ScriptCompiler;
+import model.SharedWorld;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsTest {
+
+    private GameState state;
+
+    @Before
+    public void setUp() {
+        Metrics.reset();
+        Graph<Room> graph = new Graph<>();
+        Map<String, Room> nameToRoom = new HashMap<>();
+        Room room = new Room("r0");
+        room.addScript("poke", ScriptCompiler.compile(null, new String[] {
+                "ADD_ITEM", "coin" }, 0));
+        graph.addNode(room);
+        nameToRoom.put("r0", room);
+        state = new SharedWorld(graph, nameToRoom, new Player("template", 10,
+                10, new ArrayList<String>()), "r0").join("player");
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(0.99));
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1000000, histogram.max());
+        assertEquals(500500.0, histogram.mean(), 0.001);
+
+        // reported values are at most 12.5% above the true value
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= 500000 && p50 <= 562500);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(1000000, histogram.percentile(1));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.percentile(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.5));
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertFalse(Metrics.isEnabled());
+        state.execute("poke");
+        assertEquals(0, Metrics.command(CommandType.ADD_ITEM).count());
+        assertTrue(Metrics.scripts().isEmpty());
+    }
+
+    @Test
+    public void testRecordsCommandsAndScripts() {
+        Metrics.setEnabled(true);
+        for (int i = 0; i < 10; i++) {
+            state.execute("poke");
+        }
+        assertEquals(10, Metrics.command(CommandType.ADD_ITEM).count());
+        assertEquals(0, Metrics.command(CommandType.GO).count());
+        assertEquals(10, Metrics.scripts().get("r0: poke").count());
+        assertTrue(Metrics.report().contains("ADD_ITEM"));
+
+        Metrics.reset();
+        assertEquals(0, Metrics.command(CommandType.ADD_ITEM).count());
+    }
+
+    @Test
+    public void testScriptsCapped() {
+        Room room = new Room("r1");
+        int scripts = Metrics.MAX_SCRIPTS + 20;
+        for (int i = 0; i < scripts; i++) {
+            room.addScript("poke" + i, ScriptCompiler.compile(null,
+                    new String[] { "PRINT", "poked" }, 0));
+        }
+        Graph<Room> graph = new Graph<>();
+        graph.addNode(room);
+        Map<String, Room> nameToRoom = new HashMap<>();
+        nameToRoom.put("r1", room);
+        GameState other = new SharedWorld(graph, nameToRoom, new Player(
+                "template", 10, 10, new ArrayList<String>()), "r1")
+                .join("player");
+        Metrics.setEnabled(true);
+        for (int i = 0; i < scripts; i++) {
+            other.execute("poke" + i);
+        }
+
+        Map<String, LatencyHistogram> tracked = Metrics.scripts();
+        assertTrue(tracked.size() <= Metrics.MAX_SCRIPTS);
+        long count = Metrics.otherScripts().count();
+        for (LatencyHistogram histogram : tracked.values()) {
+            count += histogram.count();
+        }
+        assertEquals(scripts, count);
+
+        Metrics.reset();
+        assertTrue(Metrics.scripts().isEmpty());
+        assertEquals(0, Metrics.otherScripts().count());
+    }
+}
@@ -80,6 +80,32 @@ public class RoomTest {
         assertTrue(!room.acceptsInput("Get Axe"));
     }
 
+    @Test
+    public void testResolve() {
+        Room room = new Room("Backyard", "Modest Backyard", "A small backyard",
+                "It's wonderful here. There is a tire swing and a chest you can open!");
+        room.addScript("get axe", axeScript);
+        room.addScript("get rope", axeScript);
+        room.addScript("open chest", axeScript);
+
+        // exact inputs and inputs only one command starts with
+        assertEquals("get axe", room.resolve(" Get Axe"));
+        assertEquals("get axe", room.resolve("get a"));
+        assertEquals("open chest", room.resolve("o"));
+        assertNull("ambiguous prefixes are not resolved", room.resolve("get"));
+        assertNull(room.resolve("swing"));
+
+        // the index follows scripts being added and removed
+        room.removeScript("get rope");
+        assertEquals("get axe", room.resolve("get"));
+        room.addScript("get apple", axeScript);
+        assertNull(room.resolve("get a"));
+
+        assertEquals("open chest", room.suggest("opn chest", 3).get(0));
+        assertEquals("get axe", room.suggest("get ax", 3).get(0));
+        assertTrue(room.suggest("climb tree", 3).isEmpty());
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void testExecuteBadCommand() {
         Room room = new Room("Backyard", "Modest Backyard", "A small backyard",
@@ -0,0 +1,151 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import model.IndexedGraph;
+import model.RoutePlanner;
+
+import org.junit.Test;
+
+public class RoutePlannerTest {
+
+    @Test
+    public void testRoute() {
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        graph.addEdge("a", "b");
+        graph.addEdge("b", "c");
+        graph.addEdge("c", "d");
+        graph.addEdge("a", "x");
+        graph.addEdge("x", "d");
+        graph.addEdge("d", "a");
+        graph.intern("island");
+        RoutePlanner planner = new RoutePlanner(graph);
+
+        assertEquals("the shortcut through x should be taken",
+                Arrays.asList("x", "d"), planner.route("a", "d"));
+        assertEquals(Arrays.asList("c", "d", "a"), planner.route("b", "A "));
+        assertTrue(planner.route("c", "c").isEmpty());
+        assertNull("nothing leads to the island", planner.route("a", "island"));
+        assertNull(planner.route("island", "a"));
+        assertNull("unknown rooms have no route", planner.route("a", "cellar"));
+    }
+
+    @Test
+    public void testOneWay() {
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        graph.addEdge("a", "b");
+        graph.addEdge("b", "c");
+        RoutePlanner planner = new RoutePlanner(graph);
+        planner.precomputeLandmarks(2);
+        assertEquals(Arrays.asList("b", "c"), planner.route("a", "c"));
+        assertNull("edges only lead one way", planner.route("c", "a"));
+    }
+
+    @Test
+    public void testShortestOnRandomWorld() {
+        Random random = new Random(7);
+        int size = 500;
+        IndexedGraph<String> graph = rooms(size);
+        for (int i = 0; i < size * 2; i++) {
+            graph.addEdge(random.nextInt(size), random.nextInt(size));
+        }
+        assertShortest(graph, 0);
+        assertShortest(graph, 4);
+    }
+
+    @Test
+    public void testShortestOnGrid() {
+        // long routes, which the landmarks are used for
+        Random random = new Random(7);
+        int width = 40;
+        IndexedGraph<String> graph = rooms(width * width);
+        for (int i = 0; i < width * width; i++) {
+            int[] next = { i % width < width - 1 ? i + 1 : -1,
+                    i + width < width * width ? i + width : -1 };
+            for (int j : next) {
+                // some doors only open one way
+                if (j >= 0 && random.nextInt(10) > 0) {
+                    graph.addEdge(i, j);
+                }
+                if (j >= 0 && random.nextInt(10) > 0) {
+                    graph.addEdge(j, i);
+                }
+            }
+        }
+        assertShortest(graph, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLandmarks() {
+        new RoutePlanner(new IndexedGraph<String>()).precomputeLandmarks(-1);
+    }
+
+    private static IndexedGraph<String> rooms(int size) {
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        for (int i = 0; i < size; i++) {
+            graph.intern("room" + i);
+        }
+        return graph;
+    }
+
+    /**
+     * Asserts that routes from every 37th room to every room, planned with the
+     * given number of landmarks, are as short as breadth first search finds and
+     * follow the edges of graph.
+     */
+    private static void assertShortest(IndexedGraph<String> graph,
+            int landmarks) {
+        RoutePlanner planner = new RoutePlanner(graph);
+        planner.precomputeLandmarks(landmarks);
+        for (int from = 0; from < graph.size(); from += 37) {
+            int[] distance = distances(graph, from);
+            for (int to = 0; to < graph.size(); to++) {
+                List<String> route = planner.route(graph.data(from),
+                        graph.data(to));
+                if (distance[to] < 0) {
+                    assertNull(route);
+                    continue;
+                }
+                assertEquals("routes should be shortest", distance[to],
+                        route.size());
+                int at = from;
+                for (String step : route) {
+                    int next = graph.id(step);
+                    assertTrue("routes should follow edges",
+                            graph.containsEdge(at, next));
+                    at = next;
+                }
+                assertEquals(to, at);
+            }
+        }
+    }
+
+    /**
+     * Returns the breadth first distance from start to every node, or -1 for
+     * nodes that can not be reached.
+     */
+    private static int[] distances(IndexedGraph<String> graph, int start) {
+        int[] distance = new int[graph.size()];
+        Arrays.fill(distance, -1);
+        distance[start] = 0;
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int v = queue.remove();
+            for (int i = 0; i < graph.degree(v); i++) {
+                int w = graph.neighbor(v, i);
+                if (distance[w] < 0) {
+                    distance[w] = distance[v] + 1;
+                    queue.add(w);
+                }
+            }
+        }
+        return distance;
+    }
+}
@@ -1,24 +1,101 @@
 package test;
 
 import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import model.Command;
+import model.CommandType;
+import model.GameModel;
+import model.GameState;
+import model.Room;
+import model.Script;
+
 import org.junit.Test;
 import org.junit.BeforeClass;
 
 public class ScriptTest {
 
+    private static GameModel model;
+
     @BeforeClass
-    public static void setup() {
-        
+    public static void setup() throws IOException {
+        model = GameModel.loadGame(1);
     }
     
     @Test
     public void testAppend() {
-        fail("Not yet implemented");
+        Script script = new Script();
+        assertEquals("empty script should print nothing", "", script.execute());
+
+        script.add(new Command(model, CommandType.PRINT, new String[] { "one" }));
+        script.add(new Command(model, CommandType.PRINT, new String[] { "two" }));
+        assertEquals("commands should run in the order they were added",
+                "onetwo", script.execute());
     }
     
     @Test
     public void testExecute() {
-        fail("Not yet implemented");
+        Script script = new Script();
+        script.add(new Command(model, CommandType.PRINT, new String[] { "a" }));
+        script.add(new Command(model, CommandType.GO,
+                new String[] { "nowhere at all" }));
+        script.add(new Command(model, CommandType.PRINT, new String[] { "b" }));
+
+        StringBuilder out = new StringBuilder("> ");
+        assertFalse("a failed command should be reported", script.execute(out));
+        assertEquals("a failed script should print nothing", "> ",
+                out.toString());
+    }
+
+    @Test
+    public void testRollback() {
+        Room kitchen = model.getGameState().getRoom("kitchen");
+        List<String> items = kitchen.getItems();
+        List<String> inventory = model.getGameState().getPlayer()
+                .getInventory();
+
+        Script script = new Script();
+        script.add(new Command(model, CommandType.ADD_ITEM,
+                new String[] { "spoon" }));
+        script.add(new Command(model, CommandType.GIVE_ITEM,
+                new String[] { "spoon" }));
+        script.add(new Command(model, CommandType.GO,
+                new String[] { "hallway" }));
+        script.add(new Command(model, CommandType.SET_DESC,
+                new String[] { "changed" }));
+        script.add(new Command(model, CommandType.ADD_HEALTH,
+                new String[] { "not a number" }));
+
+        assertFalse(script.execute(new StringBuilder()));
+        assertEquals(items, kitchen.getItems());
+        assertEquals(inventory, model.getGameState().getPlayer()
+                .getInventory());
+        assertEquals("Kitchen", model.shortName());
+        assertFalse(model.getGameState().getRoom("hallway").getLongDesc()
+                .equals("changed"));
+    }
+    
+    @Test
+    public void testRollbackExits() {
+        GameState state = model.getGameState();
+        List<String> hallway = state.adjacentRooms("hallway");
+
+        Script script = new Script();
+        script.add(new Command(model, CommandType.OPEN_EXIT, new String[] {
+                "kitchen", "backyard", "trapdoor" }));
+        script.add(new Command(model, CommandType.CLOSE_EXIT, new String[] {
+                "hallway", "kitchen" }));
+        script.add(new Command(model, CommandType.ADD_HEALTH,
+                new String[] { "not a number" }));
+
+        assertFalse(script.execute(new StringBuilder()));
+        assertEquals(Arrays.asList("Hallway"), state.adjacentRooms("kitchen"));
+        assertTrue(state.labeledExits("kitchen").isEmpty());
+        assertEquals(hallway.size(), state.adjacentRooms("hallway").size());
+        assertTrue(state.adjacentRooms("hallway").containsAll(hallway));
     }
     
     // TODO: fill in more tests when Script is fleshed out
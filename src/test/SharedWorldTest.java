@@ -0,0 +1,179 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.GameState;
+import model.Graph;
+import model.Player;
+import model.Room;
+import model.ScriptCompiler;
+import model.SharedWorld;
+import utility.GameParser;
+
+import org.junit.Test;
+
+public class SharedWorldTest {
+
+    @Test
+    public void testPlayersShareRooms() throws IOException {
+        SharedWorld world = new GameParser().loadSharedWorld("saves/1");
+        GameState alice = world.join("alice");
+        GameState bob = world.join("bob");
+
+        assertNotNull(alice.execute("take knife"));
+        assertTrue(alice.getPlayer().getInventory().contains("knife"));
+        assertFalse(bob.getPlayer().getInventory().contains("knife"));
+        assertFalse(bob.getCurrentRoom().getItems().contains("knife"));
+        assertEquals("You already took the knife", bob.execute("take knife"));
+
+        // each player moves on their own
+        assertTrue(bob.go("hallway"));
+        assertEquals("Kitchen", alice.getCurrentRoom().getShortName());
+        assertEquals("Hallway", bob.getCurrentRoom().getShortName());
+    }
+
+    @Test
+    public void testCrossRoomScripts() throws InterruptedException {
+        // every room has a script that adds an item to itself and to the
+        // next room, so scripts in neighbouring rooms lock the same rooms in
+        // opposite directions
+        final int roomCount = 4;
+        final int players = 8;
+        final int turns = 2000;
+        Graph<Room> graph = new Graph<>();
+        Map<String, Room> nameToRoom = new HashMap<>();
+        for (int i = 0; i < roomCount; i++) {
+            String next = "r" + ((i + 1) % roomCount);
+            Room room = new Room("r" + i);
+            room.addScript("poke", ScriptCompiler.compile(null, new String[] {
+                    "ADD_ITEM", "coin", "ADD_ITEM_TO", next, "coin" }, 0));
+            graph.addNode(room);
+            nameToRoom.put("r" + i, room);
+        }
+        for (int i = 0; i < roomCount; i++) {
+            graph.addEdge(nameToRoom.get("r" + i),
+                    nameToRoom.get("r" + ((i + 1) % roomCount)));
+        }
+        final SharedWorld world = new SharedWorld(graph, nameToRoom,
+                new Player("template", 10, 10, new ArrayList<String>()), "r0");
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < players; p++) {
+            final int start = p % roomCount;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    GameState state = world.join("player");
+                    // walk to this player's room
+                    for (int i = 0; i < start; i++) {
+                        state.go("r" + (i + 1));
+                    }
+                    StringBuilder out = new StringBuilder();
+                    for (int i = 0; i < turns; i++) {
+                        state.execute("poke", out);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assertFalse("players deadlocked", thread.isAlive());
+        }
+
+        int coins = 0;
+        for (int i = 0; i < roomCount; i++) {
+            coins += world.getRoom("r" + i).getItems().size();
+        }
+        assertEquals(2 * players * turns, coins);
+    }
+
+    @Test
+    public void testGoThroughLabelLocksDestination()
+            throws InterruptedException {
+        // one player goes north through a labeled exit and drops a coin in the
+        // room it leads to, while another player runs a script there that
+        // adds a coin to both rooms
+        final int turns = 2000;
+        Graph<Room> graph = new Graph<>();
+        Map<String, Room> nameToRoom = new HashMap<>();
+        Room hall = new Room("hall");
+        hall.addScript("climb", ScriptCompiler.compile(null, new String[] {
+                "GO", "north", "ADD_ITEM", "coin" }, 0));
+        Room attic = new Room("attic");
+        attic.addScript("poke", ScriptCompiler.compile(null, new String[] {
+                "ADD_ITEM", "coin", "ADD_ITEM_TO", "hall", "coin" }, 0));
+        for (Room room : new Room[] { hall, attic }) {
+            graph.addNode(room);
+            nameToRoom.put(room.getShortName().toLowerCase(), room);
+        }
+        graph.addEdge(hall, attic, "north");
+        graph.addEdge(attic, hall);
+        final SharedWorld world = new SharedWorld(graph, nameToRoom,
+                new Player("template", 10, 10, new ArrayList<String>()),
+                "hall");
+
+        Thread climber = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                GameState state = world.join("climber");
+                StringBuilder out = new StringBuilder();
+                for (int i = 0; i < turns; i++) {
+                    state.execute("climb", out);
+                    state.go("hall");
+                }
+            }
+        });
+        Thread poker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                GameState state = world.join("poker");
+                state.go("north");
+                StringBuilder out = new StringBuilder();
+                for (int i = 0; i < turns; i++) {
+                    state.execute("poke", out);
+                }
+            }
+        });
+        climber.start();
+        poker.start();
+        climber.join(60000);
+        poker.join(60000);
+        assertFalse("players deadlocked", climber.isAlive() || poker.isAlive());
+
+        assertEquals(2 * turns, world.getRoom("attic").getItems().size());
+        assertEquals(turns, world.getRoom("hall").getItems().size());
+    }
+
+    @Test
+    public void testGoThroughExitOpenedByScript() {
+        // the exit does not exist when the script is planned, so the move is
+        // only found when the script runs
+        Graph<Room> graph = new Graph<>();
+        Map<String, Room> nameToRoom = new HashMap<>();
+        Room hall = new Room("hall");
+        hall.addScript("dig", ScriptCompiler.compile(null, new String[] {
+                "OPEN_EXIT", "hall", "cellar", "down", "GO", "down",
+                "ADD_ITEM", "coin" }, 0));
+        Room cellar = new Room("cellar");
+        for (Room room : new Room[] { hall, cellar }) {
+            graph.addNode(room);
+            nameToRoom.put(room.getShortName().toLowerCase(), room);
+        }
+        SharedWorld world = new SharedWorld(graph, nameToRoom, new Player(
+                "template", 10, 10, new ArrayList<String>()), "hall");
+        GameState state = world.join("digger");
+
+        assertNotNull(state.execute("dig"));
+        assertEquals("cellar", state.getCurrentRoom().getShortName());
+        assertEquals(1, world.getRoom("cellar").getItems().size());
+        assertEquals(0, world.getRoom("hall").getItems().size());
+    }
+}
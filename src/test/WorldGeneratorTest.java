@@ -0,0 +1,114 @@
+package test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import model.Command;
+import model.GameState;
+import model.Room;
+import model.Script;
+import model.ScriptCompiler;
+import utility.GameParser;
+import utility.WorldGenerator;
+
+import org.junit.Test;
+
+public class WorldGeneratorTest {
+
+    private static File generate(WorldGenerator generator) throws IOException {
+        File dir = Files.createTempDirectory("adventure").toFile();
+        dir.deleteOnExit();
+        generator.generate(dir);
+        for (File file : dir.listFiles()) {
+            file.deleteOnExit();
+        }
+        return dir;
+    }
+
+    @Test
+    public void testLoads() throws IOException {
+        File dir = generate(new WorldGenerator(7).setRooms(500)
+                .setScriptDepth(3).setDegree(WorldGenerator.Degree.POWER_LAW));
+        GameState state = new GameParser().loadGameState(null, dir.getPath());
+        assertEquals(500, state.getRooms().size());
+        assertEquals(WorldGenerator.roomName(0), state.getCurrentRoom()
+                .getShortName());
+
+        // the ring means every room has a way on
+        for (int i = 0; i < 500; i++) {
+            assertTrue(state.go(WorldGenerator.roomName((i + 1) % 500)));
+        }
+
+        int deepest = 0;
+        for (Room room : state.getRooms()) {
+            for (String input : room.getInputs()) {
+                deepest = Math.max(deepest, depth(room.getScript(input)));
+            }
+        }
+        assertEquals(3, deepest);
+    }
+
+    @Test
+    public void testDeterministic() throws IOException {
+        WorldGenerator generator = new WorldGenerator(42).setRooms(200)
+                .setItemsPerRoom(5).setDescriptionLength(50);
+        File a = generate(generator);
+        File b = generate(generator);
+        for (String name : new String[] { "rooms.tsv", "edges.tsv",
+                "player.tsv" }) {
+            assertArrayEquals(name, Files.readAllBytes(new File(a, name)
+                    .toPath()), Files.readAllBytes(new File(b, name).toPath()));
+        }
+
+        File c = generate(new WorldGenerator(43).setRooms(200)
+                .setItemsPerRoom(5).setDescriptionLength(50));
+        assertFalse(new String(Files.readAllBytes(new File(a, "rooms.tsv")
+                .toPath())).equals(new String(Files.readAllBytes(new File(c,
+                "rooms.tsv").toPath()))));
+    }
+
+    @Test
+    public void testMeanDegree() throws IOException {
+        // the ring gives every room two exits, and the rest are extra
+        for (WorldGenerator.Degree degree : WorldGenerator.Degree.values()) {
+            File dir = generate(new WorldGenerator(11).setRooms(20000)
+                    .setItemsPerRoom(0).setScriptsPerRoom(0).setDegree(degree));
+            List<String> edges = Files.readAllLines(new File(dir, "edges.tsv")
+                    .toPath());
+            double mean = edges.size() / 20000.0 - 2;
+            assertEquals(degree.name(), 2, mean, 0.1);
+        }
+    }
+
+    @Test
+    public void testReplacesWorld() throws IOException {
+        File dir = generate(new WorldGenerator(5).setRooms(10));
+        File exits = new File(dir, "exits.tsv");
+        Files.write(exits.toPath(), "EXITS\troom0\n".getBytes("UTF-8"));
+        exits.deleteOnExit();
+        new WorldGenerator(6).setRooms(10).generate(dir);
+        assertFalse(exits.exists());
+    }
+
+    /**
+     * Returns how deep the scripts added by the given script are nested.
+     */
+    private static int depth(Script script) {
+        int ret = 0;
+        for (Command command : script.getCommands()) {
+            List<String> tokens = command.toTokens();
+            if (tokens.get(0).equals("ADD_SCRIPT")) {
+                // skip the command type and input, and the closing END_SCRIPT
+                String[] nested = tokens.subList(0, tokens.size() - 1)
+                        .toArray(new String[0]);
+                ret = Math.max(ret,
+                        1 + depth(ScriptCompiler.compile(null, nested, 2)));
+            }
+        }
+        return ret;
+    }
+}
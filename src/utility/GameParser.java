@@ -1,170 +1,991 @@
 package utility;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
-import model.Command;
+import model.Command.InvalidGameDataException;
 import model.CommandType;
 import model.GameModel;
 import model.GameState;
 import model.Graph;
 import model.Player;
 import model.Room;
+import model.RoomSource;
 import model.Script;
+import model.SharedWorld;
+import model.ScriptCompiler;
 
 /**
  * <b>GameParser</b> is a utility class that handles loading game data from
  * files on disc and populating useful Java objects.
- * 
+ *
+ * See GameSaver for the layout of a save directory and the record format of
+ * its files. Every file is read one record at a time, so memory use does not
+ * depend on file size beyond the game objects themselves, and load time is
+ * linear in the size of the files.
+ *
  * @author Sean Wammer
  */
 public class GameParser {
 
-    // we just use the default constructor because we don't need any fields.
+    /** rooms files smaller than this are always parsed on one thread */
+    private static final long PARALLEL_MIN_BYTES = 1024 * 1024;
+    /** minimum number of lines in each chunk of a rooms file parsed in parallel */
+    private static final int CHUNK_LINES = 4096;
 
     /**
-     * We load in the room data from rooms.tsv, player data from player.tsv.
-     * 
+     * canonical path of each base world directory to its image, loaded or
+     * being loaded
+     */
+    private static final ConcurrentHashMap<String, BaseWorld> BASE_WORLDS =
+            new ConcurrentHashMap<>();
+    /** the files a base world is loaded from */
+    private static final String[] BASE_WORLD_FILES = { WorldImage.IMAGE_FILE,
+            GameSaver.ROOMS_FILE, GameSaver.EDGES_FILE, GameSaver.EXITS_FILE,
+            GameSaver.JOURNAL_FILE };
+
+    /** number of threads used to parse rooms */
+    private final int parallelism;
+
+    /**
+     * Constructs a GameParser that loads on the calling thread.
+     */
+    public GameParser() {
+        this(1);
+    }
+
+    /**
+     * Constructs a GameParser that parses large rooms files on up to the given
+     * number of threads.
+     *
+     * @param parallelism the number of threads to parse rooms with
+     * @throws IllegalArgumentException if parallelism < 1
+     */
+    public GameParser(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * We load in the room data from rooms.tsv, room connections from
+     * edges.tsv, player data from player.tsv and then replay journal.tsv on
+     * top of them. The exits in exits.tsv and the journal replace the exits
+     * that edges.tsv gives their rooms.
+     *
+     * If the directory has a world image (world.bin), rooms and their
+     * connections come from the image instead and are only built when the
+     * game first needs them. rooms.tsv is then optional and holds rooms that
+     * replace the image's rooms, and edges.tsv is not used.
+     *
      * Name to room map flattens short names to lowercase! However, the names'
      * actual case is preserved in the Room itself. This way we can print room
      * names with correct case, but we ignore case for input.
-     * 
+     *
      * @param filePath the path to the directory where the save files are found
      * @return a newly constructed GameState loaded from the files stored at the
      *         given filePath
+     * @throws IOException if the save files can not be read
+     * @throws InvalidGameDataException if the save files are malformed. The
+     *         message gives the file, line and column of the problem.
      */
-    public GameState loadGameState(GameModel gameModel, String filePath) {
+    public GameState loadGameState(GameModel gameModel, String filePath)
+            throws IOException {
+        File image = new File(filePath, WorldImage.IMAGE_FILE);
+        if (image.exists()) {
+            return loadFromImage(gameModel, filePath, WorldImage.open(image),
+                    filePath);
+        }
+
         // load each parameter of the GameState
 
         // load rooms
-        RoomData rd = loadRooms(gameModel, filePath);
-        Graph<Room> rooms = rd.graph;
-        Map<String, Room> nameToRoom = rd.map;
+        Map<String, Room> nameToRoom = loadRooms(gameModel, filePath);
 
         // load player data
         PlayerData pd = loadPlayer(filePath);
-        Player player = pd.player;
-        String playerCurrentRoom = pd.currentRoom;
+
+        // load exits that were opened or closed
+        Map<String, ExitData> exits = loadExits(filePath, nameToRoom, null);
+
+        // replay changes saved since the snapshot was written
+        pd = replayJournal(gameModel, filePath, nameToRoom, null, exits, pd);
+        if (!nameToRoom.containsKey(pd.currentRoom.toLowerCase())) {
+            throw new InvalidGameDataException("player is in unknown room \""
+                    + pd.currentRoom + "\"");
+        }
+
+        // connect the rooms
+        RoomData rd = loadEdges(filePath, nameToRoom);
 
         // construct and return GameState
-        return new GameState(rooms, player, playerCurrentRoom, nameToRoom);
+        GameState state = new GameState(rd.graph, pd.player, pd.currentRoom,
+                rd.map);
+        replaceExits(state, exits);
+        return state;
     }
 
-    private PlayerData loadPlayer(String filePath) {
-        // filepath is the directory in which we find out file
-        String playerFilePath = filePath + "/player.tsv";
-        File playerFile = new File(playerFilePath);
-        // TODO implement actual parsing
+    /**
+     * Loads the whole world in the directory at filePath as a world that many
+     * players share. Joining players start as a copy of the saved player. The
+     * directory must hold an edges.tsv.
+     *
+     * @param filePath the path to the directory where the world is found
+     * @return the loaded world
+     * @throws IOException if the files can not be read
+     * @throws InvalidGameDataException if the files are malformed
+     */
+    public SharedWorld loadSharedWorld(String filePath) throws IOException {
+        // scripts run on behalf of whichever player runs them, so they need
+        // no game model of their own
+        Map<String, Room> nameToRoom = loadRooms(null, filePath);
+        PlayerData pd = loadPlayer(filePath);
+        Map<String, ExitData> exits = loadExits(filePath, nameToRoom, null);
+        pd = replayJournal(null, filePath, nameToRoom, null, exits, pd);
+        if (!nameToRoom.containsKey(pd.currentRoom.toLowerCase())) {
+            throw new InvalidGameDataException("player is in unknown room \""
+                    + pd.currentRoom + "\"");
+        }
+        RoomData rd = loadEdges(filePath, nameToRoom);
+        for (ExitData ed : exits.values()) {
+            // shared worlds are never saved, so the graph can be changed
+            // directly
+            Room room = rd.map.get(ed.shortName.toLowerCase());
+            for (Room child : rd.graph.adjacent(room)) {
+                rd.graph.removeEdge(room, child);
+            }
+            for (int i = 0; i < ed.targets.size(); i++) {
+                rd.graph.addEdge(room, rd.map.get(ed.targets.get(i)
+                        .toLowerCase()), ed.labels.get(i));
+            }
+        }
+        return new SharedWorld(rd.graph, rd.map, pd.player, pd.currentRoom);
+    }
 
-        // Stubbed out
-        Player player = new Player("bob", 20, 20, new ArrayList<String>());
-        String currentRoom = "kitchen";
-        return new PlayerData(player, currentRoom);
+    /**
+     * Loads the save in the directory at filePath on top of the base world in
+     * the directory at basePath.
+     *
+     * A save directory with a world image or an edges.tsv holds a whole world
+     * and is loaded as by loadGameState(GameModel, String). Any other save
+     * directory is an overlay on the base world: its rooms.tsv and journal
+     * only hold the rooms that differ from the base world, and every other
+     * room is read from the base world when the game first needs it. If the
+     * overlay has no player.tsv, the base world's player is used. So an empty
+     * directory is a new game.
+     *
+     * The base world is loaded once and then shared by every game loaded on
+     * top of it, until its files change.
+     *
+     * @param filePath the path to the save directory
+     * @param basePath the path to the base world directory
+     * @return a newly constructed GameState loaded from the given directories
+     * @throws IOException if the save files can not be read
+     * @throws InvalidGameDataException if the save files are malformed
+     */
+    public GameState loadGameState(GameModel gameModel, String filePath,
+            String basePath) throws IOException {
+        if (new File(filePath, WorldImage.IMAGE_FILE).exists()
+                || new File(filePath, GameSaver.EDGES_FILE).exists()) {
+            return loadGameState(gameModel, filePath);
+        }
+        return loadFromImage(gameModel, filePath, baseWorld(basePath),
+                basePath);
+    }
+
+    /**
+     * Returns the world image of the whole world stored in the directory at
+     * filePath, loading it the first time it is asked for and again whenever
+     * its files have changed. The world image in the directory is used if
+     * there is one. Otherwise the rooms and edges are parsed and the image is
+     * built in memory.
+     * 
+     * Each directory is loaded by the first thread to ask for it, and other
+     * threads asking for the same directory wait for it, but loading one
+     * directory does not hold up any other.
+     */
+    private WorldImage baseWorld(final String filePath) throws IOException {
+        String key = new File(filePath).getCanonicalPath();
+        String stamp = stamp(filePath);
+        BaseWorld world = BASE_WORLDS.get(key);
+        while (world == null || !world.stamp.equals(stamp)) {
+            BaseWorld loading = new BaseWorld(stamp,
+                    new FutureTask<>(new Callable<WorldImage>() {
+                        @Override
+                        public WorldImage call() throws IOException {
+                            File image = new File(filePath,
+                                    WorldImage.IMAGE_FILE);
+                            if (image.exists()) {
+                                return WorldImage.open(image);
+                            }
+                            // scripts are only compiled to be copied into the
+                            // image, so they need no game model to act on
+                            return WorldImage.of(loadGameState(null, filePath));
+                        }
+                    }));
+            boolean installed = world == null ? BASE_WORLDS.putIfAbsent(key,
+                    loading) == null : BASE_WORLDS.replace(key, world, loading);
+            if (installed) {
+                world = loading;
+                world.image.run();
+            } else {
+                // another thread got there first
+                world = BASE_WORLDS.get(key);
+            }
+        }
+        try {
+            return join(world.image);
+        } catch (IOException | RuntimeException e) {
+            // let the next game try again
+            BASE_WORLDS.remove(key, world);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a string that changes whenever one of the files a base world in
+     * the directory at filePath is loaded from is written, added or deleted.
+     */
+    private static String stamp(String filePath) {
+        StringBuilder stamp = new StringBuilder();
+        for (String name : BASE_WORLD_FILES) {
+            File file = new File(filePath, name);
+            stamp.append(file.lastModified()).append(':')
+                    .append(file.length()).append(' ');
+        }
+        return stamp.toString();
+    }
+
+    /**
+     * Loads a game whose rooms come from the given world image, with the
+     * rooms in rooms.tsv and the journal replacing the image's rooms. The
+     * player is read from playerPath if the save has no player file.
+     */
+    private GameState loadFromImage(GameModel gameModel, String filePath,
+            WorldImage image, String playerPath) throws IOException {
+        RoomSource source = image.bind(gameModel);
+
+        Map<String, Room> nameToRoom = new HashMap<>();
+        if (new File(filePath, GameSaver.ROOMS_FILE).exists()) {
+            nameToRoom = loadRooms(gameModel, filePath);
+        }
+        if (new File(filePath, GameSaver.PLAYER_FILE).exists()) {
+            playerPath = filePath;
+        }
+        PlayerData pd = loadPlayer(playerPath);
+        Map<String, ExitData> exits = loadExits(filePath, nameToRoom, source);
+        pd = replayJournal(gameModel, filePath, nameToRoom, source, exits, pd);
+
+        String currentRoom = pd.currentRoom.toLowerCase();
+        if (!nameToRoom.containsKey(currentRoom)
+                && !source.containsRoom(currentRoom)) {
+            throw new InvalidGameDataException("player is in unknown room \""
+                    + pd.currentRoom + "\"");
+        }
+        GameState state = new GameState(source, pd.player, pd.currentRoom,
+                nameToRoom);
+        replaceExits(state, exits);
+        return state;
+    }
+
+    /**
+     * Reads every room in rooms.tsv, in parallel if this parser has more than
+     * one thread and the file is large enough to be worth splitting.
+     */
+    private Map<String, Room> loadRooms(GameModel gameModel, String filePath)
+            throws IOException {
+        File file = new File(filePath, GameSaver.ROOMS_FILE);
+        if (parallelism > 1 && file.length() >= PARALLEL_MIN_BYTES) {
+            return loadRoomsParallel(gameModel, file);
+        }
+
+        Map<String, Room> nameToRoom = new LinkedHashMap<>();
+        try (RecordReader in = new RecordReader(file, new StringPool())) {
+            ParsedRooms parsed = readRooms(gameModel, in);
+            mergeRooms(nameToRoom, parsed, in.fileName());
+        }
+        return nameToRoom;
     }
 
-    private RoomData loadRooms(GameModel gameModel, String filePath) {
-        // Stubbed out with a mock room that has a knife and 1 command, 'jump'.
-        // TODO implement actual parsing. We'll read in a room edge file of all
-        // room connections, and a file of all room data (including scripts
-        // accepted by each room)
+    /**
+     * Reads every room in the given rooms file by splitting it into chunks of
+     * whole rooms and parsing the chunks on a ForkJoinPool. Chunks are merged
+     * in file order, so the result is the same as parsing on one thread.
+     *
+     * Only a few chunks are in flight at once, which bounds the memory used
+     * for raw lines. The chunks share one StringPool, so text repeated in
+     * different chunks is still stored once.
+     */
+    private Map<String, Room> loadRoomsParallel(final GameModel gameModel,
+            final File file) throws IOException {
+        Map<String, Room> nameToRoom = new LinkedHashMap<>();
+        final String fileName = file.getPath();
+        Deque<Future<ParsedRooms>> inFlight = new ArrayDeque<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        StringPool strings = new StringPool();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(),
+                StandardCharsets.UTF_8)) {
+            StringBuilder chunk = new StringBuilder();
+            int chunkLines = 0;
+            int chunkStart = 1;
+            int lineNumber = 0;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                // a ROOM record always starts a new room, so it is safe to
+                // cut the file in front of one
+                if (chunkLines >= CHUNK_LINES
+                        && line.startsWith(GameSaver.ROOM + "\t")) {
+                    inFlight.add(submit(pool, strings, gameModel, fileName,
+                            chunk.toString(), chunkStart));
+                    chunk = new StringBuilder();
+                    chunkLines = 0;
+                    chunkStart = lineNumber;
 
+                    if (inFlight.size() > parallelism * 2) {
+                        mergeRooms(nameToRoom, join(inFlight.poll()), fileName);
+                    }
+                }
+                chunk.append(line).append('\n');
+                chunkLines++;
+            }
+            inFlight.add(submit(pool, strings, gameModel, fileName,
+                    chunk.toString(), chunkStart));
+
+            while (!inFlight.isEmpty()) {
+                mergeRooms(nameToRoom, join(inFlight.poll()), fileName);
+            }
+        } finally {
+            for (Future<ParsedRooms> future : inFlight) {
+                future.cancel(true);
+            }
+            pool.shutdownNow();
+        }
+        return nameToRoom;
+    }
+
+    /**
+     * Starts parsing the given chunk of a rooms file on the pool.
+     */
+    private Future<ParsedRooms> submit(ForkJoinPool pool,
+            final StringPool strings, final GameModel gameModel,
+            final String fileName, final String chunk, final int firstLine) {
+        return pool.submit(new Callable<ParsedRooms>() {
+            @Override
+            public ParsedRooms call() throws IOException {
+                try (RecordReader in = new RecordReader(fileName,
+                        new BufferedReader(new StringReader(chunk)), firstLine,
+                        strings)) {
+                    return readRooms(gameModel, in);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a chunk to be parsed or a base world to be loaded and returns
+     * the result, rethrowing any error it ran into.
+     */
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while loading rooms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * Reads every room left in the given reader.
+     */
+    private ParsedRooms readRooms(GameModel gameModel, RecordReader in)
+            throws IOException {
+        ParsedRooms parsed = new ParsedRooms();
+        String[] record = in.next();
+        while (record != null) {
+            if (!record[0].equals(GameSaver.ROOM)) {
+                throw in.error(0, "expected " + GameSaver.ROOM + " but found \""
+                        + record[0] + "\"");
+            }
+            int line = in.line();
+            parsed.rooms.add(readRoom(gameModel, in, record));
+            parsed.lines.add(line);
+            record = in.current();
+        }
+        return parsed;
+    }
+
+    /**
+     * Adds parsed rooms to nameToRoom, rejecting rooms whose short name is
+     * already taken.
+     */
+    private void mergeRooms(Map<String, Room> nameToRoom, ParsedRooms parsed,
+            String fileName) {
+        for (int i = 0; i < parsed.rooms.size(); i++) {
+            Room room = parsed.rooms.get(i);
+            if (nameToRoom.containsKey(room.getShortName().toLowerCase())) {
+                // the short name is the second field of the ROOM record
+                throw new InvalidGameDataException(fileName + ":"
+                        + parsed.lines.get(i) + ":"
+                        + (GameSaver.ROOM.length() + 2) + ": duplicate room \""
+                        + room.getShortName() + "\"");
+            }
+            putRoom(nameToRoom, room);
+        }
+    }
+
+    /**
+     * Reads the player from player.tsv.
+     */
+    private PlayerData loadPlayer(String filePath) throws IOException {
+        // filepath is the directory in which we find out file
+        try (RecordReader in = new RecordReader(new File(filePath,
+                GameSaver.PLAYER_FILE))) {
+            String[] record = in.next();
+            if (record == null || !record[0].equals(GameSaver.PLAYER)) {
+                throw in.error(0, "expected " + GameSaver.PLAYER);
+            }
+            PlayerData pd = readPlayer(in, record);
+            if (in.current() != null) {
+                throw in.error(0, "unexpected record after the player");
+            }
+            return pd;
+        }
+    }
+
+    /**
+     * Applies the committed batches of journal.tsv, if there is one. Rooms in
+     * the journal replace the rooms in nameToRoom, exits replace the exits in
+     * exits and the last player in the journal replaces pd. Returns the
+     * resulting player data. Exits may lead to rooms in nameToRoom or, if it
+     * is not null, source.
+     * 
+     * A save that was cut short leaves a batch without its COMMIT at the end
+     * of the journal, and may leave its last record cut short too. An error
+     * after the last COMMIT drops the rest of the journal with that batch,
+     * but an error in a committed batch is thrown.
+     */
+    private PlayerData replayJournal(GameModel gameModel, String filePath,
+            Map<String, Room> nameToRoom, RoomSource source,
+            Map<String, ExitData> exits, PlayerData pd) throws IOException {
+        File journal = new File(filePath, GameSaver.JOURNAL_FILE);
+        if (!journal.exists()) {
+            return pd;
+        }
+
+        try (RecordReader in = new RecordReader(journal)) {
+            // records are held back until their batch is committed
+            List<Room> batchRooms = new ArrayList<>();
+            List<ExitData> batchExits = new ArrayList<>();
+            PlayerData batchPlayer = null;
+
+            try {
+                String[] record = in.next();
+                while (record != null) {
+                    if (record[0].equals(GameSaver.ROOM)) {
+                        batchRooms.add(readRoom(gameModel, in, record));
+                    } else if (record[0].equals(GameSaver.EXITS)) {
+                        batchExits.add(readExits(in, nameToRoom, source));
+                    } else if (record[0].equals(GameSaver.PLAYER)) {
+                        batchPlayer = readPlayer(in, record);
+                    } else if (record[0].equals(GameSaver.COMMIT)) {
+                        for (Room room : batchRooms) {
+                            putRoom(nameToRoom, room);
+                        }
+                        for (ExitData ed : batchExits) {
+                            exits.put(ed.shortName.toLowerCase(), ed);
+                        }
+                        if (batchPlayer != null) {
+                            pd = batchPlayer;
+                        }
+                        batchRooms.clear();
+                        batchExits.clear();
+                        batchPlayer = null;
+                        in.next();
+                    } else {
+                        throw in.error(0, "unknown record \"" + record[0]
+                                + "\"");
+                    }
+                    record = in.current();
+                }
+            } catch (InvalidGameDataException e) {
+                if (in.skipTo(GameSaver.COMMIT)) {
+                    throw e;
+                }
+                // the save was cut short while writing its last batch
+            }
+            // anything left over was never committed, so it is dropped
+        }
+        return pd;
+    }
+
+    /**
+     * Reads edges.tsv, if there is one, and builds the room graph. An edge
+     * record may have a third field naming the exit, like "north". A room may
+     * only have one exit with each name.
+     */
+    private RoomData loadEdges(String filePath, Map<String, Room> nameToRoom)
+            throws IOException {
         Graph<Room> rooms = new Graph<>();
+        for (Room room : nameToRoom.values()) {
+            rooms.addNode(room);
+        }
 
-        // construct item list
-        List<String> items = new ArrayList<>();
-        items.add("knife");
+        File edges = new File(filePath, GameSaver.EDGES_FILE);
+        if (edges.exists()) {
+            try (RecordReader in = new RecordReader(edges)) {
+                for (String[] record = in.next(); record != null; record = in.next()) {
+                    in.expectFields(2, 3);
+                    Room parent = findRoom(in, nameToRoom, 0);
+                    Room child = findRoom(in, nameToRoom, 1);
+                    String label = record.length > 2 ? record[2] : null;
+                    if (label != null) {
+                        if (label.trim().isEmpty()) {
+                            throw in.error(2, "exit label must not be blank");
+                        }
+                        Room old = rooms.exit(parent, label);
+                        if (old != null && old != child) {
+                            throw in.error(2, "room \"" + record[0]
+                                    + "\" already has an exit \"" + label
+                                    + "\"");
+                        }
+                    }
+                    rooms.addEdge(parent, child, label);
+                }
+            }
+        }
+
+        // NOTE: THE MAP IS KEYED BY LOWER CASE SHORT NAMES SO THAT INPUT CAN
+        // IGNORE CASE. THE ROOM ITSELF KEEPS THE TRUE CASE FOR DISPLAY.
+        return new RoomData(rooms, new HashMap<>(nameToRoom));
+    }
+
+    /**
+     * Reads exits.tsv, if there is one. Returns the exits read by lowercase
+     * short name of the room they lead from. Exits may lead to rooms in
+     * nameToRoom or, if it is not null, source.
+     */
+    private Map<String, ExitData> loadExits(String filePath,
+            Map<String, Room> nameToRoom, RoomSource source)
+            throws IOException {
+        Map<String, ExitData> exits = new LinkedHashMap<>();
+        File file = new File(filePath, GameSaver.EXITS_FILE);
+        if (!file.exists()) {
+            return exits;
+        }
+        try (RecordReader in = new RecordReader(file)) {
+            String[] record = in.next();
+            while (record != null) {
+                if (!record[0].equals(GameSaver.EXITS)) {
+                    throw in.error(0, "expected " + GameSaver.EXITS);
+                }
+                ExitData ed = readExits(in, nameToRoom, source);
+                exits.put(ed.shortName.toLowerCase(), ed);
+                record = in.current();
+            }
+        }
+        return exits;
+    }
 
-        // construct accepted input map
+    /**
+     * Reads the exits that start at the current EXITS record. A room may only
+     * have one exit with each label. Leaves in at the first record after the
+     * exits.
+     */
+    private ExitData readExits(RecordReader in, Map<String, Room> nameToRoom,
+            RoomSource source) throws IOException {
+        in.expectFields(2);
+        checkRoom(in, nameToRoom, source, 1);
+        ExitData ed = new ExitData(in.current()[1]);
+        Set<String> labels = new HashSet<>();
+
+        String[] record = in.next();
+        while (record != null && record[0].equals(GameSaver.EXIT)) {
+            in.expectFields(2, 3);
+            checkRoom(in, nameToRoom, source, 1);
+            String label = record.length > 2 ? record[2] : null;
+            if (label != null) {
+                if (label.trim().isEmpty()) {
+                    throw in.error(2, "exit label must not be blank");
+                }
+                if (!labels.add(label.toLowerCase().trim())) {
+                    throw in.error(2, "room \"" + ed.shortName
+                            + "\" already has an exit \"" + label + "\"");
+                }
+            }
+            ed.targets.add(record[1]);
+            ed.labels.add(label);
+            record = in.next();
+        }
+        return ed;
+    }
+
+    /**
+     * Replaces the exits of the rooms in exits with the exits read for them.
+     */
+    private void replaceExits(GameState state, Map<String, ExitData> exits) {
+        for (ExitData ed : exits.values()) {
+            state.replaceExits(ed.shortName, ed.targets, ed.labels);
+        }
+    }
+
+    /**
+     * Reads the room that starts at the given ROOM record, along with its item
+     * and script records. Leaves in at the first record after the room.
+     */
+    private Room readRoom(GameModel gameModel, RecordReader in, String[] record)
+            throws IOException {
+        in.expectFields(5);
+        String shortName = record[1];
+        if (shortName.trim().isEmpty()) {
+            throw in.error(1, "room short name must not be blank");
+        }
+        String name = in.intern(record[2]);
+        String shortDesc = in.intern(record[3]);
+        String longDesc = in.intern(record[4]);
+
+        List<String> items = new ArrayList<>();
         Map<String, Script> acceptedInput = new HashMap<>();
 
-        // jump
-        Script script1 = new Script();
-        String[] args1 = new String[1];
-        args1[0] = "You jump with joy!";
-        script1.add(new Command(gameModel, CommandType.PRINT, args1));
-
-        // take knife
-        Script script2 = new Script();
-        String[] args2 = new String[1];
-        args2[0] = "knife";
-        script2.add(new Command(gameModel, CommandType.REMOVE_ITEM, args2));
-
-        String[] args3 = new String[1];
-        args3[0] = "knife";
-        script2.add(new Command(gameModel, CommandType.GIVE_ITEM, args3));
-
-        String[] args4 = new String[1];
-        args4[0] = "You take the knife off the small table.";
-        script2.add(new Command(gameModel, CommandType.PRINT, args4));
-
-        String[] args5 = new String[1];
-        args5[0] = "There is a small oven and stove combination appliance nearby. The room is brightly lit and clean. The floor is made up of black and white glossy, checkered tiles.";
-        script2.add(new Command(gameModel, CommandType.SET_DESC, args5));
-
-        String[] args6 = new String[1];
-        args6[0] = "There is a small oven and stove combination appliance nearby.";
-        script2.add(new Command(gameModel, CommandType.SET_SHORT_DESC, args6));
-
-        String[] args7 = new String[7];
-        args7[0] = "use knife";
-        args7[1] = "PRINT";
-        args7[2] = "You accidentally cut your finger!";
-        args7[3] = "SET_DESC";
-        args7[4] = "There is a small oven and stove combination appliance nearby. The room is brightly lit and clean. The floor is made up of black and white glossy, checkered tiles. There's a small pool of blood on the floor now.";
-        args7[5] = "ADD_HEALTH";
-        args7[6] = "-1";
-        script2.add(new Command(gameModel, CommandType.ADD_SCRIPT, args7));
-        
-        String[] args8 = new String[1];
-        args8[0] = "take knife";
-        script2.add(new Command(gameModel, CommandType.REMOVE_SCRIPT, args8));
-        
-        String[] args9 = new String[4];
-        args9[0] = "take knife";
-        args9[1] = "PRINT";
-        args9[2] = "You already took the knife";
-        args9[3] = "END_SCRIPT";
-        script2.add(new Command(gameModel, CommandType.ADD_SCRIPT, args9));
-             
-        
-        // at this point in a file we would see "END SCRIPT" so we would stop
-        // adding this one and add the next command to the outer script.
-        
-        // note: if, while adding this script, we see another add script
-        // command, we just add it and all it's arguments blindly as above, but
-        // we need to see two end scripts now. every add script needs and end
-        // script associated with it. When we find the last end script, we stop
-        // and don't add this end script as an argument.
-
-        acceptedInput.put("jump", script1);
-        acceptedInput.put("take knife", script2);
-
-        // construct room
-        Room room = new Room(
-                "Kitchen",
-                "The West Wing Kitchen",
-                "There is a small oven and stove combination appliance nearby. On a small table you see a knife.",
-                "There is a small oven and stove combination appliance nearby. The room is brightly lit and clean. The floor is made up of black and white glossy, checkered tiles. On a small table you see a small but sharp knife.",
-                items, acceptedInput);
-        rooms.addNode(room);
-
-        // we would also have to add edges between connected rooms to the room
-        // graph here
-
-        // fill name map with each room
-        Map<String, Room> nameToRoom = new HashMap<>();
+        record = in.next();
+        while (record != null) {
+            if (record[0].equals(GameSaver.ITEM)) {
+                in.expectFields(2);
+                items.add(record[1]);
+                record = in.next();
+            } else if (record[0].equals(GameSaver.SCRIPT)) {
+                in.expectFields(2);
+                String input = in.intern(record[1].toLowerCase().trim());
+                acceptedInput.put(input, readScript(gameModel, in));
+                record = in.current();
+            } else {
+                // start of the next room or player
+                break;
+            }
+        }
+
+        return new Room(shortName, name, shortDesc, longDesc, items,
+                acceptedInput);
+    }
+
+    /**
+     * Reads the commands after a SCRIPT record up to its END_SCRIPT record and
+     * compiles them. Nested ADD_SCRIPT blocks may span any number of records.
+     * Leaves in at the first record after the END_SCRIPT.
+     */
+    private Script readScript(GameModel gameModel, RecordReader in)
+            throws IOException {
+        int startLine = in.line();
+        List<String> tokens = new ArrayList<>();
+        int depth = 0;
+
+        String[] record = in.next();
+        while (true) {
+            if (record == null) {
+                throw new InvalidGameDataException(in.fileName() + ":"
+                        + startLine + ":1: "
+                        + "script is missing its END_SCRIPT");
+            }
+            for (int i = 0; i < record.length; i++) {
+                String token = record[i];
+                if (token.equalsIgnoreCase(ScriptCompiler.END_SCRIPT)) {
+                    if (depth == 0) {
+                        if (i != record.length - 1) {
+                            throw in.error(i + 1,
+                                    "unexpected field after END_SCRIPT");
+                        }
+                        in.next();
+                        try {
+                            return ScriptCompiler.compile(gameModel,
+                                    tokens.toArray(new String[0]), 0);
+                        } catch (InvalidGameDataException e) {
+                            throw new InvalidGameDataException(in.fileName()
+                                    + ":" + startLine + ":1: " + e.getMessage());
+                        }
+                    }
+                    depth--;
+                } else {
+                    CommandType type = CommandType.get(token);
+                    if (type == CommandType.ADD_SCRIPT
+                            || type == CommandType.ADD_SCRIPT_TO) {
+                        depth++;
+                    }
+                }
+                // the first field names the command and is not pooled, since
+                // command names are already constants
+                tokens.add(i == 0 ? token : in.intern(token));
+            }
+            record = in.next();
+        }
+    }
+
+    /**
+     * Reads the player that starts at the given PLAYER record, along with its
+     * item records. Leaves in at the first record after the player.
+     */
+    private PlayerData readPlayer(RecordReader in, String[] record)
+            throws IOException {
+        in.expectFields(5);
+        String name = record[1];
+        int curHealth = parseInt(in, record, 2);
+        int maxHealth = parseInt(in, record, 3);
+        String currentRoom = record[4];
+
+        List<String> inventory = new ArrayList<>();
+        record = in.next();
+        while (record != null && record[0].equals(GameSaver.ITEM)) {
+            in.expectFields(2);
+            inventory.add(record[1]);
+            record = in.next();
+        }
+
+        Player player = new Player(name, curHealth, maxHealth, inventory);
+        return new PlayerData(player, currentRoom);
+    }
+
+    private int parseInt(RecordReader in, String[] record, int field) {
+        try {
+            return Integer.parseInt(record[field].trim());
+        } catch (NumberFormatException e) {
+            throw in.error(field, "expected a number but found \""
+                    + record[field] + "\"");
+        }
+    }
+
+    private Room findRoom(RecordReader in, Map<String, Room> nameToRoom,
+            int field) {
+        Room room = nameToRoom.get(in.current()[field].toLowerCase());
+        if (room == null) {
+            throw in.error(field, "unknown room \"" + in.current()[field] + "\"");
+        }
+        return room;
+    }
+
+    /**
+     * Throws an error unless the given field of the current record names a
+     * room in nameToRoom or, if it is not null, source.
+     */
+    private void checkRoom(RecordReader in, Map<String, Room> nameToRoom,
+            RoomSource source, int field) {
+        String shortName = in.current()[field].toLowerCase();
+        if (!nameToRoom.containsKey(shortName)
+                && (source == null || !source.containsRoom(shortName))) {
+            throw in.error(field, "unknown room \"" + in.current()[field]
+                    + "\"");
+        }
+    }
+
+    private void putRoom(Map<String, Room> nameToRoom, Room room) {
+        // NOTE: THE toLowerCase() HERE IS VERY VERY IMPORTANT! FLATTEN THE
+        // SHORT NAMES IN THIS MAP TO LOWER CASE SO THAT INPUT CAN IGNORE CASE.
+        // LEAVE THE ROOM DATA ALONE THOUGH. THAT WAY THE ROOM NAME DISPLAYS
+        // RIGHT, BUT WE MAP THE FLATTENED NAME.
         nameToRoom.put(room.getShortName().toLowerCase(), room);
-        // NOTE: THE toLowerCase() HERE IS VERY VERY IMPORTANT! WHEN YOU
-        // IMPLEMENT THE REAL THING, MAKE SURE TO FLATTEN THE SHORT NAMES IN
-        // THIS MAP TO LOWER CASE SO THAT INPUT CAN IGNORE CASE. LEAVE THE ROOM
-        // DATA ALONE THOUGH. THAT WAY THE ROOM NAME DISPLAYS RIGHT, BUT WE MAP
-        // THE FLATTENED NAME.
+    }
+
+    /**
+     * Reads a file one Tsv record at a time, keeping track of where it is so
+     * that errors can point at the offending line and column.
+     */
+    private static class RecordReader implements AutoCloseable {
+
+        private final String fileName;
+        private final BufferedReader reader;
+        private String line;
+        private String[] record;
+        private int lineNumber;
+        private final StringPool strings;
+
+        public RecordReader(File file) throws IOException {
+            this(file, new StringPool());
+        }
+
+        public RecordReader(File file, StringPool strings) throws IOException {
+            this(file.getPath(), Files.newBufferedReader(file.toPath(),
+                    StandardCharsets.UTF_8), 1, strings);
+        }
+
+        /**
+         * Reads records from reader, whose first line is line firstLine of the
+         * named file, pooling the text of rooms and scripts in strings.
+         */
+        public RecordReader(String fileName, BufferedReader reader,
+                int firstLine, StringPool strings) {
+            this.fileName = fileName;
+            this.reader = reader;
+            this.lineNumber = firstLine - 1;
+            this.strings = strings;
+        }
+
+        /**
+         * Returns the pooled copy of the given text read from this file.
+         */
+        public String intern(String text) {
+            return strings.intern(text);
+        }
+
+        /**
+         * Advances to the next non-blank record and returns it, or null at
+         * the end of the file.
+         */
+        public String[] next() throws IOException {
+            do {
+                line = reader.readLine();
+                lineNumber++;
+            } while (line != null && line.trim().isEmpty());
+
+            if (line == null) {
+                record = null;
+            } else {
+                try {
+                    record = Tsv.split(line);
+                } catch (IllegalArgumentException e) {
+                    // the message starts with the column of the problem
+                    throw new InvalidGameDataException(fileName + ":"
+                            + lineNumber + ":" + e.getMessage());
+                }
+            }
+            return record;
+        }
+
+        /**
+         * Skips lines until one that is a record with the given first field,
+         * which becomes the current record. Returns false if the file ends
+         * first. Lines that can not be read as records are skipped too.
+         */
+        public boolean skipTo(String first) throws IOException {
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.equals(first) || line.startsWith(first + "\t")) {
+                    record = Tsv.split(line);
+                    return true;
+                }
+            }
+            record = null;
+            return false;
+        }
+
+        /**
+         * Returns the record last returned by next.
+         */
+        public String[] current() {
+            return record;
+        }
+
+        public int line() {
+            return lineNumber;
+        }
+
+        public String fileName() {
+            return fileName;
+        }
 
-        return new RoomData(rooms, nameToRoom);
+        /**
+         * Throws an error unless the current record has between min and max
+         * fields.
+         */
+        public void expectFields(int min, int max) {
+            if (record.length < min) {
+                throw error(record.length - 1, "expected at least " + min
+                        + " fields but found " + record.length);
+            } else if (record.length > max) {
+                throw error(max, "expected at most " + max
+                        + " fields but found " + record.length);
+            }
+        }
+
+        /**
+         * Throws an error unless the current record has exactly the given
+         * number of fields.
+         */
+        public void expectFields(int count) {
+            if (record.length < count) {
+                throw error(record.length - 1, "expected " + count
+                        + " fields but found " + record.length);
+            } else if (record.length > count) {
+                throw error(count, "expected " + count + " fields but found "
+                        + record.length);
+            }
+        }
+
+        /**
+         * Returns an error pointing at the start of the given field of the
+         * current record.
+         */
+        public InvalidGameDataException error(int field, String message) {
+            int column = 1;
+            for (int i = 0; i < field && column <= line.length(); i++) {
+                column = line.indexOf('\t', column - 1) + 2;
+                if (column == 1) {
+                    // fewer fields than asked for, point past the end
+                    column = line.length() + 1;
+                    break;
+                }
+            }
+            return new InvalidGameDataException(fileName + ":" + lineNumber
+                    + ":" + column + ": " + message);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Encapsulation helper class to keep track of a base world's image and the
+     * stamp of the files it was loaded from
+     */
+    private static class BaseWorld {
+
+        public final String stamp;
+        public final FutureTask<WorldImage> image;
+
+        public BaseWorld(String stamp, FutureTask<WorldImage> image) {
+            this.stamp = stamp;
+            this.image = image;
+        }
+    }
+
+    /**
+     * Encapsulation helper class to keep track of parsed rooms and the line
+     * each one started on
+     */
+    private class ParsedRooms {
+
+        public List<Room> rooms = new ArrayList<>();
+        public List<Integer> lines = new ArrayList<>();
     }
 
     /**
@@ -182,6 +1003,21 @@ public class GameParser {
         }
     }
 
+    /**
+     * Encapsulation helper class to keep track of the exits read for one room,
+     * the i'th exit leading to targets.get(i) with the label labels.get(i).
+     */
+    private class ExitData {
+
+        public String shortName;
+        public List<String> targets = new ArrayList<>();
+        public List<String> labels = new ArrayList<>();
+
+        public ExitData(String shortName) {
+            this.shortName = shortName;
+        }
+    }
+
     /**
      * Encapsulation helper class to keep track of the room graph and the room
      * name map.
@@ -1,22 +1,267 @@
 package utility;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+
+import model.Command;
 import model.GameState;
+import model.Player;
 import model.Room;
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
+import model.Script;
+import model.ScriptCompiler;
 
 /**
  * <b>GameSaver</b> is a utility class that handles writing game data to files
  * on disc that can later be loaded by GameParser.
- * 
+ *
+ * A save directory holds a snapshot of the game and a journal of the changes
+ * made since that snapshot was written:
+ *
+ * <pre>
+ *  rooms.tsv   - every room in the game
+ *  edges.tsv   - room connections, one "parent, child[, exit label]" record
+ *                per line
+ *  player.tsv  - the player
+ *  exits.tsv   - optional exits of the rooms whose exits were opened or
+ *                closed, replacing their exits in edges.tsv or the image
+ *  journal.tsv - room, exit and player records appended by each save
+ *  world.bin   - optional WorldImage holding the rooms and edges instead
+ * </pre>
+ *
+ * When there is a world image, rooms.tsv only holds the rooms that differ
+ * from the image's rooms, and edges.tsv is unused. A directory with neither a
+ * world image nor edges.tsv is an overlay on a base world shared by many saves
+ * (see GameParser), and its files only hold what differs from the base world.
+ *
+ * All files are made of Tsv records. A room is written as
+ *
+ * <pre>
+ *  ROOM, short name, name, short description, long description
+ *  ITEM, item                      (one record per item in the room)
+ *  SCRIPT, accepted input          (one block per script in the room)
+ *      command type, args...       (one record per command)
+ *  END_SCRIPT
+ * </pre>
+ *
+ * the exits of a room as
+ *
+ * <pre>
+ *  EXITS, room short name
+ *  EXIT, room short name[, label]  (one record per exit)
+ * </pre>
+ *
+ * and the player as
+ *
+ * <pre>
+ *  PLAYER, name, current health, max health, current room short name
+ *  ITEM, item                      (one record per item in the inventory)
+ * </pre>
+ *
+ * Each save appends the rooms, exits and player that changed since the last
+ * save to the journal, followed by a COMMIT record. When loading, journal
+ * records replace the snapshot records for the same room, exits or player,
+ * and a batch without its COMMIT is ignored, even if a crash cut its last
+ * record short. So saving costs time
+ * proportional to what changed, not to the size of the world. Once the
+ * journal outgrows the snapshot, it is compacted into a new snapshot.
+ *
  * @author Sean Wammer
  */
 public class GameSaver {
 
-	public static GameState saveGameState(String filePath, GameState gameState) {
-		throw new NotImplementedException();
-	}
-	
-	public static Room saveRoom(String filePath) {
-		throw new NotImplementedException();
-	}
+    static final String ROOMS_FILE = "rooms.tsv";
+    static final String EDGES_FILE = "edges.tsv";
+    static final String PLAYER_FILE = "player.tsv";
+    static final String EXITS_FILE = "exits.tsv";
+    static final String JOURNAL_FILE = "journal.tsv";
+
+    static final String ROOM = "ROOM";
+    static final String ITEM = "ITEM";
+    static final String SCRIPT = "SCRIPT";
+    static final String EXITS = "EXITS";
+    static final String EXIT = "EXIT";
+    static final String PLAYER = "PLAYER";
+    static final String COMMIT = "COMMIT";
+
+    /** journals smaller than this are never compacted */
+    private static final long MIN_COMPACT_BYTES = 64 * 1024;
+
+    /**
+     * Saves the changes made to the given game state since it was last saved
+     * by appending them to the journal in the given save directory. Compacts
+     * the save if the journal has grown larger than the snapshot. Has no
+     * effect if nothing changed.
+     *
+     * @param filePath the path to the save directory
+     * @param gameState the game state to save
+     * @throws IOException if the save files can not be written
+     */
+    public static void saveGameState(String filePath, GameState gameState)
+            throws IOException {
+        if (gameState.changedRooms().isEmpty()
+                && gameState.changedExits().isEmpty()
+                && !gameState.playerChanged()) {
+            return;
+        }
+
+        File journal = new File(filePath, JOURNAL_FILE);
+        try (Writer out = open(journal, true)) {
+            for (Room room : gameState.changedRooms()) {
+                writeRoom(out, room);
+            }
+            for (Room room : gameState.changedExits()) {
+                writeExits(out, gameState, room);
+            }
+            writePlayer(out, gameState);
+            Tsv.write(out, COMMIT);
+        }
+        gameState.clearChanges();
+
+        File rooms = new File(filePath, ROOMS_FILE);
+        if (journal.length() > Math.max(MIN_COMPACT_BYTES, rooms.length())) {
+            compact(filePath, gameState);
+        }
+    }
+
+    /**
+     * Writes a new snapshot of the whole game state to the given save
+     * directory and deletes the journal.
+     *
+     * @param filePath the path to the save directory
+     * @param gameState the game state to save
+     * @throws IOException if the save files can not be written
+     */
+    public static void compact(String filePath, GameState gameState)
+            throws IOException {
+        File rooms = new File(filePath, ROOMS_FILE);
+        File roomsTemp = new File(filePath, ROOMS_FILE + ".tmp");
+        try (Writer out = open(roomsTemp, false)) {
+            for (Room room : gameState.savedRooms()) {
+                writeRoom(out, room);
+            }
+        }
+
+        File exits = new File(filePath, EXITS_FILE);
+        File exitsTemp = new File(filePath, EXITS_FILE + ".tmp");
+        Collection<Room> savedExits = gameState.savedExits();
+        if (!savedExits.isEmpty()) {
+            try (Writer out = open(exitsTemp, false)) {
+                for (Room room : savedExits) {
+                    writeExits(out, gameState, room);
+                }
+            }
+        }
+
+        File player = new File(filePath, PLAYER_FILE);
+        File playerTemp = new File(filePath, PLAYER_FILE + ".tmp");
+        try (Writer out = open(playerTemp, false)) {
+            writePlayer(out, gameState);
+        }
+
+        // if we stop between these steps the journal is replayed on top of
+        // the new snapshot, which gives the same game state
+        replace(roomsTemp, rooms);
+        if (!savedExits.isEmpty()) {
+            replace(exitsTemp, exits);
+        }
+        replace(playerTemp, player);
+        Files.deleteIfExists(new File(filePath, JOURNAL_FILE).toPath());
+        gameState.clearChanges();
+    }
+
+    /**
+     * Writes the records for the given room.
+     *
+     * @param out the writer to write to
+     * @param room the room to write
+     * @throws IOException if out can not be written to
+     */
+    static void writeRoom(Writer out, Room room) throws IOException {
+        Tsv.write(out, ROOM, room.getShortName(), room.getName(),
+                room.getShortDesc(), room.getLongDesc());
+        for (String item : room.getItems()) {
+            Tsv.write(out, ITEM, item);
+        }
+        for (String input : room.getInputs()) {
+            Tsv.write(out, SCRIPT, input);
+            writeScript(out, room.getScript(input));
+            Tsv.write(out, ScriptCompiler.END_SCRIPT);
+        }
+    }
+
+    /**
+     * Writes the records for the exits leading out of the given room of the
+     * given game state, one record for every exit, so a labeled and an
+     * unlabeled exit to the same room are both kept.
+     *
+     * @param out the writer to write to
+     * @param gameState the game state the room is in
+     * @param room the room whose exits to write
+     * @throws IOException if out can not be written to
+     */
+    static void writeExits(Writer out, GameState gameState, Room room)
+            throws IOException {
+        String shortName = room.getShortName();
+        Tsv.write(out, EXITS, shortName);
+        for (Map.Entry<String, String> exit : gameState.allExits(shortName)) {
+            if (exit.getValue() == null) {
+                Tsv.write(out, EXIT, exit.getKey());
+            } else {
+                Tsv.write(out, EXIT, exit.getKey(), exit.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes the records for the commands of the given script, one command
+     * per record.
+     *
+     * @param out the writer to write to
+     * @param script the script to write
+     * @throws IOException if out can not be written to
+     */
+    static void writeScript(Writer out, Script script) throws IOException {
+        for (Command command : script.getCommands()) {
+            Tsv.write(out, command.toTokens());
+        }
+    }
+
+    /**
+     * Writes the records for the player of the given game state.
+     *
+     * @param out the writer to write to
+     * @param gameState the game state whose player to write
+     * @throws IOException if out can not be written to
+     */
+    static void writePlayer(Writer out, GameState gameState)
+            throws IOException {
+        Player player = gameState.getPlayer();
+        Tsv.write(out, PLAYER, player.name(),
+                Integer.toString(player.curHealth()),
+                Integer.toString(player.maxHealth()),
+                gameState.getCurrentRoom().getShortName());
+        for (String item : player.getInventory()) {
+            Tsv.write(out, ITEM, item);
+        }
+    }
+
+    private static Writer open(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                file, append), StandardCharsets.UTF_8));
+    }
+
+    private static void replace(File from, File to) throws IOException {
+        Files.move(from.toPath(), to.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
 }
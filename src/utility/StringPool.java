@@ -0,0 +1,45 @@
+package utility;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>StringPool</b> keeps one copy of each piece of text read while loading a
+ * world. Rooms often repeat the same description in their own fields and in
+ * the SET_DESC commands of their scripts, and a room's SET_DESC text is
+ * stored in the room as is when the command runs, so pooling at load time
+ * stores each text once for as long as the world is in use.
+ *
+ * A pool lives only as long as the load that uses it, so nothing is kept once
+ * the world is gone. StringPool is thread safe, so the chunks of a parallel
+ * load can share one.
+ *
+ * @author Sean Wammer
+ */
+public class StringPool {
+
+    private final ConcurrentHashMap<String, String> pool = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the pooled String equal to s, pooling s if there is none.
+     * Returns null if s is null.
+     *
+     * @param s the text to pool
+     * @return a String equal to s, the same one every time
+     */
+    public String intern(String s) {
+        if (s == null) {
+            return null;
+        }
+        String pooled = pool.putIfAbsent(s, s);
+        return pooled == null ? s : pooled;
+    }
+
+    /**
+     * Returns the number of different Strings in this pool.
+     *
+     * @return the number of different Strings in this pool
+     */
+    public int size() {
+        return pool.size();
+    }
+}
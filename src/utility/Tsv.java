@@ -0,0 +1,114 @@
+package utility;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <b>Tsv</b> is a static utility class for the tab separated records that game
+ * data files are made of.
+ *
+ * Each record is one line of fields separated by tabs. Backslashes, tabs and
+ * line breaks inside a field are escaped as \\, \t, \n and \r so that any text
+ * can be stored in a field.
+ *
+ * @author Sean Wammer
+ */
+public final class Tsv {
+
+    // static utility class, no instances
+    private Tsv() {
+    }
+
+    /**
+     * Writes the given fields as one record, followed by a line break.
+     *
+     * @param out the writer to write the record to
+     * @param fields the fields of the record
+     * @throws IOException if out can not be written to
+     */
+    public static void write(Writer out, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write('\t');
+            }
+            escape(out, fields[i]);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Writes the given fields as one record, followed by a line break.
+     *
+     * @param out the writer to write the record to
+     * @param fields the fields of the record
+     * @throws IOException if out can not be written to
+     */
+    public static void write(Writer out, List<String> fields)
+            throws IOException {
+        write(out, fields.toArray(new String[0]));
+    }
+
+    /**
+     * Splits one record (without its line break) into its unescaped fields.
+     *
+     * @param line the record to split
+     * @return the fields of the record
+     * @throws IllegalArgumentException if the line has an unknown escape
+     *         sequence. The message starts with the 1-based column of the
+     *         problem, followed by ": ".
+     */
+    public static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\') {
+                i++;
+                char escaped = i < line.length() ? line.charAt(i) : 0;
+                if (escaped == 't') {
+                    field.append('\t');
+                } else if (escaped == 'n') {
+                    field.append('\n');
+                } else if (escaped == 'r') {
+                    field.append('\r');
+                } else if (escaped == '\\') {
+                    field.append('\\');
+                } else {
+                    throw new IllegalArgumentException(i
+                            + ": bad escape sequence");
+                }
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static void escape(Writer out, String field) throws IOException {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            switch (c) {
+            case '\t':
+                out.write("\\t");
+                break;
+            case '\n':
+                out.write("\\n");
+                break;
+            case '\r':
+                out.write("\\r");
+                break;
+            case '\\':
+                out.write("\\\\");
+                break;
+            default:
+                out.write(c);
+            }
+        }
+    }
+}
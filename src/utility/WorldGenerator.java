@@ -0,0 +1,426 @@
+package utility;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import model.ScriptCompiler;
+
+/**
+ * <b>WorldGenerator</b> writes made up worlds of any size in the format that
+ * GameParser loads, for load and scale testing without real game content.
+ *
+ * The same settings and seed always give the same files. Rooms are written one
+ * at a time, so the world never has to fit in memory.
+ *
+ * Every room is reachable: rooms are joined in a two way ring, and each room
+ * also gets extra one way exits to random rooms. The number of extra exits
+ * follows the chosen Degree distribution. Each room gets some items, some
+ * scripts and descriptions of about the chosen length. A script prints, moves
+ * items around and, down to the chosen depth, adds a nested script that does
+ * the same.
+ *
+ * @author Sean Wammer
+ */
+public class WorldGenerator {
+
+    /**
+     * How the number of extra exits out of each room is distributed.
+     */
+    public enum Degree {
+        /** every room has about the mean number of exits */
+        UNIFORM,
+        /**
+         * most rooms have few exits and a few hub rooms have very many, as in
+         * worlds built around towns and crossroads
+         */
+        POWER_LAW
+    }
+
+    private static final String[] WORDS = { "old", "dusty", "narrow", "wide",
+            "stone", "wooden", "damp", "bright", "dark", "quiet", "cold",
+            "warm", "hall", "floor", "wall", "window", "door", "lamp", "table",
+            "chair", "rug", "painting", "shelf", "book", "candle", "smell",
+            "light", "sound", "the", "a", "of", "with", "and", "is", "in",
+            "on", "near", "under", "beside", "there" };
+    private static final String[] PLACES = { "cellar", "attic", "library",
+            "garden", "chapel", "armory", "pantry", "study", "gallery",
+            "tower", "vault", "courtyard", "stable", "forge", "market" };
+    private static final String[] ITEMS = { "key", "coin", "rope", "torch",
+            "map", "apple", "dagger", "ring", "scroll", "lantern", "feather",
+            "bone", "gem", "bottle", "shield" };
+    private static final String[] VERBS = { "open", "push", "pull", "read",
+            "search", "touch", "break", "light", "climb", "listen to" };
+
+    /** the power law exponent, about what road and link networks have */
+    private static final double POWER_LAW_ALPHA = 2.5;
+
+    private final long seed;
+    private int rooms = 1000;
+    private double meanDegree = 2;
+    private Degree degree = Degree.UNIFORM;
+    private int scriptsPerRoom = 2;
+    private int scriptDepth = 2;
+    private int itemsPerRoom = 2;
+    private int descriptionLength = 200;
+
+    /**
+     * Constructs a WorldGenerator that generates worlds from the given seed.
+     * Until they are set, the settings are 1000 rooms, 2 extra exits per
+     * room, uniform degree, 2 scripts nested 2 deep and 2 items per room, and
+     * descriptions of 200 characters.
+     *
+     * @param seed the seed to generate worlds from
+     */
+    public WorldGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of rooms to generate.
+     *
+     * @param rooms the number of rooms, at least 1
+     * @return this
+     * @throws IllegalArgumentException if rooms < 1
+     */
+    public WorldGenerator setRooms(int rooms) {
+        if (rooms < 1) {
+            throw new IllegalArgumentException("rooms must be at least 1");
+        }
+        this.rooms = rooms;
+        return this;
+    }
+
+    /**
+     * Sets the mean number of extra one way exits out of each room, on top of
+     * the two ring exits.
+     *
+     * @param meanDegree the mean number of extra exits, at least 0
+     * @return this
+     * @throws IllegalArgumentException if meanDegree < 0
+     */
+    public WorldGenerator setMeanDegree(double meanDegree) {
+        if (meanDegree < 0) {
+            throw new IllegalArgumentException("mean degree must not be negative");
+        }
+        this.meanDegree = meanDegree;
+        return this;
+    }
+
+    /**
+     * Sets how the number of extra exits is distributed between rooms.
+     *
+     * @param degree the distribution of extra exits
+     * @return this
+     */
+    public WorldGenerator setDegree(Degree degree) {
+        this.degree = degree;
+        return this;
+    }
+
+    /**
+     * Sets the mean number of scripts in each room.
+     *
+     * @param scriptsPerRoom the mean number of scripts, at least 0
+     * @return this
+     * @throws IllegalArgumentException if scriptsPerRoom < 0
+     */
+    public WorldGenerator setScriptsPerRoom(int scriptsPerRoom) {
+        if (scriptsPerRoom < 0) {
+            throw new IllegalArgumentException("scripts must not be negative");
+        }
+        this.scriptsPerRoom = scriptsPerRoom;
+        return this;
+    }
+
+    /**
+     * Sets how deep scripts are nested. A depth of 0 gives scripts that add no
+     * scripts, and each level more adds one more level of ADD_SCRIPT.
+     *
+     * @param scriptDepth the nesting depth, at least 0
+     * @return this
+     * @throws IllegalArgumentException if scriptDepth < 0
+     */
+    public WorldGenerator setScriptDepth(int scriptDepth) {
+        if (scriptDepth < 0) {
+            throw new IllegalArgumentException("depth must not be negative");
+        }
+        this.scriptDepth = scriptDepth;
+        return this;
+    }
+
+    /**
+     * Sets the mean number of items in each room.
+     *
+     * @param itemsPerRoom the mean number of items, at least 0
+     * @return this
+     * @throws IllegalArgumentException if itemsPerRoom < 0
+     */
+    public WorldGenerator setItemsPerRoom(int itemsPerRoom) {
+        if (itemsPerRoom < 0) {
+            throw new IllegalArgumentException("items must not be negative");
+        }
+        this.itemsPerRoom = itemsPerRoom;
+        return this;
+    }
+
+    /**
+     * Sets the length in characters that long descriptions are cut to. Short
+     * descriptions are a quarter as long.
+     *
+     * @param descriptionLength the description length, at least 1
+     * @return this
+     * @throws IllegalArgumentException if descriptionLength < 1
+     */
+    public WorldGenerator setDescriptionLength(int descriptionLength) {
+        if (descriptionLength < 1) {
+            throw new IllegalArgumentException(
+                    "description length must be at least 1");
+        }
+        this.descriptionLength = descriptionLength;
+        return this;
+    }
+
+    /**
+     * Returns the short name of room number i of a generated world. The
+     * player starts in room 0.
+     *
+     * @param i the number of the room
+     * @return the short name of the room
+     */
+    public static String roomName(int i) {
+        return PLACES[i % PLACES.length] + i;
+    }
+
+    /**
+     * Writes a world with the current settings to the given directory,
+     * replacing any world already there.
+     *
+     * @param dir the directory to write the world to. It is created if it
+     *        does not exist.
+     * @throws IOException if the files can not be written
+     */
+    public void generate(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create " + dir);
+        }
+        // rooms and edges get their own generators so that changing one
+        // setting does not change everything else in the world
+        Random roomRandom = new Random(seed);
+        Random edgeRandom = new Random(seed * 31 + 1);
+
+        try (Writer out = open(new File(dir, GameSaver.ROOMS_FILE))) {
+            for (int i = 0; i < rooms; i++) {
+                writeRoom(out, i, roomRandom);
+            }
+        }
+        try (Writer out = open(new File(dir, GameSaver.EDGES_FILE))) {
+            for (int i = 0; i < rooms; i++) {
+                writeEdges(out, i, edgeRandom);
+            }
+        }
+        try (Writer out = open(new File(dir, GameSaver.PLAYER_FILE))) {
+            Tsv.write(out, GameSaver.PLAYER, "player", "20", "20", roomName(0));
+        }
+        // files saved from the old world would be replayed onto this one
+        new File(dir, GameSaver.EXITS_FILE).delete();
+        new File(dir, GameSaver.JOURNAL_FILE).delete();
+        new File(dir, WorldImage.IMAGE_FILE).delete();
+    }
+
+    private void writeRoom(Writer out, int i, Random random) throws IOException {
+        String place = PLACES[i % PLACES.length];
+        Tsv.write(out, GameSaver.ROOM, roomName(i), "The " + place + " "
+                + i, text(random, descriptionLength / 4 + 1), text(random,
+                descriptionLength));
+        int items = around(random, itemsPerRoom);
+        for (int j = 0; j < items; j++) {
+            Tsv.write(out, GameSaver.ITEM, pick(random, ITEMS));
+        }
+        // inputs must be unique within a room
+        Set<String> inputs = new LinkedHashSet<>();
+        int scripts = around(random, scriptsPerRoom);
+        for (int j = 0; j < scripts; j++) {
+            inputs.add(pick(random, VERBS) + " " + pick(random, ITEMS));
+        }
+        for (String input : inputs) {
+            Tsv.write(out, GameSaver.SCRIPT, input);
+            writeCommands(out, i, random, scriptDepth);
+            Tsv.write(out, ScriptCompiler.END_SCRIPT);
+        }
+    }
+
+    /**
+     * Writes the commands of one script, including nested scripts down to the
+     * given depth.
+     */
+    private void writeCommands(Writer out, int room, Random random, int depth)
+            throws IOException {
+        String item = pick(random, ITEMS);
+        Tsv.write(out, "PRINT", text(random, 60));
+        switch (random.nextInt(4)) {
+        case 0:
+            Tsv.write(out, "REMOVE_ITEM", item);
+            Tsv.write(out, "GIVE_ITEM", item);
+            break;
+        case 1:
+            Tsv.write(out, "ADD_ITEM_TO", roomName((room + 1) % rooms), item);
+            break;
+        case 2:
+            Tsv.write(out, "SET_DESC", text(random, descriptionLength));
+            break;
+        default:
+            Tsv.write(out, "ADD_HEALTH", Integer.toString(random.nextInt(5) - 2));
+        }
+        if (depth > 0) {
+            Tsv.write(out, "ADD_SCRIPT", pick(random, VERBS) + " " + item);
+            writeCommands(out, room, random, depth - 1);
+            Tsv.write(out, ScriptCompiler.END_SCRIPT);
+        }
+    }
+
+    private void writeEdges(Writer out, int i, Random random)
+            throws IOException {
+        // the ring keeps every room reachable
+        Set<Integer> targets = new LinkedHashSet<>();
+        if (rooms > 1) {
+            targets.add((i + 1) % rooms);
+            targets.add((i + rooms - 1) % rooms);
+        }
+        int extra = Math.min(extraExits(random), rooms - 1);
+        while (targets.size() < extra + 2 && targets.size() < rooms - 1) {
+            int target = random.nextInt(rooms);
+            if (target != i) {
+                targets.add(target);
+            }
+        }
+        for (int target : targets) {
+            Tsv.write(out, roomName(i), roomName(target));
+        }
+    }
+
+    /**
+     * Returns the number of extra exits for one room.
+     */
+    private int extraExits(Random random) {
+        if (degree == Degree.UNIFORM) {
+            return around(random, meanDegree);
+        }
+        // a Pareto distribution of shape POWER_LAW_ALPHA with the requested
+        // mean, rounded as around rounds so the mean stays exact
+        double min = meanDegree * (POWER_LAW_ALPHA - 1) / POWER_LAW_ALPHA;
+        double u = 1 - random.nextDouble();
+        double exits = Math.min(min * Math.pow(u, -1 / POWER_LAW_ALPHA),
+                Integer.MAX_VALUE - 1);
+        int ret = (int) exits;
+        if (random.nextDouble() < exits - ret) {
+            ret++;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a whole number between 0 and twice mean, with the given mean.
+     */
+    private static int around(Random random, double mean) {
+        double value = random.nextDouble() * 2 * mean;
+        int ret = (int) value;
+        // round up with the probability of the fraction so the mean is exact
+        if (random.nextDouble() < value - ret) {
+            ret++;
+        }
+        return ret;
+    }
+
+    /**
+     * Returns random words, cut to the given length.
+     */
+    private static String text(Random random, int length) {
+        StringBuilder ret = new StringBuilder(length + 10);
+        while (ret.length() < length) {
+            if (ret.length() > 0) {
+                ret.append(' ');
+            }
+            ret.append(pick(random, WORDS));
+        }
+        ret.setLength(length);
+        return ret.toString().trim();
+    }
+
+    private static String pick(Random random, String[] words) {
+        return words[random.nextInt(words.length)];
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Generates a world into a directory.
+     *
+     * Usage: WorldGenerator &lt;directory&gt; [--seed=N] [--rooms=N]
+     * [--degree=N] [--power-law] [--scripts=N] [--depth=N] [--items=N]
+     * [--desc=N]
+     *
+     * @param args the directory to write to, then any settings
+     * @throws IOException if the world can not be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: WorldGenerator <directory> [--seed=N]"
+                    + " [--rooms=N] [--degree=N] [--power-law] [--scripts=N]"
+                    + " [--depth=N] [--items=N] [--desc=N]");
+            System.exit(1);
+        }
+        long seed = 0;
+        List<String[]> settings = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String[] setting = args[i].split("=", 2);
+            if (setting[0].equals("--seed")) {
+                seed = Long.parseLong(setting[1]);
+            } else {
+                settings.add(setting);
+            }
+        }
+        WorldGenerator generator = new WorldGenerator(seed);
+        for (String[] setting : settings) {
+            switch (setting[0]) {
+            case "--rooms":
+                generator.setRooms(Integer.parseInt(setting[1]));
+                break;
+            case "--degree":
+                generator.setMeanDegree(Double.parseDouble(setting[1]));
+                break;
+            case "--power-law":
+                generator.setDegree(Degree.POWER_LAW);
+                break;
+            case "--scripts":
+                generator.setScriptsPerRoom(Integer.parseInt(setting[1]));
+                break;
+            case "--depth":
+                generator.setScriptDepth(Integer.parseInt(setting[1]));
+                break;
+            case "--items":
+                generator.setItemsPerRoom(Integer.parseInt(setting[1]));
+                break;
+            case "--desc":
+                generator.setDescriptionLength(Integer.parseInt(setting[1]));
+                break;
+            default:
+                System.err.println("Unknown setting " + setting[0]);
+                System.exit(1);
+            }
+        }
+        generator.generate(new File(args[0]));
+    }
+}
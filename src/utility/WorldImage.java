@@ -0,0 +1,578 @@
+package utility;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.Command;
+import model.Command.InvalidGameDataException;
+import model.GameModel;
+import model.GameState;
+import model.GraphAlgorithms;
+import model.IndexedGraph;
+import model.Room;
+import model.RoomSource;
+import model.RoutePlanner;
+import model.Script;
+import model.ScriptCompiler;
+
+/**
+ * <b>WorldImage</b> is a compact, read-only binary copy of every room in a
+ * world and the edges between them. An image is opened by memory mapping its
+ * file, so opening costs the same no matter how big the world is, and game
+ * sessions that open the same image share the operating system's cached
+ * pages. An image can also be built in memory from a loaded game. Rooms are
+ * only built when a game first needs them, and each game that binds an image
+ * gets its own copies, so games never see each other's changes.
+ *
+ * An image is made of big-endian ints followed by a blob of UTF-8 strings:
+ *
+ * <pre>
+ *  header        MAGIC, VERSION, rooms, strings, items, scripts, tokens, edges
+ *  stringOffsets strings + 1 byte offsets into the string blob
+ *  roomTable     5 string ids per room: lowercase short name, short name,
+ *                name, short description, long description
+ *  itemOffsets   rooms + 1 offsets into items
+ *  items         string id of each item
+ *  scriptOffsets rooms + 1 offsets into scriptInputs
+ *  scriptInputs  string id of the accepted input of each script
+ *  tokenOffsets  scripts + 1 offsets into tokens
+ *  tokens        string id of each flat script token (see ScriptCompiler)
+ *  edgeOffsets   rooms + 1 offsets into edgeTargets
+ *  edgeTargets   room index of each edge's child
+ *  edgeLabels    string id of each edge's lowercase label, or -1 for none
+ *  string blob
+ * </pre>
+ *
+ * Rooms are sorted by the UTF-8 bytes of their lowercase short names, so a
+ * room is found by binary search without building an index.
+ *
+ * @author Sean Wammer
+ */
+public class WorldImage {
+
+    static final String IMAGE_FILE = "world.bin";
+
+    private static final int MAGIC = 0x414d5749; // "AMWI"
+    private static final int VERSION = 2;
+    private static final int HEADER_INTS = 8;
+    private static final int ROOM_INTS = 5;
+    /** worlds with at least this many rooms plan routes with landmarks */
+    private static final int LANDMARK_ROOMS = 100000;
+    private static final int LANDMARKS = 8;
+
+    private final ByteBuffer buffer;
+    private final int roomCount;
+
+    // byte positions of each section
+    private final int stringOffsets;
+    private final int roomTable;
+    private final int itemOffsets;
+    private final int items;
+    private final int scriptOffsets;
+    private final int scriptInputs;
+    private final int tokenOffsets;
+    private final int tokens;
+    private final int edgeOffsets;
+    private final int edgeTargets;
+    private final int edgeLabels;
+    private final int strings;
+
+    /** plans routes between the rooms of this image, built when first used */
+    private RoutePlanner planner;
+
+    private WorldImage(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_INTS * 4 || buffer.getInt(0) != MAGIC) {
+            throw new InvalidGameDataException("not a world image");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new InvalidGameDataException("unsupported world image version "
+                    + buffer.getInt(4));
+        }
+        roomCount = buffer.getInt(8);
+        int stringCount = buffer.getInt(12);
+        int itemCount = buffer.getInt(16);
+        int scriptCount = buffer.getInt(20);
+        int tokenCount = buffer.getInt(24);
+        int edgeCount = buffer.getInt(28);
+
+        stringOffsets = HEADER_INTS * 4;
+        roomTable = stringOffsets + (stringCount + 1) * 4;
+        itemOffsets = roomTable + roomCount * ROOM_INTS * 4;
+        items = itemOffsets + (roomCount + 1) * 4;
+        scriptOffsets = items + itemCount * 4;
+        scriptInputs = scriptOffsets + (roomCount + 1) * 4;
+        tokenOffsets = scriptInputs + scriptCount * 4;
+        tokens = tokenOffsets + (scriptCount + 1) * 4;
+        edgeOffsets = tokens + tokenCount * 4;
+        edgeTargets = edgeOffsets + (roomCount + 1) * 4;
+        edgeLabels = edgeTargets + edgeCount * 4;
+        strings = edgeLabels + edgeCount * 4;
+        if (strings + buffer.getInt(stringOffsets + stringCount * 4) > buffer.limit()) {
+            throw new InvalidGameDataException("world image is truncated");
+        }
+    }
+
+    /**
+     * Opens the world image in the given file by memory mapping it.
+     *
+     * @param file the image file to open
+     * @return the opened image
+     * @throws IOException if the file can not be read
+     * @throws InvalidGameDataException if the file is not a world image
+     */
+    public static WorldImage open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new WorldImage(channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the number of rooms in this image.
+     *
+     * @return the number of rooms in this image
+     */
+    public int size() {
+        return roomCount;
+    }
+
+    /**
+     * Returns a RoomSource that builds rooms from this image whose scripts act
+     * on the given game model.
+     *
+     * @param gameModel the game model the rooms' scripts act on
+     * @return a RoomSource backed by this image
+     */
+    public RoomSource bind(final GameModel gameModel) {
+        return new RoomSource() {
+            @Override
+            public boolean containsRoom(String shortName) {
+                return find(shortName) >= 0;
+            }
+
+            @Override
+            public Room loadRoom(String shortName) {
+                int room = find(shortName);
+                return room < 0 ? null : buildRoom(gameModel, room);
+            }
+
+            @Override
+            public List<String> exits(String shortName) {
+                int room = find(shortName);
+                if (room < 0) {
+                    return Collections.emptyList();
+                }
+                int start = intAt(edgeOffsets, room);
+                int end = intAt(edgeOffsets, room + 1);
+                List<String> ret = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    ret.add(roomString(intAt(edgeTargets, i), 0));
+                }
+                return ret;
+            }
+
+            @Override
+            public List<String> exitLabels(String shortName) {
+                int room = find(shortName);
+                if (room < 0) {
+                    return Collections.emptyList();
+                }
+                int start = intAt(edgeOffsets, room);
+                int end = intAt(edgeOffsets, room + 1);
+                List<String> ret = new ArrayList<>(end - start);
+                for (int i = start; i < end; i++) {
+                    int label = intAt(edgeLabels, i);
+                    ret.add(label < 0 ? null : string(label));
+                }
+                return ret;
+            }
+
+            @Override
+            public RoutePlanner planner() {
+                return WorldImage.this.planner();
+            }
+        };
+    }
+
+    /**
+     * Returns the route planner for the rooms of this image, building it from
+     * the edge section the first time. Rooms are numbered in the planner as
+     * they are in the image. Large worlds have long routes, so their planners
+     * precompute landmarks.
+     */
+    private synchronized RoutePlanner planner() {
+        if (planner == null) {
+            IndexedGraph<String> graph = new IndexedGraph<>();
+            for (int room = 0; room < roomCount; room++) {
+                graph.intern(roomString(room, 0));
+            }
+            for (int room = 0; room < roomCount; room++) {
+                int end = intAt(edgeOffsets, room + 1);
+                for (int i = intAt(edgeOffsets, room); i < end; i++) {
+                    graph.addEdge(room, intAt(edgeTargets, i));
+                }
+            }
+            planner = new RoutePlanner(graph);
+            if (roomCount >= LANDMARK_ROOMS) {
+                planner.precomputeLandmarks(LANDMARKS);
+            }
+        }
+        return planner;
+    }
+
+    /**
+     * Returns the index of the room with the given lowercase short name, or
+     * -1 if there is none.
+     */
+    private int find(String shortName) {
+        byte[] key = shortName.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = roomCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(intAt(roomTable, mid * ROOM_INTS), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the UTF-8 bytes of the given string to key without decoding.
+     */
+    private int compare(int string, byte[] key) {
+        int start = strings + intAt(stringOffsets, string);
+        int length = strings + intAt(stringOffsets, string + 1) - start;
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private Room buildRoom(GameModel gameModel, int room) {
+        // each string is decoded once per room, so a description that is
+        // also the argument of a SET_DESC is stored once
+        Map<Integer, String> decoded = new HashMap<>();
+
+        List<String> roomItems = new ArrayList<>();
+        for (int i = intAt(itemOffsets, room); i < intAt(itemOffsets, room + 1); i++) {
+            roomItems.add(string(intAt(items, i), decoded));
+        }
+
+        Map<String, Script> acceptedInput = new HashMap<>();
+        for (int s = intAt(scriptOffsets, room); s < intAt(scriptOffsets, room + 1); s++) {
+            int start = intAt(tokenOffsets, s);
+            String[] scriptTokens = new String[intAt(tokenOffsets, s + 1) - start];
+            for (int t = 0; t < scriptTokens.length; t++) {
+                scriptTokens[t] = string(intAt(tokens, start + t), decoded);
+            }
+            acceptedInput.put(string(intAt(scriptInputs, s), decoded),
+                    ScriptCompiler.compile(gameModel, scriptTokens, 0));
+        }
+
+        return new Room(roomString(room, 1, decoded), roomString(room, 2,
+                decoded), roomString(room, 3, decoded), roomString(room, 4,
+                decoded), roomItems, acceptedInput);
+    }
+
+    private String roomString(int room, int field) {
+        return string(intAt(roomTable, room * ROOM_INTS + field));
+    }
+
+    private String roomString(int room, int field, Map<Integer, String> decoded) {
+        return string(intAt(roomTable, room * ROOM_INTS + field), decoded);
+    }
+
+    /**
+     * Returns the string with the given id, reusing the copy in decoded if
+     * there is one and adding it there if not.
+     */
+    private String string(int id, Map<Integer, String> decoded) {
+        String s = decoded.get(id);
+        if (s == null) {
+            s = string(id);
+            decoded.put(id, s);
+        }
+        return s;
+    }
+
+    private String string(int id) {
+        int start = intAt(stringOffsets, id);
+        byte[] bytes = new byte[intAt(stringOffsets, id + 1) - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(strings + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int intAt(int section, int index) {
+        return buffer.getInt(section + index * 4);
+    }
+
+    /**
+     * Writes every room of the given game state, and the edges between them,
+     * to an image file. The game state must have all of its rooms loaded.
+     *
+     * @param gameState the game state to write
+     * @param file the file to write the image to
+     * @throws IOException if the file can not be written
+     */
+    public static void write(GameState gameState, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(
+                file))) {
+            write(gameState, out);
+        }
+    }
+
+    /**
+     * Builds an image of every room of the given game state, and the edges
+     * between them, in memory. The game state must have all of its rooms
+     * loaded.
+     *
+     * @param gameState the game state to build the image of
+     * @return the image of the given game state
+     */
+    public static WorldImage of(GameState gameState) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            write(gameState, out);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream never throws
+            throw new AssertionError(e);
+        }
+        return new WorldImage(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private static void write(GameState gameState, OutputStream stream)
+            throws IOException {
+        List<Room> rooms = new ArrayList<>(gameState.getRooms());
+        final Map<Room, byte[]> keys = new HashMap<>();
+        for (Room room : rooms) {
+            keys.put(room, room.getShortName().toLowerCase()
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        Collections.sort(rooms, new Comparator<Room>() {
+            @Override
+            public int compare(Room a, Room b) {
+                return compareBytes(keys.get(a), keys.get(b));
+            }
+        });
+        Map<String, Integer> roomIndex = new HashMap<>();
+        for (int i = 0; i < rooms.size(); i++) {
+            roomIndex.put(rooms.get(i).getShortName().toLowerCase(), i);
+        }
+
+        StringTable table = new StringTable();
+        IntArray roomTable = new IntArray();
+        IntArray itemOffsets = new IntArray();
+        IntArray items = new IntArray();
+        IntArray scriptOffsets = new IntArray();
+        IntArray scriptInputs = new IntArray();
+        IntArray tokenOffsets = new IntArray();
+        IntArray tokens = new IntArray();
+        IntArray edgeOffsets = new IntArray();
+        IntArray edgeTargets = new IntArray();
+        IntArray edgeLabels = new IntArray();
+
+        for (Room room : rooms) {
+            roomTable.add(table.id(room.getShortName().toLowerCase()));
+            roomTable.add(table.id(room.getShortName()));
+            roomTable.add(table.id(room.getName()));
+            roomTable.add(table.id(room.getShortDesc()));
+            roomTable.add(table.id(room.getLongDesc()));
+
+            itemOffsets.add(items.size());
+            for (String item : room.getItems()) {
+                items.add(table.id(item));
+            }
+
+            scriptOffsets.add(scriptInputs.size());
+            for (String input : room.getInputs()) {
+                scriptInputs.add(table.id(input));
+                tokenOffsets.add(tokens.size());
+                for (Command command : room.getScript(input).getCommands()) {
+                    for (String token : command.toTokens()) {
+                        tokens.add(table.id(token));
+                    }
+                }
+            }
+
+            // every edge, so a labeled and an unlabeled exit to the same
+            // room are both kept
+            edgeOffsets.add(edgeTargets.size());
+            for (Map.Entry<String, String> exit : gameState.allExits(room
+                    .getShortName())) {
+                edgeTargets.add(roomIndex.get(exit.getKey().toLowerCase()));
+                String label = exit.getValue();
+                edgeLabels.add(label == null ? -1 : table.id(label));
+            }
+        }
+        itemOffsets.add(items.size());
+        scriptOffsets.add(scriptInputs.size());
+        tokenOffsets.add(tokens.size());
+        edgeOffsets.add(edgeTargets.size());
+
+        try (DataOutputStream out = new DataOutputStream(stream)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rooms.size());
+            out.writeInt(table.size());
+            out.writeInt(items.size());
+            out.writeInt(scriptInputs.size());
+            out.writeInt(tokens.size());
+            out.writeInt(edgeTargets.size());
+            table.offsets().writeTo(out);
+            roomTable.writeTo(out);
+            itemOffsets.writeTo(out);
+            items.writeTo(out);
+            scriptOffsets.writeTo(out);
+            scriptInputs.writeTo(out);
+            tokenOffsets.writeTo(out);
+            tokens.writeTo(out);
+            edgeOffsets.writeTo(out);
+            edgeTargets.writeTo(out);
+            edgeLabels.writeTo(out);
+            table.writeTo(out);
+        }
+    }
+
+    /**
+     * Converts the rooms and edges of a save directory into a world image
+     * stored in that directory. Warns about rooms players can not reach or can
+     * get stuck in, starting from the player's room.
+     *
+     * Usage: WorldImage &lt;save directory&gt;
+     *
+     * @param args the save directory to convert
+     * @throws IOException if the directory can not be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: WorldImage <save directory>");
+            System.exit(1);
+        }
+        // scripts are only compiled to be written back out, so they need no
+        // game model to act on
+        GameState gameState = new GameParser(Runtime.getRuntime()
+                .availableProcessors()).loadGameState(null, args[0]);
+        IndexedGraph<String> graph = new IndexedGraph<>();
+        for (Room room : gameState.getRooms()) {
+            String shortName = room.getShortName().toLowerCase();
+            graph.intern(shortName);
+            for (String exit : gameState.adjacentRooms(shortName)) {
+                graph.addEdge(shortName, exit.toLowerCase());
+            }
+        }
+        GraphAlgorithms.Report<String> report = GraphAlgorithms.check(graph,
+                gameState.getCurrentRoom().getShortName().toLowerCase());
+        if (!report.isClean()) {
+            System.err.println("warning: " + report);
+        }
+        write(gameState, new File(args[0], IMAGE_FILE));
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Growable array of ints.
+     */
+    private static class IntArray {
+
+        private int[] values = new int[16];
+        private int size;
+
+        public void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                out.writeInt(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Deduplicated strings and their UTF-8 bytes.
+     */
+    private static class StringTable {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<byte[]> bytes = new ArrayList<>();
+
+        public int id(String string) {
+            Integer id = ids.get(string);
+            if (id == null) {
+                id = bytes.size();
+                ids.put(string, id);
+                bytes.add(string.getBytes(StandardCharsets.UTF_8));
+            }
+            return id;
+        }
+
+        public int size() {
+            return bytes.size();
+        }
+
+        public IntArray offsets() {
+            IntArray offsets = new IntArray();
+            int offset = 0;
+            for (byte[] string : bytes) {
+                offsets.add(offset);
+                offset += string.length;
+            }
+            offsets.add(offset);
+            return offsets;
+        }
+
+        public void writeTo(DataOutputStream out) throws IOException {
+            for (byte[] string : bytes) {
+                out.write(string);
+            }
+        }
+    }
+}